@@ -0,0 +1,166 @@
+package org.elasticsearch.handler;
+
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.MultiSearchResult;
+import io.searchbox.core.SearchResult;
+import org.elasticsearch.handler.dto.SearchField;
+import org.elasticsearch.handler.dto.SearchOrder;
+import org.elasticsearch.handler.dto.SearchPage;
+import org.elasticsearch.handler.dto.SearchRequest;
+import org.elasticsearch.handler.enums.QueryType;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.util.List;
+
+/**
+ * 基准测试使用的固定请求及响应
+ */
+public final class BenchmarkData {
+
+    public static final String INDEX_NAME = "goods";
+    public static final String INDEX_TYPE = "item";
+    public static final String HIGHLIGHT_FIELD = "title";
+
+    private static final Gson GSON = new Gson();
+    private static final JsonParser PARSER = new JsonParser();
+
+    private BenchmarkData() {}
+
+    public static class Goods {
+        private Long id;
+        private String title;
+        private String content;
+        private Double price;
+        private Integer stock;
+        private List<String> tags;
+        private Long created;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Double getPrice() {
+            return price;
+        }
+    }
+
+    public static Goods goods(long id) {
+        Goods goods = new Goods();
+        goods.id = id;
+        goods.title = "elasticsearch handler goods " + id;
+        goods.content = "jest based rest client wrapper, document number " + id + ", used for benchmark only";
+        goods.price = id * 1.5;
+        goods.stock = (int) (id % 100);
+        goods.tags = Lists.newArrayList("tag" + id % 7, "tag" + id % 11);
+        goods.created = 1500000000000L + id * 1000;
+        return goods;
+    }
+
+    public static List<Goods> goodsList(int size) {
+        List<Goods> list = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            list.add(goods(i));
+        }
+        return list;
+    }
+
+    /**
+     * 每次调用返回新的请求, buildSearch会把生成的DSL写回request
+     */
+    public static SearchRequest fieldRequest() {
+        SearchRequest request = new SearchRequest();
+        request.setIndexName(Lists.newArrayList(INDEX_NAME));
+        request.setIndexType(Lists.newArrayList(INDEX_TYPE));
+        request.setMust(Lists.newArrayList(
+                new SearchField("title", "handler", QueryType.match),
+                new SearchField("price", "10#1000", QueryType.range),
+                new SearchField("status", 1)));
+        request.setShould(Lists.newArrayList(
+                new SearchField("tags", "tag1"),
+                new SearchField("tags", "tag2"),
+                new SearchField("content", "jest", QueryType.match_phrase)));
+        request.setMustNot(Lists.newArrayList(new SearchField("title", "deleted*", QueryType.wildcard)));
+        request.setOrder(Lists.newArrayList(new SearchOrder("price", SortOrder.DESC)));
+        request.setPage(page(1, 20));
+        return request;
+    }
+
+    public static SearchRequest rawRequest(String query) {
+        SearchRequest request = new SearchRequest();
+        request.setQuery(query);
+        request.setIndexName(Lists.newArrayList(INDEX_NAME));
+        request.setIndexType(Lists.newArrayList(INDEX_TYPE));
+        request.setOrder(Lists.newArrayList(new SearchOrder("price", SortOrder.DESC)));
+        request.setPage(page(2, 20));
+        return request;
+    }
+
+    public static SearchRequest highlightRequest() {
+        SearchRequest request = fieldRequest();
+        request.setHighlight(request.new Highlight(HIGHLIGHT_FIELD));
+        return request;
+    }
+
+    public static SearchPage page(int pageNum, int pageSize) {
+        SearchPage page = new SearchPage();
+        page.setEnable(true);
+        page.setPageNum(pageNum);
+        page.setPageSize(pageSize);
+        return page;
+    }
+
+    public static String searchResponse(int hits, boolean highlight) {
+        StringBuilder json = new StringBuilder(hits * 400 + 256);
+        json.append("{\"took\":12,\"timed_out\":false,\"_shards\":{\"total\":5,\"successful\":5,\"failed\":0},")
+                .append("\"hits\":{\"total\":").append(hits * 10).append(",\"max_score\":1.0,\"hits\":[");
+        for (int i = 0; i < hits; i++) {
+            Goods goods = goods(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"_index\":\"").append(INDEX_NAME).append("\",\"_type\":\"").append(INDEX_TYPE)
+                    .append("\",\"_id\":\"").append(i).append("\",\"_score\":1.0,\"_source\":")
+                    .append(GSON.toJson(goods));
+            if (highlight) {
+                json.append(",\"highlight\":{\"").append(HIGHLIGHT_FIELD).append("\":[\"elasticsearch <em>handler</em> goods ")
+                        .append(i).append("\"]}");
+            }
+            json.append('}');
+        }
+        return json.append("]}}").toString();
+    }
+
+    public static JestResult searchResult(int hits, boolean highlight) {
+        SearchResult result = new SearchResult(GSON);
+        fill(result, searchResponse(hits, highlight));
+        result.setPathToResult("hits/hits/_source");
+        return result;
+    }
+
+    public static JestResult multiSearchResult(int searches, int hits) {
+        StringBuilder json = new StringBuilder("{\"responses\":[");
+        for (int i = 0; i < searches; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(searchResponse(hits, false));
+        }
+        MultiSearchResult result = new MultiSearchResult(GSON);
+        fill(result, json.append("]}").toString());
+        return result;
+    }
+
+    private static void fill(JestResult result, String json) {
+        result.setJsonString(json);
+        result.setJsonObject(PARSER.parse(json).getAsJsonObject());
+        result.setResponseCode(200);
+        result.setSucceeded(true);
+    }
+}
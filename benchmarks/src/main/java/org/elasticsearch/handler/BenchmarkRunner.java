@@ -0,0 +1,25 @@
+package org.elasticsearch.handler;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行全部基准测试, 默认附加gc profiler输出分配速率
+ *
+ *      mvn install (根目录)
+ *      cd benchmarks && mvn package
+ *      java -jar target/benchmarks.jar [jmh参数, 如 ResultConvert -f 1 -wi 3 -i 5]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,58 @@
+package org.elasticsearch.handler;
+
+import com.google.gson.Gson;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Index;
+import org.elasticsearch.handler.id.DocIdResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * bulkSaveDocList的请求体构建: 读取id、序列化文档、拼接bulk请求体, 不发送请求
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkBuildBenchmark {
+
+    @Param({"1000", "10000"})
+    private int docs;
+
+    private final Gson gson = new Gson();
+    private DocumentHandler documentHandler;
+    private List<BenchmarkData.Goods> goodsList;
+
+    @Setup
+    public void setup() {
+        documentHandler = DocumentHandler.getInstance();
+        goodsList = BenchmarkData.goodsList(docs);
+    }
+
+    @Benchmark
+    public List<Index> buildIndexList() {
+        return documentHandler.buildIndexList(BenchmarkData.INDEX_NAME, BenchmarkData.INDEX_TYPE, goodsList,
+                DocIdResolver::getId);
+    }
+
+    @Benchmark
+    public String buildBulkBody() {
+        List<Index> actions = documentHandler.buildIndexList(BenchmarkData.INDEX_NAME, BenchmarkData.INDEX_TYPE,
+                goodsList, DocIdResolver::getId);
+        return new Bulk.Builder().addAction(actions).build().getData(gson);
+    }
+}
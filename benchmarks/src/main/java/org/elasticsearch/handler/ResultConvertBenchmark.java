@@ -0,0 +1,71 @@
+package org.elasticsearch.handler;
+
+import com.alibaba.fastjson.JSONObject;
+import io.searchbox.client.JestResult;
+import org.elasticsearch.handler.dto.SearchPage;
+import org.elasticsearch.handler.dto.SearchRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应转换: convertResult(单个及复合搜索), searchList高亮路径
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultConvertBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int hits;
+
+    private SearchHandler searchHandler;
+    private JestResult searchResult;
+    private JestResult multiSearchResult;
+    private JestResult highlightResult;
+    private SearchRequest highlightRequest;
+
+    @Setup
+    public void setup() {
+        searchHandler = SearchHandler.getInstance();
+        searchResult = BenchmarkData.searchResult(hits, false);
+        multiSearchResult = BenchmarkData.multiSearchResult(2, hits);
+        highlightResult = BenchmarkData.searchResult(hits, true);
+        highlightRequest = BenchmarkData.highlightRequest();
+    }
+
+    @Benchmark
+    public JSONObject convertSearch() {
+        return searchHandler.convertResult(searchResult, BenchmarkData.page(1, hits));
+    }
+
+    @Benchmark
+    public JSONObject convertMultiSearch() {
+        SearchPage page = BenchmarkData.page(1, hits);
+        return searchHandler.convertResult(multiSearchResult, page);
+    }
+
+    @Benchmark
+    public List<BenchmarkData.Goods> convertListHighlight() {
+        return searchHandler.convertList(highlightResult, highlightRequest, BenchmarkData.Goods.class);
+    }
+
+    @Benchmark
+    public List<BenchmarkData.Goods> convertList() {
+        return searchHandler.convertList(searchResult, BenchmarkData.fieldRequest(), BenchmarkData.Goods.class);
+    }
+}
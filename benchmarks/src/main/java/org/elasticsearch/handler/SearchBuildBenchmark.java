@@ -0,0 +1,64 @@
+package org.elasticsearch.handler;
+
+import io.searchbox.core.MultiSearch;
+import io.searchbox.core.Search;
+import org.elasticsearch.handler.dto.SearchRequest;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询构建: SearchField条件生成DSL, 及原始DSL加分页排序
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBuildBenchmark {
+
+    private SearchHandler searchHandler;
+    private String rawQuery;
+
+    @Setup
+    public void setup() {
+        searchHandler = SearchHandler.getInstance();
+        rawQuery = searchHandler.buildSearchBuilder(BenchmarkData.fieldRequest()).toString();
+    }
+
+    @Benchmark
+    public SearchSourceBuilder buildSearchBuilder() {
+        return searchHandler.buildSearchBuilder(BenchmarkData.fieldRequest());
+    }
+
+    @Benchmark
+    public Search buildSearchField() {
+        return searchHandler.buildSearch(BenchmarkData.fieldRequest());
+    }
+
+    @Benchmark
+    public Search buildSearchRaw() {
+        return searchHandler.buildSearch(BenchmarkData.rawRequest(rawQuery));
+    }
+
+    @Benchmark
+    public MultiSearch buildMultiSearch() {
+        List<SearchRequest> requests = new ArrayList<>(2);
+        requests.add(BenchmarkData.fieldRequest());
+        requests.add(BenchmarkData.rawRequest(rawQuery));
+        return searchHandler.buildSearch(requests);
+    }
+}
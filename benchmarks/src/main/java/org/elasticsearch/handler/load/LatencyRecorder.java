@@ -0,0 +1,50 @@
+package org.elasticsearch.handler.load;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记录单个操作的耗时样本, 结束后计算百分位
+ */
+public class LatencyRecorder {
+
+    private final String name;
+    private final AtomicLong errors = new AtomicLong();
+
+    private long[] samples = new long[1024];
+    private int count;
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    public synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    public synchronized String report(long elapsedNanos) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        return String.format("%-10s count: %8d, errors: %6d, qps: %9.1f, p50: %8.2fms, p90: %8.2fms, p99: %8.2fms, "
+                        + "p99.9: %8.2fms, max: %8.2fms", name, count, errors.get(), count / seconds,
+                millis(sorted, 0.5), millis(sorted, 0.9), millis(sorted, 0.99), millis(sorted, 0.999),
+                millis(sorted, 1.0));
+    }
+
+    private double millis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000000.0;
+    }
+}
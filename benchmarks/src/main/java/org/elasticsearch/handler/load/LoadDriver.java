@@ -0,0 +1,243 @@
+package org.elasticsearch.handler.load;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.elasticsearch.handler.BenchmarkData;
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.DocumentHandler;
+import org.elasticsearch.handler.SearchHandler;
+import org.elasticsearch.handler.fake.FakeElasticsearchServer;
+import org.elasticsearch.handler.prop.GetBatchProperty;
+import org.elasticsearch.handler.prop.HedgeProperty;
+import org.elasticsearch.handler.prop.LimitProperty;
+import org.elasticsearch.handler.prop.MultiSearchProperty;
+import org.elasticsearch.handler.prop.SearchProperty;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按目标qps压测ClientHandler/SearchHandler/DocumentHandler, 输出各操作的耗时百分位
+ *
+ * 按固定间隔发起请求(开环), 耗时从计划发起时间算起, 客户端排队时间也计入结果。
+ * 未指定hosts时启动nodes个本地FakeElasticsearchServer, 前slowNodes个节点使用slowLatency延迟,
+ * discovery=true时只配置第一个节点, 其余节点通过_nodes发现。
+ *
+ *      java -cp target/benchmarks.jar org.elasticsearch.handler.load.LoadDriver \
+ *          qps=1000 duration=30 threads=64 mix=search:70,get:10,mget:5,msearch:5,bulk:10 \
+ *          latency=5 jitter=20 errorRate=0 rejectRate=0 hits=20 bulkSize=100 compression=false \
+ *          maxTotalConnection=200 maxConnectionPerRoute=50 nodes=1 slowNodes=0 slowLatency=200 \
+ *          discovery=false hedge=false hedgePercentile=95 limit=false \
+ *          batchGet=false msearchChunk=0 [hosts=http://host:9200]
+ */
+public class LoadDriver {
+
+    private final Map<String, String> options;
+    private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private String[] operations;
+    private int[] weights;
+    private int totalWeight;
+
+    public LoadDriver(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        //FakeElasticsearchServer分开写出响应头和响应体, 不关闭Nagle时与延迟ack叠加, 每个请求多出约40ms
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        Map<String, String> options = Maps.newHashMap();
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "true");
+        }
+        new LoadDriver(options).run();
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        int qps = getInt("qps", 500);
+        int duration = getInt("duration", 30);
+        int threads = getInt("threads", 64);
+        parseMix(options.getOrDefault("mix", "search:70,get:10,mget:5,msearch:5,bulk:10"));
+
+        List<FakeElasticsearchServer> servers = Lists.newArrayList();
+        boolean discovery = Boolean.parseBoolean(options.getOrDefault("discovery", "false"));
+        String hosts = options.get("hosts");
+        if (hosts == null) {
+            int slowNodes = getInt("slowNodes", 0);
+            List<String> serverHosts = Lists.newArrayList();
+            for (int i = 0; i < getInt("nodes", 1); i++) {
+                FakeElasticsearchServer server = new FakeElasticsearchServer(0);
+                server.setLatency(i < slowNodes ? getInt("slowLatency", 200) : getInt("latency", 5));
+                server.setLatencyJitter(getInt("jitter", 20));
+                server.setErrorRate(Double.parseDouble(options.getOrDefault("errorRate", "0")));
+                server.setRejectRate(Double.parseDouble(options.getOrDefault("rejectRate", "0")));
+                server.setHits(getInt("hits", 20));
+                server.setCompression(Boolean.parseBoolean(options.getOrDefault("compression", "false")));
+                server.setClusterHosts(serverHosts);
+                serverHosts.add(server.start().getHost());
+                servers.add(server);
+            }
+            hosts = discovery ? serverHosts.get(0) : String.join(",", serverHosts);
+        }
+
+        SearchProperty property = new SearchProperty();
+        property.setHosts(Arrays.asList(hosts.split(",")));
+        property.setDiscoveryEnabled(discovery);
+        property.setDiscoveryFrequency(getInt("discoveryFrequency", 1000));
+        property.setReadTimeout(getInt("readTimeout", 5000));
+        property.setConnTimeout(getInt("connTimeout", 1000));
+        property.setMaxTotalConnection(getInt("maxTotalConnection", property.getMaxTotalConnection()));
+        property.setMaxConnectionPerRoute(getInt("maxConnectionPerRoute", property.getMaxConnectionPerRoute()));
+        property.setRequestCompression(Boolean.parseBoolean(options.getOrDefault("compression", "false")));
+        ClientHandler.getInstance().setSearchProperty(property);
+        if (Boolean.parseBoolean(options.getOrDefault("limit", "false"))) {
+            ClientHandler.getInstance().setReadLimitProperty(new LimitProperty());
+            ClientHandler.getInstance().setWriteLimitProperty(new LimitProperty());
+        }
+        if (Boolean.parseBoolean(options.getOrDefault("batchGet", "false"))) {
+            SearchHandler.getInstance().setGetBatchProperty(new GetBatchProperty());
+        }
+        int msearchChunk = Integer.parseInt(options.getOrDefault("msearchChunk", "0"));
+        if (msearchChunk > 0) {
+            MultiSearchProperty multiSearchProperty = new MultiSearchProperty();
+            multiSearchProperty.setMaxRequestsPerChunk(msearchChunk);
+            SearchHandler.getInstance().setMultiSearchProperty(multiSearchProperty);
+        }
+        if (Boolean.parseBoolean(options.getOrDefault("hedge", "false"))) {
+            HedgeProperty hedgeProperty = new HedgeProperty();
+            hedgeProperty.setEnabled(true);
+            hedgeProperty.setPercentile(Double.parseDouble(options.getOrDefault("hedgePercentile", "95")));
+            ClientHandler.getInstance().setHedgeProperty(hedgeProperty);
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("load-worker-%d").setDaemon(true).build());
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("load-ticker").setDaemon(true).build());
+
+        System.out.println("load: qps=" + qps + ", duration=" + duration + "s, threads=" + threads + ", hosts=" + hosts);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / qps;
+        long begin = System.nanoTime();
+        long end = begin + TimeUnit.SECONDS.toNanos(duration);
+        ticker.scheduleAtFixedRate(() -> {
+            long scheduled = System.nanoTime();
+            if (scheduled < end) {
+                String operation = nextOperation();
+                workers.execute(() -> execute(operation, scheduled));
+            }
+        }, 0, intervalNanos, TimeUnit.NANOSECONDS);
+
+        TimeUnit.NANOSECONDS.sleep(end - begin);
+        ticker.shutdown();
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            System.out.println("workers not finished in 30s, pending requests dropped");
+            workers.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        recorders.values().forEach(r -> System.out.println(r.report(elapsed)));
+        for (FakeElasticsearchServer server : servers) {
+            System.out.println("server " + server.getHost() + " requests: " + server.getRequestCount());
+            server.close();
+        }
+        System.out.println(ClientHandler.getInstance().getNodeSelector());
+        if (ClientHandler.getInstance().getReadGuard() != null) {
+            System.out.println(ClientHandler.getInstance().getReadGuard());
+            System.out.println(ClientHandler.getInstance().getWriteGuard());
+        }
+        if (SearchHandler.getInstance().getGetBatcher() != null) {
+            System.out.println(SearchHandler.getInstance().getGetBatcher());
+        }
+        if (ClientHandler.getInstance().getHedgePolicy() != null) {
+            System.out.println(ClientHandler.getInstance().getHedgePolicy());
+        }
+        ClientHandler.getInstance().closeJestClient();
+    }
+
+    private void execute(String operation, long scheduled) {
+        LatencyRecorder recorder = recorders.get(operation);
+        try {
+            switch (operation) {
+                case "search":
+                    SearchHandler.getInstance().search(BenchmarkData.fieldRequest());
+                    break;
+                case "msearch":
+                    SearchHandler.getInstance().search(Lists.newArrayList(BenchmarkData.fieldRequest(),
+                            BenchmarkData.fieldRequest()));
+                    break;
+                case "get":
+                    SearchHandler.getInstance().get(BenchmarkData.INDEX_NAME, BenchmarkData.INDEX_TYPE,
+                            Integer.toString(ThreadLocalRandom.current().nextInt(100000)));
+                    break;
+                case "mget":
+                    List<Integer> ids = Lists.newArrayList();
+                    for (int i = 0; i < 20; i++) {
+                        ids.add(ThreadLocalRandom.current().nextInt(100000));
+                    }
+                    SearchHandler.getInstance().get(BenchmarkData.INDEX_NAME, BenchmarkData.INDEX_TYPE, ids);
+                    break;
+                case "bulk":
+                    if (!DocumentHandler.getInstance().bulkSaveDocList(BenchmarkData.INDEX_NAME,
+                            BenchmarkData.INDEX_TYPE, BenchmarkData.goodsList(getInt("bulkSize", 100)))) {
+                        recorder.recordError();
+                    }
+                    break;
+                case "index":
+                    long id = ThreadLocalRandom.current().nextInt(100000);
+                    DocumentHandler.getInstance().saveDoc(BenchmarkData.INDEX_NAME, BenchmarkData.INDEX_TYPE,
+                            Long.toString(id), BenchmarkData.goods(id));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown operation: " + operation);
+            }
+        } catch (Exception e) {
+            recorder.recordError();
+        } finally {
+            recorder.record(System.nanoTime() - scheduled);
+        }
+    }
+
+    private String nextOperation() {
+        int n = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < operations.length; i++) {
+            n -= weights[i];
+            if (n < 0) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void parseMix(String mix) {
+        String[] items = mix.split(",");
+        operations = new String[items.length];
+        weights = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            String[] kv = items[i].split(":");
+            operations[i] = kv[0].trim();
+            weights[i] = kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1;
+            totalWeight += weights[i];
+            recorders.put(operations[i], new LatencyRecorder(operations[i]));
+        }
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = options.get(key);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
@@ -1,13 +1,46 @@
 package org.elasticsearch.handler;
 
+import com.google.common.collect.Maps;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import io.searchbox.action.Action;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestClientFactory;
 import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
 import io.searchbox.client.config.HttpClientConfig;
+import io.searchbox.client.config.discovery.NodeChecker;
+import io.searchbox.client.http.JestHttpClient;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.elasticsearch.handler.client.HandlerJestClientFactory;
+import org.elasticsearch.handler.client.HandlerJestHttpClient;
+import org.elasticsearch.handler.client.HedgePolicy;
+import org.elasticsearch.handler.client.NodeSelector;
+import org.elasticsearch.handler.client.NodeSniffer;
+import org.elasticsearch.handler.codec.JsonCodecs;
+import org.elasticsearch.handler.limit.RequestGuard;
+import org.elasticsearch.handler.limit.RequestRejectedException;
+import org.elasticsearch.handler.cache.IndexVersions;
+import org.elasticsearch.handler.metrics.MetricsRegistry;
+import org.elasticsearch.handler.metrics.Operation;
+import org.elasticsearch.handler.metrics.Phase;
+import org.elasticsearch.handler.prop.HedgeProperty;
+import org.elasticsearch.handler.prop.LimitProperty;
 import org.elasticsearch.handler.prop.SearchProperty;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by Bob Jiang on 2016/10/28.
@@ -16,7 +49,21 @@ public class ClientHandler {
 
     private volatile static ClientHandler clientHandler;
 
-    private ClientHandler() {}
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private ClientHandler() {
+        for (Operation operation : Operation.values()) {
+            inFlight.put(operation, new AtomicInteger());
+        }
+    }
+
+    /**
+     * 创建独立的客户端, 使用自己的连接池及配置, 多集群时通过ClientRegistry管理
+     */
+    public ClientHandler(SearchProperty searchProperty) {
+        this();
+        this.searchProperty = searchProperty;
+    }
 
     public static ClientHandler getInstance() {
         if (clientHandler == null) {
@@ -30,39 +77,478 @@ public class ClientHandler {
     }
 
     private SearchProperty searchProperty;
-    private JestClient jestClient;
+    private volatile JestClient jestClient;
+    //异步回调线程池, 避免结果转换占用http io线程
+    private Executor callbackExecutor = ForkJoinPool.commonPool();
+
+    private volatile MetricsRegistry metricsRegistry = MetricsRegistry.NOOP;
+    private volatile HedgePolicy hedgePolicy;
+    private volatile RequestGuard readGuard;
+    private volatile RequestGuard writeGuard;
+    private final Map<Operation, AtomicInteger> inFlight = Maps.newEnumMap(Operation.class);
+    private final IndexVersions indexVersions = new IndexVersions();
 
     public JestClient getJestClient() {
         if (jestClient == null) {
-            if (searchProperty == null) {
-                throw new RuntimeException("searchProperty can't be null");
+            synchronized (this) {
+                if (jestClient == null) {
+                    jestClient = createJestClient();
+                }
             }
+        }
+        return jestClient;
+    }
 
-            HttpClientConfig clientConfig = new HttpClientConfig.Builder(searchProperty.getHosts())
-                    .readTimeout(searchProperty.getReadTimeout())
-                    .connTimeout(searchProperty.getReadTimeout())
-                    .multiThreaded(true).build();
+    private JestClient createJestClient() {
+        if (searchProperty == null) {
+            throw new RuntimeException("searchProperty can't be null");
+        }
 
-            JestClientFactory factory = new JestClientFactory();
-            factory.setHttpClientConfig(clientConfig);
-            jestClient = factory.getObject();
+        Integer connTimeout = searchProperty.getConnTimeout() != null ? searchProperty.getConnTimeout()
+                : searchProperty.getReadTimeout();
+        HttpClientConfig.Builder builder = new HttpClientConfig.Builder(searchProperty.getHosts())
+                .readTimeout(searchProperty.getReadTimeout())
+                .connTimeout(connTimeout)
+                .maxTotalConnection(searchProperty.getMaxTotalConnection())
+                .defaultMaxTotalConnectionPerRoute(searchProperty.getMaxConnectionPerRoute())
+                .requestCompressionEnabled(searchProperty.getRequestCompression())
+                .multiThreaded(true);
+        if (searchProperty.getMaxConnectionIdleTime() > 0) {
+            builder.maxConnectionIdleTime(searchProperty.getMaxConnectionIdleTime(), TimeUnit.MILLISECONDS);
         }
-        return jestClient;
+        builder.gson(JsonCodecs.gson());
+
+        //节点发现在包装后的客户端上启动, 否则发现的节点只更新到factory创建的客户端
+        JestClientFactory factory = new HandlerJestClientFactory(searchProperty.getKeepAlive(),
+                searchProperty.getResponseCompression());
+        factory.setHttpClientConfig(builder.discoveryEnabled(false).build());
+        NodeSelector nodeSelector = new NodeSelector(searchProperty.getNodeBlacklistTime(),
+                searchProperty.getMaxNodeBlacklistTime());
+        HandlerJestHttpClient client = new HandlerJestHttpClient((JestHttpClient) factory.getObject(),
+                builder.build(), nodeSelector);
+        client.setMetricsRegistry(metricsRegistry);
+        if (searchProperty.getDiscoveryEnabled()) {
+            HttpClientConfig discoveryConfig = builder.discoveryEnabled(true)
+                    .discoveryFrequency(searchProperty.getDiscoveryFrequency(), TimeUnit.MILLISECONDS)
+                    .discoveryFilter(searchProperty.getDiscoveryFilter()).build();
+            NodeChecker nodeChecker = new NodeSniffer(client, discoveryConfig);
+            client.setNodeChecker(nodeChecker);
+            nodeChecker.startAsync();
+        }
+        return client;
     }
 
     public <T extends JestResult> T execute(Action<T> action) throws IOException {
-        jestClient = getJestClient();
-        return jestClient.execute(action);
+        JestClient client = getJestClient();
+        Operation operation = Operation.of(action);
+        MetricsRegistry registry = metricsRegistry;
+        RequestGuard guard = getGuard(operation);
+        long begin = beginRequest(operation, registry, guard);
+        T result = null;
+        Exception error = null;
+        try {
+            result = client.execute(action);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            endRequest(operation, registry, guard, begin, result, error);
+        }
+    }
+
+    /**
+     * 对冲执行, 只用于只读请求
+     *
+     * 超过对冲延迟未返回时向另一节点发送相同请求, 先成功返回者为准, 另一个取消。
+     * 未开启对冲或非search、get请求(如scroll、写请求)时同execute。
+     */
+    public <T extends JestResult> T executeHedged(Action<T> action) throws IOException {
+        HedgePolicy policy = hedgePolicy;
+        Operation operation = Operation.of(action);
+        if (policy == null || !policy.isEnabled() || !operation.isHedgeable()) {
+            return execute(action);
+        }
+        HandlerJestHttpClient client = (HandlerJestHttpClient) getJestClient();
+        MetricsRegistry registry = metricsRegistry;
+        RequestGuard guard = getGuard(operation);
+        long begin = beginRequest(operation, registry, guard);
+        T result = null;
+        Exception error = null;
+        try {
+            result = hedge(client, action, operation, policy, registry, guard);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            endRequest(operation, registry, guard, begin, result, error);
+            if (error == null) {
+                policy.record(operation, System.nanoTime() - begin);
+            }
+        }
+    }
+
+    private <T extends JestResult> T hedge(HandlerJestHttpClient client, Action<T> action, Operation operation,
+                                           HedgePolicy policy, MetricsRegistry registry, RequestGuard guard)
+            throws IOException {
+        HedgedCall<T> call = new HedgedCall<>(policy);
+        String primary = client.getNodeSelector().select();
+        try {
+            call.primary = client.executeAsync(action, call.handler(false), primary);
+            long delay = policy.getDelay(operation);
+            if (delay >= 0) {
+                try {
+                    return call.result.get(delay, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    String server = client.getNodeSelector().select(primary);
+                    //对冲请求同样占用许可, 没有许可时不对冲
+                    if (server != null && tryAcquire(guard)) {
+                        if (policy.tryAcquire() && call.startHedge()) {
+                            registry.incrementHedge(operation);
+                            JestResultHandler<T> handler = guarded(call.handler(true), guard, System.nanoTime());
+                            try {
+                                call.hedge = client.executeAsync(action, handler, server);
+                            } catch (RuntimeException ex) {
+                                handler.failed(ex);
+                            }
+                        } else if (guard != null) {
+                            guard.cancel();
+                        }
+                    }
+                }
+            }
+            return call.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("hedged request interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        } finally {
+            call.cancel();
+        }
+    }
+
+    private boolean tryAcquire(RequestGuard guard) {
+        if (guard == null) {
+            return true;
+        }
+        try {
+            guard.acquire();
+            return true;
+        } catch (RequestRejectedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 对冲请求结束时释放许可, 被取消的请求不计入熔断及并发上限的统计
+     */
+    private <T extends JestResult> JestResultHandler<T> guarded(JestResultHandler<T> handler, RequestGuard guard,
+                                                                long begin) {
+        if (guard == null) {
+            return handler;
+        }
+        return new JestResultHandler<T>() {
+            @Override
+            public void completed(T result) {
+                releaseGuard(guard, System.nanoTime() - begin, result, null);
+                handler.completed(result);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                if (ex instanceof CancellationException) {
+                    guard.cancel();
+                } else {
+                    releaseGuard(guard, System.nanoTime() - begin, null, ex);
+                }
+                handler.failed(ex);
+            }
+        };
+    }
+
+    /**
+     * 原请求与对冲请求共用的结果, 两者都失败时才失败
+     */
+    private static class HedgedCall<T extends JestResult> {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final HedgePolicy policy;
+        volatile Future<HttpResponse> primary;
+        volatile Future<HttpResponse> hedge;
+        //5xx、429等响应, 另一个请求也失败时返回
+        volatile T failedResult;
+        volatile Exception error;
+
+        HedgedCall(HedgePolicy policy) {
+            this.policy = policy;
+        }
+
+        boolean startHedge() {
+            pending.incrementAndGet();
+            if (result.isDone()) {
+                pending.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        JestResultHandler<T> handler(boolean isHedge) {
+            return new JestResultHandler<T>() {
+                @Override
+                public void completed(T r) {
+                    int code = r.getResponseCode();
+                    if (code >= 500 || code == 429) {
+                        failedResult = r;
+                        finish();
+                    } else if (result.complete(r) && isHedge) {
+                        policy.onHedgeWin();
+                    }
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    error = ex;
+                    finish();
+                }
+            };
+        }
+
+        private void finish() {
+            if (pending.decrementAndGet() > 0) {
+                return;
+            }
+            T r = failedResult;
+            if (r != null) {
+                result.complete(r);
+            } else {
+                result.completeExceptionally(error);
+            }
+        }
+
+        void cancel() {
+            if (primary != null && !primary.isDone()) {
+                primary.cancel(true);
+            }
+            if (hedge != null && !hedge.isDone()) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 流式执行, 响应体不经过JestResult, 由parser边读边解析
+     */
+    public <R> R executeStream(Action<?> action, HandlerJestHttpClient.ResponseParser<R> parser) throws IOException {
+        JestClient client = getJestClient();
+        Operation operation = Operation.of(action);
+        MetricsRegistry registry = metricsRegistry;
+        RequestGuard guard = getGuard(operation);
+        long begin = beginRequest(operation, registry, guard);
+        Exception error = null;
+        try {
+            return ((HandlerJestHttpClient) client).executeStream(action, parser);
+        } catch (IOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            endRequest(operation, registry, guard, begin, null, error);
+        }
+    }
+
+    /**
+     * 异步执行, 不阻塞调用线程, 结果在callbackExecutor中回调
+     */
+    public <T extends JestResult> CompletableFuture<T> executeAsync(Action<T> action) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Operation operation = Operation.of(action);
+        MetricsRegistry registry = metricsRegistry;
+        RequestGuard guard = getGuard(operation);
+        long begin = 0;
+        boolean started = false;
+        try {
+            JestClient client = getJestClient();
+            begin = beginRequest(operation, registry, guard);
+            started = true;
+            long requestBegin = begin;
+            client.executeAsync(action, new JestResultHandler<T>() {
+                @Override
+                public void completed(T result) {
+                    endRequest(operation, registry, guard, requestBegin, result, null);
+                    callbackExecutor.execute(() -> future.complete(result));
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    endRequest(operation, registry, guard, requestBegin, null, ex);
+                    callbackExecutor.execute(() -> future.completeExceptionally(ex));
+                }
+            });
+        } catch (Exception e) {
+            if (started) {
+                endRequest(operation, registry, guard, begin, null, e);
+            }
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private long beginRequest(Operation operation, MetricsRegistry registry, RequestGuard guard)
+            throws RequestRejectedException {
+        if (guard != null) {
+            try {
+                guard.acquire();
+            } catch (RequestRejectedException e) {
+                registry.incrementError(operation, e.getErrorType());
+                throw e;
+            }
+        }
+        inFlight.get(operation).incrementAndGet();
+        return System.nanoTime();
+    }
+
+    private void endRequest(Operation operation, MetricsRegistry registry, RequestGuard guard, long begin,
+                            JestResult result, Throwable error) {
+        long elapsed = System.nanoTime() - begin;
+        inFlight.get(operation).decrementAndGet();
+        if (guard != null) {
+            releaseGuard(guard, elapsed, result, error);
+        }
+        registry.recordLatency(operation, Phase.HTTP, elapsed);
+        if (error != null) {
+            registry.incrementError(operation, error.getClass().getSimpleName());
+            return;
+        }
+        if (result == null || !registry.isEnabled()) {
+            return;
+        }
+        JsonObject object = result.getJsonObject();
+        if (object != null && object.get("took") != null && object.get("took").isJsonPrimitive()) {
+            registry.recordLatency(operation, Phase.TOOK, TimeUnit.MILLISECONDS.toNanos(object.get("took").getAsLong()));
+        }
+        if (!result.isSucceeded()) {
+            registry.incrementError(operation, getErrorType(result));
+        }
+    }
+
+    private void releaseGuard(RequestGuard guard, long elapsed, JestResult result, Throwable error) {
+        int code = result != null ? result.getResponseCode() : 0;
+        boolean dropped = code == TOO_MANY_REQUESTS || error instanceof SocketTimeoutException
+                || error instanceof ConnectTimeoutException;
+        guard.release(elapsed, error != null || code >= 500 || code == TOO_MANY_REQUESTS, dropped);
+    }
+
+    private String getErrorType(JestResult result) {
+        JsonObject object = result.getJsonObject();
+        JsonElement error = object != null ? object.get("error") : null;
+        if (error != null && error.isJsonObject() && error.getAsJsonObject().get("type") != null) {
+            return error.getAsJsonObject().get("type").getAsString();
+        }
+        return "http_" + result.getResponseCode();
     }
 
     public void closeJestClient() {
-        if (jestClient != null) {
-            jestClient.shutdownClient();
+        JestClient client = jestClient;
+        if (client != null) {
             jestClient = null;
+            client.shutdownClient();
         }
     }
 
     public void setSearchProperty(SearchProperty searchProperty) {
         this.searchProperty = searchProperty;
     }
+
+    /**
+     * 当前各节点的响应时间及拉黑状态
+     */
+    public NodeSelector getNodeSelector() {
+        return ((HandlerJestHttpClient) getJestClient()).getNodeSelector();
+    }
+
+    /**
+     * 设置读请求(search、get、scroll)的并发限制及熔断, 为null时不限制
+     */
+    public void setReadLimitProperty(LimitProperty property) {
+        this.readGuard = property != null ? new RequestGuard("read", property) : null;
+    }
+
+    /**
+     * 设置写请求(index、bulk、update、delete)的并发限制及熔断, 为null时不限制
+     */
+    public void setWriteLimitProperty(LimitProperty property) {
+        this.writeGuard = property != null ? new RequestGuard("write", property) : null;
+    }
+
+    public RequestGuard getReadGuard() {
+        return readGuard;
+    }
+
+    public RequestGuard getWriteGuard() {
+        return writeGuard;
+    }
+
+    /**
+     * 索引管理等其他请求不限制
+     */
+    private RequestGuard getGuard(Operation operation) {
+        if (operation.isRead()) {
+            return readGuard;
+        }
+        return operation.isWrite() ? writeGuard : null;
+    }
+
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * 设置指标记录, 默认不记录
+     */
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        MetricsRegistry registry = metricsRegistry != null ? metricsRegistry : MetricsRegistry.NOOP;
+        for (Operation operation : Operation.values()) {
+            AtomicInteger count = inFlight.get(operation);
+            registry.registerInFlightGauge(operation, count::get);
+        }
+        this.metricsRegistry = registry;
+        JestClient client = jestClient;
+        if (client instanceof HandlerJestHttpClient) {
+            ((HandlerJestHttpClient) client).setMetricsRegistry(registry);
+        }
+    }
+
+    /**
+     * 设置search/get的对冲请求, 默认不对冲
+     */
+    public void setHedgeProperty(HedgeProperty hedgeProperty) {
+        this.hedgePolicy = hedgeProperty != null ? new HedgePolicy(hedgeProperty) : null;
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * 本客户端的索引写入版本, 写入后使本客户端的搜索缓存失效
+     */
+    public IndexVersions getIndexVersions() {
+        return indexVersions;
+    }
+
+    public int getInFlight(Operation operation) {
+        return inFlight.get(operation).get();
+    }
 }
@@ -1,25 +1,53 @@
 package org.elasticsearch.handler;
 
 
-import com.alibaba.fastjson.JSONObject;
 import com.google.common.collect.Lists;
+import io.searchbox.action.Action;
+import io.searchbox.action.BulkableAction;
 import io.searchbox.client.JestResult;
 import io.searchbox.core.*;
+import org.elasticsearch.handler.bulk.BackoffPolicy;
+import org.elasticsearch.handler.bulk.BulkProcessor;
+import org.elasticsearch.handler.bulk.BulkReport;
+import org.elasticsearch.handler.bulk.BulkRetryHandler;
+import org.elasticsearch.handler.codec.JsonCodecs;
+import org.elasticsearch.handler.id.DocIdResolver;
+import org.elasticsearch.handler.metrics.Operation;
+import org.elasticsearch.handler.prop.BulkProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.beans.PropertyDescriptor;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 /**
  * Created by Bob Jiang on 2016/10/27.
  */
 public class DocumentHandler {
 
-    private ClientHandler clientHandler = ClientHandler.getInstance();
+    private static final Logger log = LoggerFactory.getLogger(DocumentHandler.class);
+
+    private final ClientHandler clientHandler;
+
+    //setBackoffPolicy可能在其他线程调用
+    private volatile BulkRetryHandler bulkRetryHandler;
 
     private volatile static DocumentHandler documentHandler;
 
-    private DocumentHandler() {}
+    private DocumentHandler() {
+        this(ClientHandler.getInstance());
+    }
+
+    /**
+     * 使用指定客户端, 多集群时每个客户端一个实例
+     */
+    public DocumentHandler(ClientHandler clientHandler) {
+        this.clientHandler = clientHandler;
+        this.bulkRetryHandler = new BulkRetryHandler(clientHandler, BackoffPolicy.exponential(50, 3));
+    }
 
     public static DocumentHandler getInstance() {
         if (documentHandler == null) {
@@ -35,20 +63,30 @@ public class DocumentHandler {
 
     public boolean saveDoc(String indexName, String indexType, String indexId, Object data) {
         try {
-            Index.Builder builder = new Index.Builder(data).index(indexName);
-            if (indexId != null) {
-                builder.id(indexId);
-            }
-            Index index = builder.type(indexType).build();
-            JestResult result = clientHandler.execute(index);
+            JestResult result = clientHandler.execute(buildIndex(indexName, indexType, indexId, data));
             return (result != null && result.isSucceeded()) ? true : false;
         } catch (Exception e) {
             throw new RuntimeException("saveDoc failed! " + e.getMessage(), e);
+        } finally {
+            clientHandler.getIndexVersions().bump(indexName);
         }
     }
 
+    public CompletableFuture<Boolean> saveDocAsync(String indexName, String indexType, String indexId, Object data) {
+        return executeAsync(buildIndex(indexName, indexType, indexId, data), "saveDoc")
+                .whenComplete((r, e) -> clientHandler.getIndexVersions().bump(indexName));
+    }
+
+    private Index buildIndex(String indexName, String indexType, String indexId, Object data) {
+        Index.Builder builder = new Index.Builder(JsonCodecs.toJson(data)).index(indexName);
+        if (indexId != null) {
+            builder.id(indexId);
+        }
+        return builder.type(indexType).build();
+    }
+
     public <T> boolean saveDoc(String indexName, String indexType, T data) {
-        String docId = getFieldValue(data, "id");
+        String docId = DocIdResolver.getId(data);
         if (docId != null) {
             return saveDoc(indexName, indexType, docId, data);
         }
@@ -56,15 +94,23 @@ public class DocumentHandler {
     }
 
     public <T> void saveDocList(String indexName, String indexType, List<T> dataList) {
-        saveDocList(indexName, indexType, "id", dataList);
+        saveDocList(indexName, indexType, DocIdResolver.DEFAULT_ID_FIELD, dataList);
     }
 
     public <T> void saveDocList(String indexName, String indexType, String indexIdField, List<T> dataList) {
+        saveDocList(indexName, indexType, dataList, t -> DocIdResolver.getId(t, indexIdField));
+    }
+
+    /**
+     * @param idExtractor 读取文档id, 返回null的文档跳过
+     */
+    public <T> void saveDocList(String indexName, String indexType, List<T> dataList,
+                                Function<? super T, String> idExtractor) {
         if (dataList == null || dataList.size() == 0) {
             throw new RuntimeException("dataList is null");
         }
         for (T t : dataList) {
-            String docId = getFieldValue(t, indexIdField);
+            String docId = idExtractor.apply(t);
             if (docId != null) {
                 saveDoc(indexName, indexType, docId, t);
             }
@@ -72,43 +118,119 @@ public class DocumentHandler {
     }
 
     public <T> boolean bulkSaveDocList(String indexName, String indexType, List<T> dataList) {
-        try {
-            Bulk.Builder builder = new Bulk.Builder().defaultIndex(indexName).defaultType(indexType);
-            List<Index> list = Lists.newArrayList();
-            for (T t : dataList) {
-                String docId = getFieldValue(t, "id");
-                if (docId != null) {
-                    list.add(new Index.Builder(t).id(docId).build());
-                }
+        return bulkSaveDocListReport(indexName, indexType, dataList).isSucceeded();
+    }
+
+    public <T> boolean bulkSaveDocList(String indexName, String indexType, List<T> dataList,
+                                       Function<? super T, String> idExtractor) {
+        return bulkSaveDocListReport(indexName, indexType, dataList, idExtractor).isSucceeded();
+    }
+
+    /**
+     * 批量保存, 429拒绝的条目按退避策略重试, 返回最终失败的条目
+     *      同步方法(包括bulk、deleteDoc、updateDoc)在调用线程中sleep等待退避, 默认策略最多等待350ms,
+     *      不能阻塞调用线程时使用Async方法。
+     */
+    public <T> BulkReport bulkSaveDocListReport(String indexName, String indexType, List<T> dataList) {
+        return bulkSaveDocListReport(indexName, indexType, dataList, DocIdResolver::getId);
+    }
+
+    public <T> BulkReport bulkSaveDocListReport(String indexName, String indexType, List<T> dataList,
+                                                Function<? super T, String> idExtractor) {
+        return bulk(buildIndexList(indexName, indexType, dataList, idExtractor), Operation.BULK, "bulkSaveDocList");
+    }
+
+    public <T> CompletableFuture<Boolean> bulkSaveDocListAsync(String indexName, String indexType, List<T> dataList) {
+        return bulkSaveDocListAsync(indexName, indexType, dataList, DocIdResolver::getId);
+    }
+
+    public <T> CompletableFuture<Boolean> bulkSaveDocListAsync(String indexName, String indexType, List<T> dataList,
+                                                               Function<? super T, String> idExtractor) {
+        return bulkAsync(buildIndexList(indexName, indexType, dataList, idExtractor), Operation.BULK, "bulkSaveDocList")
+                .thenApply(BulkReport::isSucceeded);
+    }
+
+    /**
+     * 429拒绝的条目在调用线程中按退避策略等待后重试
+     */
+    public BulkReport bulk(List<? extends BulkableAction> actions) {
+        return bulk(actions, Operation.BULK, "bulk");
+    }
+
+    public CompletableFuture<BulkReport> bulkAsync(List<? extends BulkableAction> actions) {
+        return bulkAsync(actions, Operation.BULK, "bulk");
+    }
+
+    <T> List<Index> buildIndexList(String indexName, String indexType, List<T> dataList,
+                                   Function<? super T, String> idExtractor) {
+        List<Index> list = Lists.newArrayListWithCapacity(dataList.size());
+        for (T t : dataList) {
+            String docId = idExtractor.apply(t);
+            if (docId != null) {
+                list.add(new Index.Builder(JsonCodecs.toJson(t)).index(indexName).type(indexType).id(docId).build());
             }
-            builder.addAction(list);
-            JestResult result = clientHandler.execute(builder.build());
-            return (result != null && result.isSucceeded()) ? true : false;
-        } catch (Exception e) {
-            throw new RuntimeException("bulkSaveDocList failed! " + e.getMessage(), e);
         }
+        return list;
     }
 
     public boolean deleteDoc(String indexName, String indexType, String indexId) {
-        try {
-            Delete delete = new Delete.Builder(indexId).index(indexName).type(indexType).build();
-            JestResult result = clientHandler.execute(new Bulk.Builder().addAction(delete).build());
-            return (result != null && result.isSucceeded()) ? true : false;
-        } catch (Exception e) {
-            throw new RuntimeException("deleteDoc failed! " + e.getMessage(), e);
-        }
+        return bulk(Lists.newArrayList(buildDelete(indexName, indexType, indexId)), Operation.DELETE, "deleteDoc")
+                .isSucceeded();
+    }
+
+    public CompletableFuture<Boolean> deleteDocAsync(String indexName, String indexType, String indexId) {
+        return bulkAsync(Lists.newArrayList(buildDelete(indexName, indexType, indexId)), Operation.DELETE, "deleteDoc")
+                .thenApply(BulkReport::isSucceeded);
+    }
+
+    private Delete buildDelete(String indexName, String indexType, String indexId) {
+        return new Delete.Builder(indexId).index(indexName).type(indexType).build();
     }
 
     public boolean updateDoc(String indexName, String indexType, String indexId, Object data) {
+        return bulk(Lists.newArrayList(buildUpdate(indexName, indexType, indexId, data)), Operation.UPDATE, "updateDoc")
+                .isSucceeded();
+    }
+
+    public CompletableFuture<Boolean> updateDocAsync(String indexName, String indexType, String indexId, Object data) {
+        return bulkAsync(Lists.newArrayList(buildUpdate(indexName, indexType, indexId, data)), Operation.UPDATE,
+                "updateDoc")
+                .thenApply(BulkReport::isSucceeded);
+    }
+
+    private Update buildUpdate(String indexName, String indexType, String indexId, Object data) {
+        return new Update.Builder(JsonCodecs.toJson(data)).index(indexName).type(indexType).id(indexId).build();
+    }
+
+    /**
+     * @param type 指标记录的操作类型
+     */
+    private BulkReport bulk(List<? extends BulkableAction> actions, Operation type, String operation) {
         try {
-            Update update = new Update.Builder(data).index(indexName).type(indexType).id(indexId).build();
-            JestResult result = clientHandler.execute(new Bulk.Builder().addAction(update).build());
-            return (result != null && result.isSucceeded()) ? true : false;
+            BulkReport report = bulkRetryHandler.execute(actions, type);
+            if (!report.isSucceeded()) {
+                log.warn("{} failed items: {}", operation, report.getFailures());
+            }
+            return report;
         } catch (Exception e) {
-            throw new RuntimeException("deleteDoc failed! " + e.getMessage(), e);
+            throw new RuntimeException(operation + " failed! " + e.getMessage(), e);
         }
     }
 
+    private CompletableFuture<BulkReport> bulkAsync(List<? extends BulkableAction> actions, Operation type,
+                                                    String operation) {
+        return bulkRetryHandler.executeAsync(actions, type).handle((report, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                throw new RuntimeException(operation + " failed! " + cause.getMessage(), cause);
+            }
+            if (!report.isSucceeded()) {
+                log.warn("{} failed items: {}", operation, report.getFailures());
+            }
+            return report;
+        });
+    }
+
     public boolean deleteByQuery(String indexName, String indexType, String query) {
         try {
             DeleteByQuery deleteByQuery = new DeleteByQuery.Builder(query).addIndex(indexName).addType(indexType).build();
@@ -116,21 +238,33 @@ public class DocumentHandler {
             return (result != null && result.isSucceeded()) ? true : false;
         } catch (IOException e) {
             throw new RuntimeException("deleteDoc failed! " + e.getMessage(), e);
+        } finally {
+            clientHandler.getIndexVersions().bump(indexName);
         }
     }
 
-    private String getFieldValue(Object obj, String fieldName) {
-        try {
-            if (obj instanceof JSONObject) {
-                return ((JSONObject) obj).get("id").toString();
-            } else {
-                PropertyDescriptor pd = new PropertyDescriptor(fieldName, obj.getClass());
-                return pd.getReadMethod().invoke(obj).toString();
+    /**
+     * 创建后台批量写入, 使用完毕需close
+     */
+    public BulkProcessor buildBulkProcessor(BulkProperty property, BulkProcessor.Listener listener) {
+        return new BulkProcessor(clientHandler, property, listener);
+    }
+
+    /**
+     * bulk中被拒绝(429)条目的重试策略
+     */
+    public void setBackoffPolicy(BackoffPolicy backoffPolicy) {
+        this.bulkRetryHandler = new BulkRetryHandler(clientHandler, backoffPolicy);
+    }
+
+    private <T extends JestResult> CompletableFuture<Boolean> executeAsync(Action<T> action, String operation) {
+        return clientHandler.executeAsync(action).handle((result, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                throw new RuntimeException(operation + " failed! " + cause.getMessage(), cause);
             }
-        } catch (Exception e) {
-            return null;
-//            throw new RuntimeException("fieldName[" + fieldName + "] was wrong", e);
-        }
+            return (result != null && result.isSucceeded()) ? true : false;
+        });
     }
 
 }
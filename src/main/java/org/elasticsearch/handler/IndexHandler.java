@@ -16,9 +16,18 @@ public class IndexHandler {
 
     private volatile static IndexHandler indexHandler;
 
-    private ClientHandler clientHandler = ClientHandler.getInstance();
+    private final ClientHandler clientHandler;
 
-    private IndexHandler() {}
+    private IndexHandler() {
+        this(ClientHandler.getInstance());
+    }
+
+    /**
+     * 使用指定客户端, 多集群时每个客户端一个实例
+     */
+    public IndexHandler(ClientHandler clientHandler) {
+        this.clientHandler = clientHandler;
+    }
 
     public static IndexHandler getInstance() {
         if (indexHandler == null) {
@@ -59,6 +68,8 @@ public class IndexHandler {
             return false;
         } catch (Exception e) {
             throw new RuntimeException("createIndex failed! " + e.getMessage(), e);
+        } finally {
+            clientHandler.getIndexVersions().bump(indexName);
         }
     }
 
@@ -77,6 +88,8 @@ public class IndexHandler {
             return (result != null && result.isSucceeded()) ? true : false;
         } catch (Exception e) {
             throw new RuntimeException("deleteIndex failed! " + e.getMessage(), e);
+        } finally {
+            clientHandler.getIndexVersions().bump(indexName);
         }
     }
 
@@ -86,6 +99,8 @@ public class IndexHandler {
             return (result != null && result.isSucceeded()) ? true : false;
         } catch (Exception e) {
             throw new RuntimeException("createMapping failed! " + e.getMessage(), e);
+        } finally {
+            clientHandler.getIndexVersions().bump(indexName);
         }
     }
 
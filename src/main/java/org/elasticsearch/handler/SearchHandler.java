@@ -3,13 +3,22 @@ package org.elasticsearch.handler;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.Feature;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.gson.*;
 import io.searchbox.action.AbstractAction;
-import io.searchbox.action.Action;
 import io.searchbox.client.JestResult;
 import io.searchbox.core.*;
+import org.elasticsearch.handler.batch.GetBatcher;
+import org.elasticsearch.handler.cache.IndexVersions;
+import org.elasticsearch.handler.cache.SearchResultCache;
+import org.elasticsearch.handler.cache.SingleFlight;
+import org.elasticsearch.handler.codec.GsonCodec;
+import org.elasticsearch.handler.codec.JsonCodec;
+import org.elasticsearch.handler.codec.JsonCodecs;
+import org.elasticsearch.handler.codec.SourceDecoder;
+import org.elasticsearch.handler.codec.StreamingHitParser;
 import org.elasticsearch.handler.constants.SearchConstants;
 import org.elasticsearch.handler.dto.SearchField;
 import org.elasticsearch.handler.dto.SearchOrder;
@@ -17,19 +26,44 @@ import org.elasticsearch.handler.dto.SearchPage;
 import org.elasticsearch.handler.dto.SearchRequest;
 import org.elasticsearch.handler.enums.Clause;
 import org.elasticsearch.handler.enums.QueryType;
+import org.elasticsearch.handler.limit.RequestRejectedException;
+import org.elasticsearch.handler.log.SlowLog;
+import org.elasticsearch.handler.metrics.Operation;
+import org.elasticsearch.handler.metrics.Phase;
+import org.elasticsearch.handler.prop.GetBatchProperty;
+import org.elasticsearch.handler.prop.MultiSearchProperty;
+import org.elasticsearch.handler.prop.SlowLogProperty;
+import org.elasticsearch.handler.query.BoolQueryPlanner;
+import org.elasticsearch.handler.query.QueryTemplate;
+import org.elasticsearch.handler.query.QueryTemplateCache;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.handler.cursor.SearchAfterIterator;
+import org.elasticsearch.handler.cursor.SlicedScrollExporter;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by Bob Jiang on 2016/10/27.
@@ -40,9 +74,32 @@ public class SearchHandler {
 
     private volatile static SearchHandler searchHandler;
 
-    private ClientHandler clientHandler = ClientHandler.getInstance();
+    private final ClientHandler clientHandler;
 
-    private SearchHandler() {}
+    private volatile SearchResultCache resultCache;
+
+    private volatile SlowLog slowLog = new SlowLog(new SlowLogProperty());
+
+    private volatile GetBatcher getBatcher;
+
+    private volatile SingleFlight<String, JestResult> singleFlight;
+
+    private volatile MultiSearchProperty multiSearchProperty;
+
+    private volatile boolean queryOptimize = true;
+
+    private volatile QueryTemplateCache templateCache;
+
+    private SearchHandler() {
+        this(ClientHandler.getInstance());
+    }
+
+    /**
+     * 使用指定客户端, 多集群时每个客户端一个实例
+     */
+    public SearchHandler(ClientHandler clientHandler) {
+        this.clientHandler = clientHandler;
+    }
 
     public static SearchHandler getInstance() {
         if (searchHandler == null) {
@@ -63,36 +120,185 @@ public class SearchHandler {
         if (!searchRequest.getIndexType().isEmpty()) {
             builder.addTypes(searchRequest.getIndexType());
         }
+        if (searchRequest.getFilterPath() != null && !searchRequest.getFilterPath().isEmpty()) {
+            builder.setParameter(SearchConstants.SEARCH_PARAM_FILTER_PATH, String.join(",", searchRequest.getFilterPath()));
+        }
         return builder.build();
     }
 
     public Search buildSearch(SearchRequest request) {
+        long begin = System.nanoTime();
+        QueryTemplateCache templates = templateCache;
         if (request.getQuery() != null) {
             String query = request.getQuery();
             SearchPage page = request.getPage();
-            if (page != null && page.getEnable()) {
-                Integer size = page.getPageSize();
-                Integer from = page.getPageNum() != null && page.getPageNum() != 0 ? (page.getPageNum() - 1) * size : 0;
-
+            boolean paged = page != null && page.getEnable();
+            if (paged || hasFetchOptions(request)) {
                 JSONObject json = JSON.parseObject(query);
-                json.put("size", size);
-                json.put("from", from);
+                if (paged) {
+                    Integer size = page.getPageSize();
+                    Integer from = page.getPageNum() != null && page.getPageNum() != 0 ? (page.getPageNum() - 1) * size : 0;
+                    json.put("size", size);
+                    json.put("from", from);
+                }
+                applyFetchOptions(json, request);
                 query = json.toJSONString();
             }
 
             query = buildOrder(request.getOrder(), query);
             request.setQuery(query);
         } else {
-            SearchSourceBuilder searchSourceBuilder = buildSearchBuilder(request);
-            SearchPage page = request.getPage();
-            if (page != null && page.getEnable()) {
-                Integer size = page.getPageSize();
-                Integer from = page.getPageNum() != null && page.getPageNum() != 0 ? (page.getPageNum() - 1) * size : 0;
-                searchSourceBuilder.from(from).size(size);
+            String query = templates != null ? renderTemplate(templates, request) : null;
+            if (query == null) {
+                SearchSourceBuilder searchSourceBuilder = buildSearchBuilder(request);
+                SearchPage page = request.getPage();
+                if (page != null && page.getEnable()) {
+                    Integer size = page.getPageSize();
+                    Integer from = page.getPageNum() != null && page.getPageNum() != 0 ? (page.getPageNum() - 1) * size : 0;
+                    searchSourceBuilder.from(from).size(size);
+                }
+                query = searchSourceBuilder.toString();
+            }
+            request.setQuery(query);
+        }
+        Search search = getSearch(request);
+        clientHandler.getMetricsRegistry().recordLatency(Operation.SEARCH, Phase.BUILD, System.nanoTime() - begin);
+        return search;
+    }
+
+    /**
+     * SearchField查询按结构(字段、查询方式、条件、排序、高亮等, 不含值)取模板, 只替换值及分页
+     * @return 优化时有重复条件被去除, 生成的语句与值相关, 不使用模板, 返回null
+     */
+    private String renderTemplate(QueryTemplateCache templates, SearchRequest request) {
+        boolean matchAll = request.getMatchAllFieldSize() > 0;
+        List<Object> values = Lists.newArrayList();
+        if (!matchAll) {
+            BoolQueryPlanner planner = new BoolQueryPlanner(queryOptimize);
+            addTemplateValues(values, planner, request.getValue(), request.getMust(), Clause.must);
+            addTemplateValues(values, planner, request.getValue(), request.getShould(), Clause.should);
+            addTemplateValues(values, planner, request.getValue(), request.getMustNot(), Clause.mustNot);
+            addTemplateValues(values, planner, request.getValue(), request.getFilter(), Clause.filter);
+            if (planner.hasDuplicates()) {
+                return null;
+            }
+        }
+        int pageSlot = values.size();
+        boolean paged = addPageValues(values, request.getPage());
+
+        StringBuilder shape = new StringBuilder(256).append(queryOptimize).append('|').append(matchAll);
+        appendShape(shape, request.getMust());
+        appendShape(shape, request.getShould());
+        appendShape(shape, request.getMustNot());
+        appendShape(shape, request.getFilter());
+        appendShape(shape, request, paged);
+
+        QueryTemplate template = templates.get(shape.toString(), () -> {
+            SearchRequest shadow = new SearchRequest();
+            if (!matchAll) {
+                int[] slot = {0};
+                shadow.setMust(templateFields(request.getMust(), slot));
+                shadow.setShould(templateFields(request.getShould(), slot));
+                shadow.setMustNot(templateFields(request.getMustNot(), slot));
+                shadow.setFilter(templateFields(request.getFilter(), slot));
+            } else {
+                shadow.setMust(request.getMust());
+                shadow.setShould(request.getShould());
+                shadow.setMustNot(request.getMustNot());
+                shadow.setFilter(request.getFilter());
+            }
+            shadow.setOrder(request.getOrder());
+            shadow.setHighlight(request.getHighlight());
+            shadow.setIncludes(request.getIncludes());
+            shadow.setExcludes(request.getExcludes());
+            shadow.setDocValueFields(request.getDocValueFields());
+            shadow.setStoredFields(request.getStoredFields());
+
+            JSONObject json = JSON.parseObject(buildSearchBuilder(shadow).toString(), Feature.OrderedField);
+            if (paged) {
+                json.put("from", QueryTemplate.slot(pageSlot));
+                json.put("size", QueryTemplate.slot(pageSlot + 1));
+            }
+            return QueryTemplate.parse(json.toJSONString());
+        });
+        return template.render(values);
+    }
+
+    /**
+     * 与buildQueryField相同的取值方式, 未指定值的字段沿用前一个字段的值, range拆为from、to两个值
+     */
+    private void addTemplateValues(List<Object> values, BoolQueryPlanner planner, Object value,
+                                   List<SearchField> fields, Clause clause) {
+        if (fields == null) {
+            return;
+        }
+        for (SearchField field : fields) {
+            value = field.getValue() != null ? field.getValue() : value;
+            String val = value != null ? value.toString().toLowerCase() : "";
+            if (field.getQueryType() == QueryType.range) {
+                String[] range = val.split("#");
+                values.add(range[0]);
+                values.add(range[1]);
+            } else if (field.getQueryType() == QueryType.regexp) {
+                val = value.toString();
+                values.add(val);
+            } else {
+                values.add(val);
+            }
+            //只用于判断是否有重复条件, 不生成查询
+            planner.add(clause, field.getQueryType(), field.getFieldName(), val, null);
+        }
+    }
+
+    private List<SearchField> templateFields(List<SearchField> fields, int[] slot) {
+        if (fields == null) {
+            return null;
+        }
+        List<SearchField> list = Lists.newArrayListWithCapacity(fields.size());
+        for (SearchField field : fields) {
+            String value = QueryTemplate.slot(slot[0]++);
+            if (field.getQueryType() == QueryType.range) {
+                value += "#" + QueryTemplate.slot(slot[0]++);
+            }
+            list.add(new SearchField(field.getFieldName(), value, field.getQueryType()));
+        }
+        return list;
+    }
+
+    private boolean addPageValues(List<Object> values, SearchPage page) {
+        if (page == null || !page.getEnable()) {
+            return false;
+        }
+        Integer size = page.getPageSize();
+        Integer from = page.getPageNum() != null && page.getPageNum() != 0 ? (page.getPageNum() - 1) * size : 0;
+        values.add(from);
+        values.add(size);
+        return true;
+    }
+
+    private void appendShape(StringBuilder shape, List<SearchField> fields) {
+        shape.append('|');
+        if (fields != null) {
+            for (SearchField field : fields) {
+                shape.append(field.getFieldName()).append(':').append(field.getQueryType()).append(',');
             }
-            request.setQuery(searchSourceBuilder.toString());
         }
-        return getSearch(request);
+    }
+
+    private void appendShape(StringBuilder shape, SearchRequest request, boolean paged) {
+        shape.append('|').append(paged);
+        if (request.getOrder() != null) {
+            for (SearchOrder order : request.getOrder()) {
+                shape.append(order.getName()).append(':').append(order.getSort()).append(',');
+            }
+        }
+        SearchRequest.Highlight highlight = request.getHighlight();
+        if (highlight != null && highlight.getEnable()) {
+            shape.append('|').append(highlight.getHighlightFieldName()).append(':').append(highlight.getPreTag())
+                    .append(':').append(highlight.getPostTag());
+        }
+        shape.append('|').append(request.getIncludes()).append(request.getExcludes())
+                .append(request.getDocValueFields()).append(request.getStoredFields());
     }
 
     public MultiSearch buildSearch(List<SearchRequest> requests) {
@@ -100,7 +306,65 @@ public class SearchHandler {
         for (SearchRequest request : requests) {
             searches.add(buildSearch(request));
         }
-        return new MultiSearch.Builder(searches).build();
+        return buildMultiSearch(searches, requests);
+    }
+
+    /**
+     * msearch的filter_path作用于整个响应, 只有所有请求的filterPath相同时才设置, 并加上responses前缀
+     */
+    private MultiSearch buildMultiSearch(List<Search> searches, List<SearchRequest> requests) {
+        MultiSearch.Builder builder = new MultiSearch.Builder(searches);
+        List<String> filterPath = requests.get(0).getFilterPath();
+        if (filterPath != null && !filterPath.isEmpty()
+                && requests.stream().allMatch(r -> filterPath.equals(r.getFilterPath()))) {
+            builder.setParameter(SearchConstants.SEARCH_PARAM_FILTER_PATH,
+                    filterPath.stream().map(p -> "responses." + p).collect(Collectors.joining(",")));
+        }
+        return builder.build();
+    }
+
+    private boolean hasFetchOptions(SearchRequest request) {
+        return request.hasSourceFilter()
+                || (request.getDocValueFields() != null && !request.getDocValueFields().isEmpty())
+                || (request.getStoredFields() != null && !request.getStoredFields().isEmpty());
+    }
+
+    /**
+     * DSL查询加上_source过滤及docvalue_fields、stored_fields
+     */
+    private void applyFetchOptions(JSONObject query, SearchRequest request) {
+        if (request.hasSourceFilter()) {
+            JSONObject source = new JSONObject();
+            if (request.getIncludes() != null && !request.getIncludes().isEmpty()) {
+                source.put("includes", request.getIncludes());
+            }
+            if (request.getExcludes() != null && !request.getExcludes().isEmpty()) {
+                source.put("excludes", request.getExcludes());
+            }
+            query.put("_source", source);
+        }
+        if (request.getDocValueFields() != null && !request.getDocValueFields().isEmpty()) {
+            query.put("docvalue_fields", request.getDocValueFields());
+        }
+        if (request.getStoredFields() != null && !request.getStoredFields().isEmpty()) {
+            query.put("stored_fields", request.getStoredFields());
+        }
+    }
+
+    private void applyFetchOptions(SearchSourceBuilder builder, SearchRequest request) {
+        if (request.hasSourceFilter()) {
+            builder.fetchSource(toArray(request.getIncludes()), toArray(request.getExcludes()));
+        }
+        if (request.getDocValueFields() != null) {
+            request.getDocValueFields().forEach(builder::docValueField);
+        }
+        if (request.getStoredFields() != null && !request.getStoredFields().isEmpty()) {
+            builder.storedFields(request.getStoredFields());
+        }
+    }
+
+    private static String[] toArray(List<String> list) {
+        return list != null ? list.toArray(new String[0]) : null;
     }
 
     /**
@@ -114,13 +378,22 @@ public class SearchHandler {
             return search(requests.get(0));
         }
 
+        if (multiSearchProperty != null) {
+            try {
+                List<JestResult> results = fanOut(requests, (i, r) -> r, null).join();
+                return convertResult(results, requests.get(0).getPage());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
         MultiSearch search = buildSearch(requests);
-        JestResult result = search(search);
+        JestResult result = cachedSearch(search, indexNames(requests));
         return convertResult(result, requests.get(0).getPage());
     }
 
     public JSONObject search(SearchRequest request) {
-        JestResult result = search(buildSearch(request));
+        JestResult result = cachedSearch(buildSearch(request), request.getIndexName());
         return convertResult(result, request.getPage());
     }
 
@@ -147,141 +420,801 @@ public class SearchHandler {
         request.setIndexType(indexType);
         request.setPage(page);
         request.setOrder(order);
-        JestResult result = search(buildSearch(request));
+        JestResult result = cachedSearch(buildSearch(request), request.getIndexName());
         return convertResult(result, page);
     }
 
     public <T extends AbstractAction> JestResult search(T search) {
         JestResult result = null;
-        String msg = null;
+        Exception error = null;
+        long begin = System.currentTimeMillis();
         try {
-            String query = search.getData(new Gson());
-            if (query.length() > 4096) {
-                query = query.substring(0, 4096) + "...";
+            result = clientHandler.executeHedged(search);
+        } catch (Exception e) {
+            error = e;
+        }
+        return checkSearchResult(search, begin, result, error);
+    }
+
+    public <T extends AbstractAction> CompletableFuture<JestResult> searchAsync(T search) {
+        long begin = System.currentTimeMillis();
+        CompletableFuture<JestResult> future = clientHandler.executeAsync(search);
+        return future.handle((result, e) -> checkSearchResult(search, begin, result, unwrap(e)));
+    }
+
+    public CompletableFuture<JSONObject> searchAsync(SearchRequest request) {
+        return cachedSearchAsync(buildSearch(request), request.getIndexName())
+                .thenApply(result -> convertResult(result, request.getPage()));
+    }
+
+    public CompletableFuture<JSONObject> searchAsync(List<SearchRequest> requests) {
+        if (requests.size() == 1) {
+            return searchAsync(requests.get(0));
+        }
+        if (multiSearchProperty != null) {
+            return fanOut(requests, (i, r) -> r, null)
+                    .thenApply(results -> convertResult(results, requests.get(0).getPage()));
+        }
+        return cachedSearchAsync(buildSearch(requests), indexNames(requests))
+                .thenApply(result -> convertResult(result, requests.get(0).getPage()));
+    }
+
+    /**
+     * 复合搜索拆分为多个msearch并发执行, 每个搜索的结果单独转换, 按请求顺序返回
+     *
+     * 未设置MultiSearchProperty时使用默认配置。
+     * @param onResult 每个搜索完成时回调, 参数为请求下标及结果, 回调串行执行, 可为null
+     */
+    public CompletableFuture<List<JSONObject>> searchEachAsync(List<SearchRequest> requests,
+                                                               BiConsumer<Integer, JSONObject> onResult) {
+        return fanOut(requests, (i, r) -> convertResult(r, requests.get(i).getPage()), onResult);
+    }
+
+    private <R> CompletableFuture<List<R>> fanOut(List<SearchRequest> requests, BiFunction<Integer, JestResult, R> converter,
+                                                  BiConsumer<Integer, R> onResult) {
+        MultiSearchProperty property = multiSearchProperty != null ? multiSearchProperty : new MultiSearchProperty();
+        List<Search> searches = Lists.newArrayListWithCapacity(requests.size());
+        for (SearchRequest request : requests) {
+            searches.add(buildSearch(request));
+        }
+        return new MultiSearchFanOut<>(requests, searches, split(requests, property), converter, onResult)
+                .start(Math.max(1, property.getMaxConcurrency()));
+    }
+
+    /**
+     * 按条数及请求体大小拆分, 返回每段的起止下标[from, to)
+     */
+    private List<int[]> split(List<SearchRequest> requests, MultiSearchProperty property) {
+        List<int[]> chunks = Lists.newArrayList();
+        int from = 0;
+        long bytes = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            long size = estimateBytes(requests.get(i));
+            if (i > from && (i - from >= property.getMaxRequestsPerChunk() || bytes + size > property.getMaxBytesPerChunk())) {
+                chunks.add(new int[]{from, i});
+                from = i;
+                bytes = 0;
             }
-            log.info("search [{}]: {}", search.getURI(), query);
-            result = clientHandler.execute(search);
+            bytes += size;
+        }
+        if (from < requests.size()) {
+            chunks.add(new int[]{from, requests.size()});
+        }
+        return chunks;
+    }
 
-            if (result != null && result.isSucceeded()) {
-                if (result instanceof MultiSearchResult) {
-                    MultiSearchResult searchResult = (MultiSearchResult) result;
-
-                    List<Integer> tookList = searchResult.getResponses().stream().map(c -> c.searchResult.getJsonObject()
-                            .get("took").getAsInt()).collect(Collectors.toList());
-                    List<Integer> totalList = searchResult.getResponses().stream().map(c -> c.searchResult.getJsonObject()
-                            .get(SearchConstants.SEARCH_RESULT_KEY_HITS).getAsJsonObject().
-                                    get(SearchConstants.SEARCH_RESULT_KEY_TOTAL).getAsInt()).collect(Collectors.toList());
-                    log.info("search result [{}]: took: {}, total: {}", search.getURI(), tookList, totalList);
+    private long estimateBytes(SearchRequest request) {
+        //msearch每个搜索一行header一行body
+        long size = request.getQuery().getBytes(StandardCharsets.UTF_8).length + 32;
+        for (String name : request.getIndexName()) {
+            size += name.length() + 3;
+        }
+        for (String type : request.getIndexType()) {
+            size += type.length() + 3;
+        }
+        return size;
+    }
+
+    /**
+     * 一次拆分执行, 完成一段后启动下一段, 同时执行的段数不超过maxConcurrency
+     */
+    private class MultiSearchFanOut<R> {
+
+        private final List<SearchRequest> requests;
+        private final List<Search> searches;
+        private final List<int[]> chunks;
+        private final BiFunction<Integer, JestResult, R> converter;
+        private final BiConsumer<Integer, R> onResult;
+
+        private final Object[] results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<List<R>> future = new CompletableFuture<>();
+
+        MultiSearchFanOut(List<SearchRequest> requests, List<Search> searches, List<int[]> chunks,
+                          BiFunction<Integer, JestResult, R> converter, BiConsumer<Integer, R> onResult) {
+            this.requests = requests;
+            this.searches = searches;
+            this.chunks = chunks;
+            this.converter = converter;
+            this.onResult = onResult;
+            this.results = new Object[requests.size()];
+            this.remaining = new AtomicInteger(chunks.size());
+        }
+
+        CompletableFuture<List<R>> start(int concurrency) {
+            if (chunks.isEmpty()) {
+                future.complete(Lists.newArrayList());
+            }
+            for (int i = 0; i < concurrency; i++) {
+                launchNext();
+            }
+            return future;
+        }
+
+        private void launchNext() {
+            int index = next.getAndIncrement();
+            if (index >= chunks.size() || future.isDone()) {
+                return;
+            }
+            int[] chunk = chunks.get(index);
+            CompletableFuture<JestResult> chunkFuture;
+            try {
+                if (chunk[1] - chunk[0] == 1) {
+                    chunkFuture = cachedSearchAsync(searches.get(chunk[0]), requests.get(chunk[0]).getIndexName());
                 } else {
-                    JsonObject object = result.getJsonObject();
-                    log.info("search result [{}]: {} took: {}, total: {}", search.getURI(), result.getPathToResult(),
-                            object.get("took").getAsInt(),
-                            object.get(SearchConstants.SEARCH_RESULT_KEY_HITS).getAsJsonObject()
-                                    .get(SearchConstants.SEARCH_RESULT_KEY_TOTAL).getAsInt());
+                    chunkFuture = cachedSearchAsync(buildMultiSearch(searches.subList(chunk[0], chunk[1]),
+                            requests.subList(chunk[0], chunk[1])), indexNames(requests.subList(chunk[0], chunk[1])));
+                }
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            chunkFuture.whenComplete((result, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(unwrap(e));
+                    return;
                 }
+                try {
+                    complete(chunk, result);
+                } catch (RuntimeException ex) {
+                    future.completeExceptionally(ex);
+                    return;
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    future.complete(toList());
+                } else {
+                    launchNext();
+                }
+            });
+        }
+
+        private void complete(int[] chunk, JestResult result) {
+            for (int i = chunk[0]; i < chunk[1]; i++) {
+                JestResult r = result;
+                if (result instanceof MultiSearchResult) {
+                    MultiSearchResult.MultiSearchResponse response = ((MultiSearchResult) result).getResponses().get(i - chunk[0]);
+                    if (response.isError) {
+                        throw new RuntimeException("search failed! " + response.errorMessage);
+                    }
+                    r = response.searchResult;
+                }
+                R value = converter.apply(i, r);
+                results[i] = value;
+                if (onResult != null) {
+                    synchronized (this) {
+                        try {
+                            onResult.accept(i, value);
+                        } catch (RuntimeException e) {
+                            log.error("multi search callback failed! " + e.getMessage(), e);
+                        }
+                    }
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<R> toList() {
+            List<R> list = Lists.newArrayListWithCapacity(results.length);
+            for (Object result : results) {
+                list.add((R) result);
+            }
+            return list;
+        }
+    }
+
+    public <T> CompletableFuture<List<T>> searchListAsync(SearchRequest request, Class<T> clazz) {
+        return cachedSearchAsync(buildSearch(request), request.getIndexName())
+                .thenApply(result -> convertList(result, request, clazz));
+    }
+
+    /**
+     * 开启结果缓存后, 相同请求地址和查询语句在过期前直接返回缓存结果,
+     * 未命中时相同请求同时只发送一次, 并发的调用方共享结果
+     */
+    private JestResult cachedSearch(AbstractAction search, List<String> indexNames) {
+        SearchResultCache cache = resultCache;
+        SingleFlight<String, JestResult> flight = singleFlight;
+        if (cache == null && flight == null) {
+            return search(search);
+        }
+        String key = cacheKey(search);
+        if (cache != null) {
+            JestResult result = cache.get(key);
+            if (result != null) {
+                log.debug("search cache hit [{}]", search.getURI());
                 return result;
             }
-        } catch (Exception e) {
-            msg = e.getMessage();
+        }
+        IndexVersions indexVersions = clientHandler.getIndexVersions();
+        long[] versions = indexVersions.snapshot(indexNames);
+        if (flight == null) {
+            JestResult result = search(search);
+            cache.put(key, indexNames, indexVersions, versions, result);
+            return result;
+        }
+        return flight.execute(flightKey(key, versions), () -> {
+            JestResult result = search(search);
+            if (cache != null) {
+                cache.put(key, indexNames, indexVersions, versions, result);
+            }
+            return result;
+        });
+    }
+
+    private CompletableFuture<JestResult> cachedSearchAsync(AbstractAction search, List<String> indexNames) {
+        SearchResultCache cache = resultCache;
+        SingleFlight<String, JestResult> flight = singleFlight;
+        if (cache == null && flight == null) {
+            return searchAsync(search);
+        }
+        String key = cacheKey(search);
+        if (cache != null) {
+            JestResult result = cache.get(key);
+            if (result != null) {
+                log.debug("search cache hit [{}]", search.getURI());
+                return CompletableFuture.completedFuture(result);
+            }
+        }
+        IndexVersions indexVersions = clientHandler.getIndexVersions();
+        long[] versions = indexVersions.snapshot(indexNames);
+        Supplier<CompletableFuture<JestResult>> loader = () -> searchAsync(search).thenApply(r -> {
+            if (cache != null) {
+                cache.put(key, indexNames, indexVersions, versions, r);
+            }
+            return r;
+        });
+        return flight != null ? flight.executeAsync(flightKey(key, versions), loader) : loader.get();
+    }
+
+    private String cacheKey(AbstractAction search) {
+        return search.getURI() + "\n" + search.getData(JsonCodecs.gson());
+    }
+
+    /**
+     * 加上索引版本, 本客户端写入后发起的查询不会共享写入前的结果
+     */
+    private String flightKey(String cacheKey, long[] versions) {
+        return versions.length == 0 ? cacheKey : Arrays.toString(versions) + cacheKey;
+    }
+
+    private List<String> indexNames(List<SearchRequest> requests) {
+        List<String> indexNames = Lists.newArrayList();
+        for (SearchRequest request : requests) {
+            if (request.getIndexName().isEmpty()) {
+                return Lists.newArrayList();
+            }
+            indexNames.addAll(request.getIndexName());
+        }
+        return indexNames;
+    }
+
+    /**
+     * 开启搜索结果缓存, null为关闭
+     */
+    public void setResultCache(SearchResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public SearchResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * 相同的并发查询只发送一次, 默认不开启
+     */
+    public void setSingleFlightEnabled(boolean enabled) {
+        this.singleFlight = enabled ? new SingleFlight<>() : null;
+    }
+
+    public SingleFlight<String, JestResult> getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * 慢查询日志阈值及抽样比例
+     */
+    public void setSlowLogProperty(SlowLogProperty property) {
+        this.slowLog = new SlowLog(property);
+    }
+
+    /**
+     * 开启后并发的单文档get合并为mget, 为null时关闭
+     */
+    public void setGetBatchProperty(GetBatchProperty property) {
+        this.getBatcher = property != null ? new GetBatcher(clientHandler, property) : null;
+    }
+
+    public GetBatcher getGetBatcher() {
+        return getBatcher;
+    }
+
+    /**
+     * 开启后search(List)拆分为多个msearch并发执行, 为null时关闭
+     */
+    public void setMultiSearchProperty(MultiSearchProperty multiSearchProperty) {
+        this.multiSearchProperty = multiSearchProperty;
+    }
+
+    public MultiSearchProperty getMultiSearchProperty() {
+        return multiSearchProperty;
+    }
+
+    /**
+     * SearchField生成bool查询时是否优化, 默认开启, 规则见BoolQueryPlanner
+     */
+    public void setQueryOptimize(boolean queryOptimize) {
+        this.queryOptimize = queryOptimize;
+    }
+
+    /**
+     * 查询模板缓存, 只作用于SearchField查询, 默认不开启, 为null时每次重新构建查询语句
+     */
+    public void setQueryTemplateCache(QueryTemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    public QueryTemplateCache getQueryTemplateCache() {
+        return templateCache;
+    }
+
+    private JestResult checkSearchResult(AbstractAction search, long begin, JestResult result, Throwable error) {
+        if (error == null) {
+            try {
+                if (result != null && result.isSucceeded()) {
+                    logSearchResult(search, result, System.currentTimeMillis() - begin);
+                    return result;
+                }
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+        throw checkFailed(search, result, error);
+    }
+
+    private RuntimeException checkFailed(AbstractAction search, JestResult result, Throwable error) {
+        String msg = null;
+        if (error != null) {
+            msg = error.getMessage();
             if (result != null) {
                 msg += ". es msg: " + result.getErrorMessage();
             }
-            log.error("search failed! " + msg, e);
+            log.error("search failed! " + msg, error);
         }
-        throw new RuntimeException("search failed! " + msg);
+        return new RuntimeException("search failed! " + msg);
+    }
+
+    private void logSearchResult(AbstractAction search, JestResult result, long elapsed) {
+        SlowLog.Level level = slowLog.level(elapsed);
+        if (level == null) {
+            return;
+        }
+        long took;
+        Supplier<?> total;
+        if (result instanceof MultiSearchResult) {
+            List<MultiSearchResult.MultiSearchResponse> responses = ((MultiSearchResult) result).getResponses();
+            took = responses.stream().mapToLong(c -> getTook(c.searchResult)).max().orElse(-1);
+            total = () -> responses.stream().map(c -> getTotal(c.searchResult)).collect(Collectors.toList());
+        } else {
+            took = getTook(result);
+            total = () -> getTotal(result);
+        }
+        slowLog.log(level, "search", search.getURI(), elapsed, took, total, () -> search.getData(JsonCodecs.gson()));
+    }
+
+    private long getTook(JestResult result) {
+        JsonObject object = result != null ? result.getJsonObject() : null;
+        JsonElement took = object != null ? object.get("took") : null;
+        return took != null ? took.getAsLong() : -1;
+    }
+
+    private Long getTotal(JestResult result) {
+        JsonObject object = result != null ? result.getJsonObject() : null;
+        JsonObject hits = object != null ? object.getAsJsonObject(SearchConstants.SEARCH_RESULT_KEY_HITS) : null;
+        JsonElement total = hits != null ? hits.get(SearchConstants.SEARCH_RESULT_KEY_TOTAL) : null;
+        return total != null ? total.getAsLong() : null;
     }
 
     public JSONObject get(String index, String type, String id) {
+        GetBatcher batcher = getBatcher;
+        if (batcher != null) {
+            try {
+                return getBatched(batcher, index, type, id).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        long begin = System.currentTimeMillis();
+        JestResult result = null;
+        Exception error = null;
         try {
-            Long begin = System.currentTimeMillis();
-            Get get = new Get.Builder(index, id.toString()).type(type).build();
-            log.info("get {}/{}/{}", index, type, id);
-            JestResult result = clientHandler.execute(get);
-            if (result != null && result.isSucceeded()) {
-                log.info("get result id: {} time: {}, result: {}", id, System.currentTimeMillis() - begin, result.getSourceAsString());
+            result = clientHandler.executeHedged(buildGet(index, type, id));
+        } catch (Exception e) {
+            error = e;
+        }
+        return convertGetResult(index, type, id, begin, result, error);
+    }
+
+    public CompletableFuture<JSONObject> getAsync(String index, String type, String id) {
+        GetBatcher batcher = getBatcher;
+        if (batcher != null) {
+            return getBatched(batcher, index, type, id);
+        }
+        long begin = System.currentTimeMillis();
+        CompletableFuture<DocumentResult> future = clientHandler.executeAsync(buildGet(index, type, id));
+        return future.handle((result, e) -> convertGetResult(index, type, id, begin, result, unwrap(e)));
+    }
+
+    private CompletableFuture<JSONObject> getBatched(GetBatcher batcher, String index, String type, String id) {
+        long begin = System.currentTimeMillis();
+        return batcher.get(index, type, id).handle((doc, e) -> {
+            try {
+                if (e != null) {
+                    throw unwrap(e);
+                }
+                JsonElement source = doc.get(SearchConstants.SEARCH_RESULT_KEY_SOURCE);
+                boolean found = source != null && source.isJsonObject();
+                long elapsed = System.currentTimeMillis() - begin;
+                SlowLog.Level level = slowLog.level(elapsed);
+                if (level != null) {
+                    slowLog.log(level, "get", index + "/" + type + "/" + id, elapsed, -1,
+                            () -> found ? "found (batched)" : "not found (batched)", null);
+                }
+                if (found) {
+                    return JSON.parseObject(source.toString());
+                }
+            } catch (Throwable t) {
+                rethrowRejected(t);
+                log.error("get failed! " + index + "/" + type + "/" + id, t);
+            }
+            return new JSONObject();
+        });
+    }
+
+    private Get buildGet(String index, String type, String id) {
+        return new Get.Builder(index, id.toString()).type(type).build();
+    }
+
+    private JSONObject convertGetResult(String index, String type, String id, long begin, JestResult result,
+                                        Throwable error) {
+        try {
+            if (error != null) {
+                throw error;
+            }
+            boolean found = result != null && result.isSucceeded();
+            long elapsed = System.currentTimeMillis() - begin;
+            SlowLog.Level level = slowLog.level(elapsed);
+            if (level != null) {
+                slowLog.log(level, "get", index + "/" + type + "/" + id, elapsed, -1,
+                        () -> found ? "found" : "not found", null);
+            }
+            if (found) {
                 return JSON.parseObject(result.getSourceAsString());
             }
-        } catch (Exception e) {
-            log.error("get failed! ", e);
+        } catch (Throwable e) {
+            rethrowRejected(e);
+            log.error("get failed! " + index + "/" + type + "/" + id, e);
         }
-        log.info("get result: not found document[{}]", id);
         return new JSONObject();
     }
 
     public List<JSONObject> get(String index, String type, List<?> ids) {
+        return get(index, type, ids, null, null);
+    }
+
+    /**
+     * multi get, 只返回includes中的_source字段并排除excludes, 均可为null
+     */
+    public List<JSONObject> get(String index, String type, List<?> ids, List<String> includes, List<String> excludes) {
+        long begin = System.currentTimeMillis();
+        JestResult result = null;
+        Exception error = null;
+        try {
+            MultiGet action = buildMultiGet(index, type, ids, includes, excludes);
+            if (action != null) {
+                result = clientHandler.executeHedged(action);
+            }
+        } catch (Exception e) {
+            error = e;
+        }
+        return convertMultiGetResult(index, type, ids, begin, result, error);
+    }
+
+    public CompletableFuture<List<JSONObject>> getAsync(String index, String type, List<?> ids) {
+        return getAsync(index, type, ids, null, null);
+    }
+
+    public CompletableFuture<List<JSONObject>> getAsync(String index, String type, List<?> ids, List<String> includes,
+                                                        List<String> excludes) {
+        long begin = System.currentTimeMillis();
+        MultiGet action;
+        try {
+            action = buildMultiGet(index, type, ids, includes, excludes);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(convertMultiGetResult(index, type, ids, begin, null, e));
+        }
+        if (action == null) {
+            return CompletableFuture.completedFuture(Lists.newArrayList());
+        }
+        CompletableFuture<JestResult> future = clientHandler.executeAsync(action);
+        return future.handle((result, e) -> convertMultiGetResult(index, type, ids, begin, result, unwrap(e)));
+    }
+
+    private MultiGet buildMultiGet(String index, String type, List<?> ids) {
+        return buildMultiGet(index, type, ids, null, null);
+    }
+
+    private MultiGet buildMultiGet(String index, String type, List<?> ids, List<String> includes, List<String> excludes) {
+        Map<String, List<String>> source = null;
+        if ((includes != null && !includes.isEmpty()) || (excludes != null && !excludes.isEmpty())) {
+            source = Maps.newHashMap();
+            if (includes != null && !includes.isEmpty()) {
+                source.put("includes", includes);
+            }
+            if (excludes != null && !excludes.isEmpty()) {
+                source.put("excludes", excludes);
+            }
+        }
+        List<Doc> docList = Lists.newArrayList();
+        for (Object id : ids) {
+            Doc doc = new Doc(index, type, id.toString());
+            if (source != null) {
+                doc.setSource(source);
+            }
+            docList.add(doc);
+        }
+        if (docList.isEmpty()) {
+            return null;
+        }
+        return new MultiGet.Builder.ByDoc(docList).build();
+    }
+
+    private List<JSONObject> convertMultiGetResult(String index, String type, List<?> ids, long begin,
+                                                   JestResult result, Throwable error) {
         List<JSONObject> resultList = Lists.newArrayList();
         try {
-            Long begin = System.currentTimeMillis();
-            List<Doc> docList = Lists.newArrayList();
-            ids.forEach(id -> docList.add(new Doc(index, type, id.toString())));
-
-            log.info("multi get {}/{}/{}", index, type, JSONObject.toJSONString(ids));
-            if (!docList.isEmpty()) {
-                Action action = new MultiGet.Builder.ByDoc(docList).build();
-                JestResult result = clientHandler.execute(action);
-                if (result != null && result.isSucceeded()) {
+            if (error != null) {
+                throw error;
+            }
+            if (result != null && result.isSucceeded()) {
 
-                    JSONObject jsonObject = JSON.parseObject(result.getJsonString());
-                    JSONArray array = jsonObject.getJSONArray("docs");
-                    for (Object obj : array) {
-                        JSONObject item = (JSONObject) obj;
-                        JSONObject source = item.getJSONObject("_source");
-                        if (source != null) {
-                            resultList.add(source);
-                        }
+                JSONObject jsonObject = JSON.parseObject(result.getJsonString());
+                JSONArray array = jsonObject.getJSONArray("docs");
+                for (Object obj : array) {
+                    JSONObject item = (JSONObject) obj;
+                    JSONObject source = item.getJSONObject("_source");
+                    if (source != null) {
+                        resultList.add(source);
                     }
-
-                    List<Integer> resultIds = resultList.stream().map(c -> c.getInteger("id")).collect(Collectors.toList());
-                    log.info("multi get result time: {}, param ids: {}, result ids: {}", System.currentTimeMillis() - begin,
-                            JSONObject.toJSONString(ids), resultIds);
                 }
+                slowLog.log("multi get", index + "/" + type, System.currentTimeMillis() - begin, -1,
+                        () -> "ids: " + ids.size() + ", found: " + resultList.size(), () -> JSONObject.toJSONString(ids));
             }
-        } catch (Exception e) {
+        } catch (Throwable e) {
+            rethrowRejected(e);
             log.error("multi get failed! ", e);
         }
         return resultList;
     }
 
+    /**
+     * 流式搜索, 边读响应边回调每条命中的_source(合并docvalue_fields、stored_fields), 不在内存中保留整个响应
+     */
+    public StreamingHitParser.Summary searchEach(SearchRequest request, Consumer<JSONObject> consumer) {
+        return searchEach(buildSearch(request), hit -> consumer.accept(convertDocument(hit)));
+    }
+
+    public <T> StreamingHitParser.Summary searchEach(SearchRequest request, Class<T> clazz, Consumer<T> consumer) {
+        JsonCodec codec = JsonCodecs.getDefault();
+        return searchEach(buildSearch(request), hit -> consumer.accept(codec.fromJson(mergeFields(hit), clazz)));
+    }
+
+    private StreamingHitParser.Summary searchEach(Search search, Consumer<JsonObject> consumer) {
+        long begin = System.currentTimeMillis();
+        try {
+            StreamingHitParser.Summary summary = clientHandler.executeStream(search, StreamingHitParser.searchHits(consumer));
+            slowLog.log("search stream", search.getURI(), System.currentTimeMillis() - begin, summary.getTook(),
+                    summary::getTotal, () -> search.getData(JsonCodecs.gson()));
+            return summary;
+        } catch (Exception e) {
+            log.error("search failed! " + e.getMessage(), e);
+            throw new RuntimeException("search failed! " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 流式multi get, 逐个回调找到的文档
+     */
+    public StreamingHitParser.Summary getEach(String index, String type, List<?> ids, Consumer<JSONObject> consumer) {
+        long begin = System.currentTimeMillis();
+        StreamingHitParser.Summary summary = new StreamingHitParser.Summary();
+        try {
+            MultiGet action = buildMultiGet(index, type, ids);
+            if (action != null) {
+                summary = clientHandler.executeStream(action, StreamingHitParser.multiGetDocs(doc -> consumer.accept(
+                        convertDocument(doc))));
+                StreamingHitParser.Summary found = summary;
+                slowLog.log("multi get stream", index + "/" + type, System.currentTimeMillis() - begin, -1,
+                        () -> "ids: " + ids.size() + ", found: " + found.getCount(), () -> JSONObject.toJSONString(ids));
+            }
+        } catch (Exception e) {
+            rethrowRejected(e);
+            log.error("multi get failed! ", e);
+        }
+        return summary;
+    }
+
     public <T> List<T> searchList(SearchRequest request, Class<T> clazz) {
-        JestResult result = search(buildSearch(request));
+        JestResult result = cachedSearch(buildSearch(request), request.getIndexName());
+        return convertList(result, request, clazz);
+    }
+
+    <T> List<T> convertList(JestResult result, SearchRequest request, Class<T> clazz) {
+        long begin = System.nanoTime();
         List<T> list = Lists.newArrayList();
         if (result != null) {
             if (request.getHighlight() != null && request.getHighlight().getEnable()) {
-                Gson gson = buildGsonTypeAdapter();
-                Map map = (Map) result.getValue(SearchConstants.SEARCH_RESULT_KEY_HITS);
-                List<Map> hitsList = (List<Map>) map.get(SearchConstants.SEARCH_RESULT_KEY_HITS);
-                for (Map hit : hitsList) {
-                    Map sourceMap = (Map) hit.get(SearchConstants.SEARCH_RESULT_KEY_SOURCE);
-                    Map highMap = (Map) hit.get(SearchConstants.SEARCH_RESULT_KEY_HIGHLIGHT);
-                    String value = "";
-                    String fieldName = request.getHighlight().getHighlightFieldName();
-                    List valueList = (List) highMap.get(fieldName);
-                    for (Object val : valueList)
-                        value += val.toString();
-                    if (!"".equals(value))
-                        sourceMap.put(fieldName, value);
-                    T t = gson.fromJson(mapToJson(sourceMap), clazz);
-                    list.add(t);
+                JsonCodec codec = JsonCodecs.getDefault();
+                String fieldName = request.getHighlight().getHighlightFieldName();
+                for (JsonElement hit : getHits(result)) {
+                    JsonObject hitObject = hit.getAsJsonObject();
+                    JsonObject source = hitObject.getAsJsonObject(SearchConstants.SEARCH_RESULT_KEY_SOURCE);
+                    JsonObject highlight = hitObject.getAsJsonObject(SearchConstants.SEARCH_RESULT_KEY_HIGHLIGHT);
+                    JsonArray fragments = highlight != null ? highlight.getAsJsonArray(fieldName) : null;
+                    if (source != null && fragments != null && fragments.size() > 0) {
+                        StringBuilder value = new StringBuilder();
+                        fragments.forEach(f -> value.append(f.getAsString()));
+                        //结果可能被缓存, 复制后再替换高亮字段
+                        JsonObject copy = new JsonObject();
+                        source.entrySet().forEach(e -> copy.add(e.getKey(), e.getValue()));
+                        copy.addProperty(fieldName, value.toString());
+                        source = copy;
+                    }
+                    list.add(codec.fromJson(source, clazz));
                 }
             } else
-                list = result.getSourceAsObjectList(clazz);
+                list = convertSourceList(result, clazz);
         }
+        clientHandler.getMetricsRegistry().recordLatency(Operation.SEARCH, Phase.CONVERT, System.nanoTime() - begin);
         return list;
     }
 
+    private <T> List<T> convertSourceList(JestResult result, Class<T> clazz) {
+        JsonCodec codec = JsonCodecs.getDefault();
+        if (codec instanceof GsonCodec) {
+            //jest同样使用gson, 保留@JestId等元数据字段的填充
+            return result.getSourceAsObjectList(clazz);
+        }
+        List<T> list = Lists.newArrayList();
+        for (JsonElement hit : getHits(result)) {
+            T t = codec.fromJson(hit.getAsJsonObject().get(SearchConstants.SEARCH_RESULT_KEY_SOURCE), clazz);
+            if (t != null) {
+                list.add(t);
+            }
+        }
+        return list;
+    }
+
+    private JsonArray getHits(JestResult result) {
+        JsonObject hits = result.getJsonObject().getAsJsonObject(SearchConstants.SEARCH_RESULT_KEY_HITS);
+        JsonArray hitsList = hits != null ? hits.getAsJsonArray(SearchConstants.SEARCH_RESULT_KEY_HITS) : null;
+        return hitsList != null ? hitsList : new JsonArray();
+    }
+
     public <T> Map<String, Object> searchMap(SearchRequest request, Class<T> clazz) {
         Map<String, Object> map = Maps.newHashMap();
-        JestResult result = search(buildSearch(request));
+        JestResult result = cachedSearch(buildSearch(request), request.getIndexName());
         if (result != null) {
-            List<T> list = result.getSourceAsObjectList(clazz);
+            List<T> list = convertSourceList(result, clazz);
             map.put(SearchConstants.SEARCH_RESULT_KEY_RESULT, list);
             Map hitsMap = (Map) result.getValue(SearchConstants.SEARCH_RESULT_KEY_HITS);
-            Number total = (Number) hitsMap.get(SearchConstants.SEARCH_RESULT_KEY_TOTAL);
-            map.put(SearchConstants.SEARCH_RESULT_KEY_TOTAL, total.intValue());
+            Number total = hitsMap != null ? (Number) hitsMap.get(SearchConstants.SEARCH_RESULT_KEY_TOTAL) : null;
+            if (total != null) {
+                map.put(SearchConstants.SEARCH_RESULT_KEY_TOTAL, total.intValue());
+            }
         }
         return map;
     }
 
+    /**
+     * 基于search_after逐批读取全部命中, 替代深度from/size分页
+     *      排序取SearchRequest.order, 未设置时沿用原生DSL中的sort, 并追加_uid作为tiebreaker, 每批数量取page.pageSize。
+     */
+    public Stream<JSONObject> stream(SearchRequest request) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(request),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    public Iterator<JSONObject> iterator(SearchRequest request) {
+        JSONObject query = parseSearchSource(request);
+        query.put("sort", buildSearchAfterSort(request.getOrder(), query.get("sort")));
+
+        SearchPage page = request.getPage();
+        int size = page != null && page.getPageSize() != null ? page.getPageSize() : SearchConstants.SEARCH_AFTER_SIZE;
+        return new SearchAfterIterator(query, request.getIndexName(), request.getIndexType(), size,
+                search -> search(search), this::convertDocument);
+    }
+
+    /**
+     * 分片scroll导出全部命中
+     *      slices个分片并行滚动, 每批结果回调consumer(会被多线程调用), 每批数量取page.pageSize。
+     * @return 导出的文档数
+     */
+    public long export(SearchRequest request, int slices, Consumer<List<JSONObject>> consumer) {
+        JSONObject query = parseSearchSource(request);
+
+        SearchPage page = request.getPage();
+        int size = page != null && page.getPageSize() != null ? page.getPageSize() : SearchConstants.SEARCH_SCROLL_SIZE;
+        SlicedScrollExporter exporter = new SlicedScrollExporter(clientHandler, this::convertDocument,
+                SearchConstants.SEARCH_SCROLL_TIME);
+        return exporter.export(query, request.getIndexName(), request.getIndexType(), size, slices, consumer);
+    }
+
+    /**
+     * 原生DSL只补充source过滤, 构建的查询在buildSearchBuilder中已处理
+     */
+    private JSONObject parseSearchSource(SearchRequest request) {
+        if (request.getQuery() == null) {
+            return JSON.parseObject(buildSearchBuilder(request).toString());
+        }
+        JSONObject query = JSON.parseObject(request.getQuery());
+        applyFetchOptions(query, request);
+        return query;
+    }
+
+    /**
+     * 有order时按order排序, 否则保留DSL中原有的sort, 末尾缺少tiebreaker时补上_uid
+     */
+    private JSONArray buildSearchAfterSort(List<SearchOrder> order, Object existing) {
+        JSONArray array = new JSONArray();
+        if (order != null) {
+            for (SearchOrder o : order) {
+                if (o.getName() == null) {
+                    continue;
+                }
+                JSONObject sort = new JSONObject();
+                sort.put(o.getName(), o.getSort().toString());
+                array.add(sort);
+            }
+        }
+        if (array.isEmpty() && existing instanceof JSONArray) {
+            array.addAll((JSONArray) existing);
+        } else if (array.isEmpty() && existing != null) {
+            array.add(existing);
+        }
+        boolean tiebreaker = false;
+        for (Object sort : array) {
+            tiebreaker = tiebreaker || SearchConstants.SEARCH_AFTER_TIEBREAKER.equals(sort)
+                    || sort instanceof JSONObject && ((JSONObject) sort).containsKey(SearchConstants.SEARCH_AFTER_TIEBREAKER);
+        }
+        if (!tiebreaker) {
+            JSONObject sort = new JSONObject();
+            sort.put(SearchConstants.SEARCH_AFTER_TIEBREAKER, SortOrder.ASC.toString());
+            array.add(sort);
+        }
+        return array;
+    }
+
     public SearchSourceBuilder buildSearchBuilder(SearchRequest request) {
 
         if (request.getSearchFieldSize() == 0) {
@@ -297,9 +1230,12 @@ public class SearchHandler {
         if (request.getMatchAllFieldSize() > 0) {
             query.must(QueryBuilders.matchAllQuery());
         } else {
-            buildQueryField(query, value, request.getMust(), Clause.must);
-            buildQueryField(query, value, request.getShould(), Clause.should);
-            buildQueryField(query, value, request.getMustNot(), Clause.mustNot);
+            BoolQueryPlanner planner = new BoolQueryPlanner(queryOptimize);
+            buildQueryField(planner, value, request.getMust(), Clause.must);
+            buildQueryField(planner, value, request.getShould(), Clause.should);
+            buildQueryField(planner, value, request.getMustNot(), Clause.mustNot);
+            buildQueryField(planner, value, request.getFilter(), Clause.filter);
+            planner.build(query);
         }
 
         if (request.getOrder() != null) {
@@ -314,17 +1250,19 @@ public class SearchHandler {
             SearchRequest.Highlight highlight = request.getHighlight();
 
             if (highlight.getEnable()) {
-                HighlightBuilder highlightBuilder = builder.highlighter();
+                HighlightBuilder highlightBuilder = new HighlightBuilder();
+                builder.highlighter(highlightBuilder);
                 highlightBuilder.field(highlight.getHighlightFieldName());
                 highlightBuilder.preTags(highlight.getPreTag());
                 highlightBuilder.postTags(highlight.getPostTag());
             }
         }
 
+        applyFetchOptions(builder, request);
         return builder.query(query);
     }
 
-    private void buildQueryField(BoolQueryBuilder query, Object value, List<SearchField> fields, Clause clause) {
+    private void buildQueryField(BoolQueryPlanner planner, Object value, List<SearchField> fields, Clause clause) {
         if (fields == null || fields.size() == 0)
             return;
 
@@ -348,12 +1286,7 @@ public class SearchHandler {
                 default: QueryBuilders.termQuery(name, val);
             }
 
-            if (Clause.should.equals(clause))
-                query.should(queryBuilder);
-            else if (Clause.must.equals(clause))
-                query.must(queryBuilder);
-            else if (Clause.mustNot.equals(clause))
-                query.mustNot(queryBuilder);
+            planner.add(clause, queryType, name, queryType == QueryType.regexp ? value.toString() : val, queryBuilder);
         }
     }
 
@@ -373,15 +1306,26 @@ public class SearchHandler {
     private String buildOrder(List<SearchOrder> order, String query) {
         if (order != null && order.size() > 0) {
             JSONObject json = JSON.parseObject(query);
-            JSONArray array = new JSONArray();
-            order.stream().forEach(o -> array.add(JSON.parseObject("{\"" + o.getName() + "\":\"" + o.getSort() + "\"}")));
-            json.put("sort", array);
+            applyOrder(json, order);
             query = json.toJSONString();
         }
         return query;
     }
 
-    private JSONObject convertResult(JestResult result, SearchPage page) {
+    private void applyOrder(JSONObject json, List<SearchOrder> order) {
+        if (order != null && order.size() > 0) {
+            JSONArray array = new JSONArray();
+            order.forEach(o -> {
+                JSONObject sort = new JSONObject();
+                sort.put(o.getName(), o.getSort().toString());
+                array.add(sort);
+            });
+            json.put("sort", array);
+        }
+    }
+
+    JSONObject convertResult(JestResult result, SearchPage page) {
+        long begin = System.nanoTime();
         JSONObject response = new JSONObject(16, true);
 
         if (result instanceof MultiSearchResult) {
@@ -390,20 +1334,28 @@ public class SearchHandler {
         } else {
             fullDataResult(result, page, response);
         }
+        clientHandler.getMetricsRegistry().recordLatency(result instanceof MultiSearchResult ? Operation.MULTI_SEARCH
+                : Operation.SEARCH, Phase.CONVERT, System.nanoTime() - begin);
+        return response;
+    }
+
+    JSONObject convertResult(List<JestResult> results, SearchPage page) {
+        long begin = System.nanoTime();
+        JSONObject response = new JSONObject(16, true);
+        results.forEach(r -> fullDataResult(r, page, response));
+        clientHandler.getMetricsRegistry().recordLatency(Operation.MULTI_SEARCH, Phase.CONVERT, System.nanoTime() - begin);
         return response;
     }
 
     private void fullDataResult(JestResult result, SearchPage page, JSONObject response) {
-        Gson gson = buildGsonTypeAdapter();
         JSONArray array = new JSONArray();
 
-        Map map = (Map) result.getValue(SearchConstants.SEARCH_RESULT_KEY_HITS);
-        List<Map> hitsList = (List<Map>) map.get(SearchConstants.SEARCH_RESULT_KEY_HITS);
-        if (hitsList != null && hitsList.size() > 0) {
-            for (Map hit : hitsList) {
-                Map sourceMap = (Map) hit.get(SearchConstants.SEARCH_RESULT_KEY_SOURCE);
-                String jsonStr = gson.toJson(sourceMap);
-                array.add(JSON.parseObject(jsonStr));
+        //filter_path过滤后hits、total、_source都可能不存在
+        JsonObject hits = result.getJsonObject().getAsJsonObject(SearchConstants.SEARCH_RESULT_KEY_HITS);
+        JsonArray hitsList = hits != null ? hits.getAsJsonArray(SearchConstants.SEARCH_RESULT_KEY_HITS) : null;
+        if (hitsList != null) {
+            for (JsonElement hit : hitsList) {
+                array.add(convertHit(hit.getAsJsonObject()));
             }
         }
 
@@ -411,8 +1363,10 @@ public class SearchHandler {
 
         if (response.get(dataKey) == null) {
             if (page != null && page.getEnable()) {
-                Number total = (Number) map.get(SearchConstants.SEARCH_RESULT_KEY_TOTAL);
-                page.setTotalNum(total.intValue());
+                JsonElement total = hits != null ? hits.get(SearchConstants.SEARCH_RESULT_KEY_TOTAL) : null;
+                if (total != null) {
+                    page.setTotalNum(total.getAsInt());
+                }
                 response.put(SearchConstants.RESULT_PAGE_KEY, page);
             }
         } else {
@@ -422,29 +1376,73 @@ public class SearchHandler {
         response.put(dataKey, array);
     }
 
-    private String mapToJson(Map map) {
-        StringBuilder json = new StringBuilder();
-        if (map != null && map.size() > 0) {
-            json.append("{");
-            for (Iterator it = map.entrySet().iterator(); it.hasNext(); ) {
-                Map.Entry e = (Map.Entry) it.next();
-                json.append("\"").append(e.getKey()).append("\":\"").append(e.getValue()).append("\",");
+    /**
+     * _source及docvalue_fields、stored_fields合并为一个文档, 单值字段取数组中的值
+     */
+    private JSONObject convertHit(JsonObject hit) {
+        JSONObject json = SourceDecoder.decode(hit.get(SearchConstants.SEARCH_RESULT_KEY_SOURCE));
+        JsonElement fields = hit.get(SearchConstants.SEARCH_RESULT_KEY_FIELDS);
+        if (fields == null || !fields.isJsonObject()) {
+            return json;
+        }
+        if (json == null) {
+            json = new JSONObject();
+        }
+        for (Map.Entry<String, JsonElement> entry : fields.getAsJsonObject().entrySet()) {
+            JsonElement value = entry.getValue();
+            if (value.isJsonArray() && value.getAsJsonArray().size() == 1) {
+                value = value.getAsJsonArray().get(0);
             }
-            String val = json.substring(0, json.lastIndexOf(",")) + "}";
-            return val;
+            json.put(entry.getKey(), SourceDecoder.decodeValue(value));
         }
-        return null;
+        return json;
+    }
+
+    /**
+     * 同convertHit, 无_source及fields时返回空文档
+     */
+    private JSONObject convertDocument(JsonObject hit) {
+        JSONObject json = convertHit(hit);
+        return json != null ? json : new JSONObject();
     }
 
-    private Gson buildGsonTypeAdapter() {
-        return new GsonBuilder().registerTypeAdapter(Double.class, new JsonSerializer<Double>() {
-            @Override
-            public JsonElement serialize(Double src, Type typeOfSrc, JsonSerializationContext context) {
-                if (src == src.longValue())
-                    return new JsonPrimitive(src.longValue());
-                return new JsonPrimitive(src);
+    /**
+     * 绑定实体类前将fields合并进_source, 不修改原始命中
+     */
+    private static JsonElement mergeFields(JsonObject hit) {
+        JsonElement source = hit.get(SearchConstants.SEARCH_RESULT_KEY_SOURCE);
+        JsonElement fields = hit.get(SearchConstants.SEARCH_RESULT_KEY_FIELDS);
+        if (fields == null || !fields.isJsonObject()) {
+            return source;
+        }
+        JsonObject merged = new JsonObject();
+        if (source != null && source.isJsonObject()) {
+            source.getAsJsonObject().entrySet().forEach(e -> merged.add(e.getKey(), e.getValue()));
+        }
+        for (Map.Entry<String, JsonElement> entry : fields.getAsJsonObject().entrySet()) {
+            JsonElement value = entry.getValue();
+            if (value.isJsonArray() && value.getAsJsonArray().size() == 1) {
+                value = value.getAsJsonArray().get(0);
             }
-        }).create();
+            merged.add(entry.getKey(), value);
+        }
+        return merged;
+    }
+
+    /**
+     * 被限流或熔断拒绝时抛出, 不当作未找到处理, 调用方可据此降级
+     */
+    private static void rethrowRejected(Throwable e) {
+        if (e instanceof RequestRejectedException) {
+            throw new RuntimeException("request rejected! " + e.getMessage(), e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            return e.getCause();
+        }
+        return e;
     }
 
 }
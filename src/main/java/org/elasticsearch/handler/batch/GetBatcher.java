@@ -0,0 +1,171 @@
+package org.elasticsearch.handler.batch;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.Doc;
+import io.searchbox.core.MultiGet;
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.prop.GetBatchProperty;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 将并发的单文档get合并为mget
+ *
+ * 按索引、类型分批, 第一个id到达后等待maxDelayMicros或凑满maxBatchSize个id即发送一次mget,
+ * 相同id只请求一次, 结果按id分发给各调用方。
+ */
+public class GetBatcher {
+
+    private static volatile ScheduledExecutorService scheduler;
+
+    private final ClientHandler clientHandler;
+    private final GetBatchProperty property;
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+    private final AtomicLong getCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    public GetBatcher(ClientHandler clientHandler, GetBatchProperty property) {
+        this.clientHandler = clientHandler;
+        this.property = property;
+    }
+
+    /**
+     * @return mget结果中该id对应的文档, 包含found及_source; 整个mget失败时异常结束
+     */
+    public CompletableFuture<JsonObject> get(String index, String type, String id) {
+        getCount.incrementAndGet();
+        CompletableFuture<JsonObject> future = new CompletableFuture<>();
+        String key = index + "/" + type;
+        Batch[] full = new Batch[1];
+        batches.compute(key, (k, batch) -> {
+            if (batch == null) {
+                batch = new Batch(index, type);
+                Batch scheduled = batch;
+                getScheduler().schedule(() -> {
+                    if (batches.remove(k, scheduled)) {
+                        flush(scheduled);
+                    }
+                }, property.getMaxDelayMicros(), TimeUnit.MICROSECONDS);
+            }
+            batch.add(id, future);
+            if (batch.size() >= property.getMaxBatchSize()) {
+                full[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+        if (full[0] != null) {
+            flush(full[0]);
+        }
+        return future;
+    }
+
+    private void flush(Batch batch) {
+        batchCount.incrementAndGet();
+        List<Doc> docs = Lists.newArrayListWithCapacity(batch.waiters.size());
+        batch.waiters.keySet().forEach(id -> docs.add(new Doc(batch.index, batch.type, id)));
+        CompletableFuture<JestResult> future;
+        try {
+            future = clientHandler.executeAsync(new MultiGet.Builder.ByDoc(docs).build());
+        } catch (Exception e) {
+            batch.fail(e);
+            return;
+        }
+        future.whenComplete((result, e) -> {
+            if (e != null) {
+                batch.fail(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            } else if (result == null || !result.isSucceeded() || result.getJsonObject() == null) {
+                batch.fail(new IOException("multi get failed! " + (result != null ? result.getErrorMessage() : "")));
+            } else {
+                batch.complete(result.getJsonObject());
+            }
+        });
+    }
+
+    public long getGetCount() {
+        return getCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "GetBatcher{" +
+                "getCount=" + getCount +
+                ", batchCount=" + batchCount +
+                '}';
+    }
+
+    private static class Batch {
+        final String index;
+        final String type;
+        //id -> 等待该id的调用方, 只在batches.compute中修改
+        final Map<String, List<CompletableFuture<JsonObject>>> waiters = Maps.newLinkedHashMap();
+
+        Batch(String index, String type) {
+            this.index = index;
+            this.type = type;
+        }
+
+        void add(String id, CompletableFuture<JsonObject> future) {
+            waiters.computeIfAbsent(id, k -> Lists.newArrayListWithCapacity(1)).add(future);
+        }
+
+        int size() {
+            return waiters.size();
+        }
+
+        void complete(JsonObject response) {
+            JsonArray docs = response.getAsJsonArray("docs");
+            if (docs != null) {
+                for (JsonElement element : docs) {
+                    JsonObject doc = element.getAsJsonObject();
+                    JsonElement id = doc.get("_id");
+                    List<CompletableFuture<JsonObject>> futures = id != null ? waiters.remove(id.getAsString()) : null;
+                    if (futures != null) {
+                        futures.forEach(f -> f.complete(doc));
+                    }
+                }
+            }
+            //响应中缺少的id按未找到处理
+            JsonObject notFound = new JsonObject();
+            notFound.addProperty("found", false);
+            waiters.values().forEach(futures -> futures.forEach(f -> f.complete(notFound)));
+        }
+
+        void fail(Throwable e) {
+            waiters.values().forEach(futures -> futures.forEach(f -> f.completeExceptionally(e)));
+        }
+    }
+
+    private static ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            synchronized (GetBatcher.class) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                            .setNameFormat("get-batcher-%d").setDaemon(true).build());
+                }
+            }
+        }
+        return scheduler;
+    }
+}
@@ -0,0 +1,49 @@
+package org.elasticsearch.handler.bulk;
+
+/**
+ * bulk失败条目重试的退避策略
+ */
+public class BackoffPolicy {
+
+    private final long initialDelay;
+    private final int maxRetries;
+
+    private BackoffPolicy(long initialDelay, int maxRetries) {
+        this.initialDelay = initialDelay;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * 指数退避, 第n次重试等待 initialDelay * 2^n 毫秒
+     */
+    public static BackoffPolicy exponential(long initialDelay, int maxRetries) {
+        return new BackoffPolicy(initialDelay, maxRetries);
+    }
+
+    public static BackoffPolicy noBackoff() {
+        return new BackoffPolicy(0, 0);
+    }
+
+    /**
+     * @param retry 第几次重试, 从0开始
+     * @return 等待毫秒数, 超过最大重试次数返回-1
+     */
+    public long delay(int retry) {
+        if (retry >= maxRetries) {
+            return -1;
+        }
+        return initialDelay << Math.min(retry, 30);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    @Override
+    public String toString() {
+        return "BackoffPolicy{" +
+                "initialDelay=" + initialDelay +
+                ", maxRetries=" + maxRetries +
+                '}';
+    }
+}
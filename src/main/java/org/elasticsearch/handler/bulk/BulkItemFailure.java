@@ -0,0 +1,116 @@
+package org.elasticsearch.handler.bulk;
+
+import io.searchbox.core.BulkResult;
+
+import java.io.Serializable;
+
+/**
+ * bulk中最终失败的单个条目
+ */
+public class BulkItemFailure implements Serializable {
+
+    private static final long serialVersionUID = 3177462281592316454L;
+
+    //index/update/delete
+    private String operation;
+    private String index;
+    private String type;
+    private String id;
+    //http状态码
+    private int status;
+    private String errorType;
+    private String errorReason;
+    //已尝试次数
+    private int attempts;
+
+    public BulkItemFailure() {}
+
+    public BulkItemFailure(BulkResult.BulkResultItem item, int attempts) {
+        this.operation = item.operation;
+        this.index = item.index;
+        this.type = item.type;
+        this.id = item.id;
+        this.status = item.status;
+        this.errorType = item.errorType;
+        this.errorReason = item.errorReason != null ? item.errorReason : item.error;
+        this.attempts = attempts;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getErrorType() {
+        return errorType;
+    }
+
+    public void setErrorType(String errorType) {
+        this.errorType = errorType;
+    }
+
+    public String getErrorReason() {
+        return errorReason;
+    }
+
+    public void setErrorReason(String errorReason) {
+        this.errorReason = errorReason;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkItemFailure{" +
+                "operation='" + operation + '\'' +
+                ", index='" + index + '\'' +
+                ", type='" + type + '\'' +
+                ", id='" + id + '\'' +
+                ", status=" + status +
+                ", errorType='" + errorType + '\'' +
+                ", errorReason='" + errorReason + '\'' +
+                ", attempts=" + attempts +
+                '}';
+    }
+}
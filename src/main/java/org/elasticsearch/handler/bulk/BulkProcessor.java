@@ -0,0 +1,280 @@
+package org.elasticsearch.handler.bulk;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.searchbox.action.BulkableAction;
+import io.searchbox.core.Delete;
+import io.searchbox.core.Index;
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.codec.JsonCodecs;
+import org.elasticsearch.handler.prop.BulkProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 后台批量写入
+ *
+ * 调用方只需add文档, 按数量、字节数、时间间隔任一条件合并为一次bulk请求异步发送,
+ * 进行中的bulk请求数受concurrentRequests限制, 达到上限时按配置阻塞或拒绝调用方。
+ */
+public class BulkProcessor implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkProcessor.class);
+
+    /**
+     * bulk请求回调, 在异步回调线程中执行
+     */
+    public interface Listener {
+
+        default void beforeBulk(long executionId, List<BulkableAction> actions) {}
+
+        /**
+         * 请求完成(含重试), report中为最终失败的条目
+         */
+        default void afterBulk(long executionId, List<BulkableAction> actions, BulkReport report) {}
+
+        /**
+         * 请求异常, 整批未写入
+         */
+        default void afterBulk(long executionId, List<BulkableAction> actions, Throwable failure) {}
+    }
+
+    private final BulkRetryHandler retryHandler;
+    private final BulkProperty property;
+    private final Listener listener;
+    private final Semaphore semaphore;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong executionIdGen = new AtomicLong();
+
+    //调用方传入的请求, 回调时使用
+    private List<BulkableAction> actions = Lists.newArrayList();
+    //已序列化payload的请求, 与actions一一对应, 实际发送
+    private List<BulkableAction> prepared = Lists.newArrayList();
+    private long bytes;
+    private volatile boolean closed;
+
+    /**
+     * 从缓冲区取出的一批请求
+     */
+    private static class Batch {
+        final List<BulkableAction> actions;
+        final List<BulkableAction> prepared;
+
+        Batch(List<BulkableAction> actions, List<BulkableAction> prepared) {
+            this.actions = actions;
+            this.prepared = prepared;
+        }
+    }
+
+    public BulkProcessor(BulkProperty property) {
+        this(ClientHandler.getInstance(), property, null);
+    }
+
+    public BulkProcessor(ClientHandler clientHandler, BulkProperty property, Listener listener) {
+        if (property.getConcurrentRequests() < 1) {
+            throw new IllegalArgumentException("concurrentRequests must be greater than 0");
+        }
+        this.retryHandler = new BulkRetryHandler(clientHandler,
+                BackoffPolicy.exponential(property.getRetryInitialDelay(), property.getMaxRetries()));
+        this.property = property;
+        this.listener = listener != null ? listener : new Listener() {};
+        //公平模式, 阻塞的调用方按取出批次的先后发送
+        this.semaphore = new Semaphore(property.getConcurrentRequests(), true);
+
+        if (property.getFlushInterval() > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("bulk-processor-flush-%d").setDaemon(true).build());
+            scheduler.scheduleWithFixedDelay(this::flushQuietly, property.getFlushInterval(),
+                    property.getFlushInterval(), TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    public BulkProcessor add(String indexName, String indexType, String indexId, Object data) {
+        Index.Builder builder = new Index.Builder(JsonCodecs.toJson(data)).index(indexName).type(indexType);
+        if (indexId != null) {
+            builder.id(indexId);
+        }
+        return add(builder.build());
+    }
+
+    public BulkProcessor delete(String indexName, String indexType, String indexId) {
+        return add(new Delete.Builder(indexId).index(indexName).type(indexType).build());
+    }
+
+    @SuppressWarnings("unchecked")
+    public BulkProcessor add(BulkableAction action) {
+        //只序列化一次, 发送及重试时复用
+        PreparedBulkAction<?> preparedAction = new PreparedBulkAction<>(action, JsonCodecs.gson());
+        Batch batch;
+        synchronized (this) {
+            ensureOpen();
+            actions.add(action);
+            prepared.add(preparedAction);
+            bytes += preparedAction.getBytes();
+            if (!isOverTheLimit()) {
+                return this;
+            }
+            if (!property.getBlockWhenFull() && !semaphore.tryAcquire()) {
+                actions.remove(actions.size() - 1);
+                prepared.remove(prepared.size() - 1);
+                bytes -= preparedAction.getBytes();
+                throw new RejectedExecutionException("bulk processor is full, concurrentRequests: "
+                        + property.getConcurrentRequests());
+            }
+            batch = takeBatch();
+        }
+        if (property.getBlockWhenFull()) {
+            //在锁外等待许可, 不阻塞flush、close及其他调用方
+            semaphore.acquireUninterruptibly();
+        }
+        execute(batch);
+        return this;
+    }
+
+    /**
+     * 立即发送已缓存的请求
+     */
+    public void flush() {
+        Batch batch;
+        synchronized (this) {
+            ensureOpen();
+            batch = takeBatch();
+        }
+        if (batch != null) {
+            semaphore.acquireUninterruptibly();
+            execute(batch);
+        }
+    }
+
+    /**
+     * 发送剩余请求并等待进行中的请求完成
+     */
+    public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Batch batch;
+        synchronized (this) {
+            if (closed) {
+                return true;
+            }
+            closed = true;
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+            batch = takeBatch();
+        }
+        if (batch != null) {
+            if (!semaphore.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                log.error("bulk processor close timeout, dropped actions: {}", batch.actions.size());
+                return false;
+            }
+            execute(batch);
+        }
+        if (semaphore.tryAcquire(property.getConcurrentRequests(), Math.max(0, deadline - System.nanoTime()),
+                TimeUnit.NANOSECONDS)) {
+            semaphore.release(property.getConcurrentRequests());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 发送剩余请求, 最多等待closeTimeout
+     */
+    @Override
+    public void close() {
+        try {
+            if (!awaitClose(property.getCloseTimeout(), TimeUnit.MILLISECONDS)) {
+                log.warn("bulk processor closed before in-flight bulks completed, timeout: {}ms",
+                        property.getCloseTimeout());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            Batch batch;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                batch = takeBatch();
+            }
+            if (batch != null) {
+                semaphore.acquireUninterruptibly();
+                execute(batch);
+            }
+        } catch (Exception e) {
+            log.error("bulk processor flush failed! ", e);
+        }
+    }
+
+    /**
+     * 持有锁时调用, 取出缓冲区的请求, 为空时返回null
+     */
+    private Batch takeBatch() {
+        if (actions.isEmpty()) {
+            return null;
+        }
+        Batch batch = new Batch(actions, prepared);
+        actions = Lists.newArrayList();
+        prepared = Lists.newArrayList();
+        bytes = 0;
+        return batch;
+    }
+
+    private boolean isOverTheLimit() {
+        if (property.getBulkActions() > 0 && actions.size() >= property.getBulkActions()) {
+            return true;
+        }
+        return property.getBulkSize() > 0 && bytes >= property.getBulkSize();
+    }
+
+    /**
+     * 调用前须已获取许可, 请求结束后释放
+     */
+    private void execute(Batch batch) {
+        List<BulkableAction> current = batch.actions;
+        long executionId = executionIdGen.incrementAndGet();
+        try {
+            listener.beforeBulk(executionId, current);
+            retryHandler.executeAsync(batch.prepared).whenComplete((report, e) -> {
+                try {
+                    if (e != null) {
+                        log.error("bulk [{}] failed! actions: {}", executionId, current.size(), e);
+                        listener.afterBulk(executionId, current, e);
+                    } else {
+                        if (!report.isSucceeded()) {
+                            log.warn("bulk [{}] failed items: {}", executionId, report.getFailures().size());
+                        }
+                        listener.afterBulk(executionId, current, report);
+                    }
+                } finally {
+                    semaphore.release();
+                }
+            });
+        } catch (Exception e) {
+            semaphore.release();
+            log.error("bulk [{}] failed! actions: {}", executionId, current.size(), e);
+            listener.afterBulk(executionId, current, e);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("bulk processor already closed");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.elasticsearch.handler.bulk;
+
+import com.google.common.collect.Lists;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * bulk执行结果, 包含重试后仍失败的条目
+ */
+public class BulkReport implements Serializable {
+
+    private static final long serialVersionUID = -2630532519643542871L;
+
+    //请求条目数
+    private int actions;
+    //重试的条目数, 同一条目多次重试累计
+    private int retries;
+    //最终失败条目
+    private List<BulkItemFailure> failures = Lists.newArrayList();
+
+    public BulkReport() {}
+
+    public BulkReport(int actions) {
+        this.actions = actions;
+    }
+
+    public boolean isSucceeded() {
+        return failures.isEmpty();
+    }
+
+    public int getSucceededCount() {
+        return actions - failures.size();
+    }
+
+    public int getActions() {
+        return actions;
+    }
+
+    public void setActions(int actions) {
+        this.actions = actions;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public List<BulkItemFailure> getFailures() {
+        return failures;
+    }
+
+    public void setFailures(List<BulkItemFailure> failures) {
+        this.failures = failures;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkReport{" +
+                "actions=" + actions +
+                ", retries=" + retries +
+                ", failures=" + failures +
+                '}';
+    }
+}
@@ -0,0 +1,223 @@
+package org.elasticsearch.handler.bulk;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.searchbox.action.BulkableAction;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.metrics.MetricsRegistry;
+import org.elasticsearch.handler.metrics.Operation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 执行bulk请求, 按条目解析结果, 只对可重试的失败条目(429 队列已满)按退避策略重发
+ */
+public class BulkRetryHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkRetryHandler.class);
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static volatile ScheduledExecutorService scheduler;
+
+    private final ClientHandler clientHandler;
+    private final BackoffPolicy backoffPolicy;
+
+    public BulkRetryHandler(ClientHandler clientHandler, BackoffPolicy backoffPolicy) {
+        this.clientHandler = clientHandler;
+        this.backoffPolicy = backoffPolicy;
+    }
+
+    public BulkReport execute(List<? extends BulkableAction> actions) throws IOException {
+        return execute(actions, Operation.BULK);
+    }
+
+    /**
+     * 退避等待在调用线程中sleep, 总时长由backoffPolicy决定
+     * @param operation 指标记录的操作类型
+     */
+    public BulkReport execute(List<? extends BulkableAction> actions, Operation operation) throws IOException {
+        return recordFailures(doExecute(actions, operation));
+    }
+
+    private BulkReport doExecute(List<? extends BulkableAction> actions, Operation operation) throws IOException {
+        BulkReport report = new BulkReport(actions.size());
+        if (actions.isEmpty()) {
+            return report;
+        }
+        List<BulkableAction> pending = Lists.newArrayList(actions);
+        for (int retry = 0; ; retry++) {
+            BulkResult result;
+            try {
+                result = clientHandler.execute(buildBulk(pending, operation));
+            } finally {
+                invalidate(pending);
+            }
+            List<BulkResult.BulkResultItem> retryItems = Lists.newArrayList();
+            pending = collectFailures(pending, result, report, retry + 1, retryItems);
+            if (pending.isEmpty()) {
+                return report;
+            }
+            long delay = backoffPolicy.delay(retry);
+            if (delay < 0) {
+                giveUp(pending, retryItems, result, report, retry + 1);
+                return report;
+            }
+            report.setRetries(report.getRetries() + pending.size());
+            log.warn("bulk rejected items: {}, retry after {}ms", pending.size(), delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                giveUp(pending, retryItems, result, report, retry + 1);
+                return report;
+            }
+        }
+    }
+
+    public CompletableFuture<BulkReport> executeAsync(List<? extends BulkableAction> actions) {
+        return executeAsync(actions, Operation.BULK);
+    }
+
+    public CompletableFuture<BulkReport> executeAsync(List<? extends BulkableAction> actions, Operation operation) {
+        BulkReport report = new BulkReport(actions.size());
+        if (actions.isEmpty()) {
+            return CompletableFuture.completedFuture(report);
+        }
+        return executeAsync(Lists.newArrayList(actions), operation, report, 0).thenApply(this::recordFailures);
+    }
+
+    private CompletableFuture<BulkReport> executeAsync(List<BulkableAction> actions, Operation operation,
+                                                       BulkReport report, int retry) {
+        CompletableFuture<BulkResult> future = clientHandler.executeAsync(buildBulk(actions, operation));
+        return future.whenComplete((r, e) -> invalidate(actions)).thenCompose(result -> {
+            List<BulkResult.BulkResultItem> retryItems = Lists.newArrayList();
+            List<BulkableAction> pending = collectFailures(actions, result, report, retry + 1, retryItems);
+            if (pending.isEmpty()) {
+                return CompletableFuture.completedFuture(report);
+            }
+            long delay = backoffPolicy.delay(retry);
+            if (delay < 0) {
+                giveUp(pending, retryItems, result, report, retry + 1);
+                return CompletableFuture.completedFuture(report);
+            }
+            report.setRetries(report.getRetries() + pending.size());
+            log.warn("bulk rejected items: {}, retry after {}ms", pending.size(), delay);
+
+            CompletableFuture<BulkReport> next = new CompletableFuture<>();
+            getScheduler().schedule(() -> executeAsync(pending, operation, report, retry + 1).whenComplete((r, e) -> {
+                if (e != null) {
+                    next.completeExceptionally(e);
+                } else {
+                    next.complete(r);
+                }
+            }), delay, TimeUnit.MILLISECONDS);
+            return next;
+        });
+    }
+
+    private static Bulk buildBulk(List<BulkableAction> actions, Operation operation) {
+        Bulk.Builder builder = new Bulk.Builder().addAction(actions);
+        return operation == Operation.BULK ? builder.build() : new OperationBulk(builder, operation);
+    }
+
+    /**
+     * 记录不可重试的失败条目, 返回需要重试的请求
+     */
+    private List<BulkableAction> collectFailures(List<BulkableAction> actions, BulkResult result, BulkReport report,
+                                                 int attempts, List<BulkResult.BulkResultItem> retryItems) {
+        List<BulkableAction> retryList = Lists.newArrayList();
+        if (result.isSucceeded()) {
+            return retryList;
+        }
+
+        List<BulkResult.BulkResultItem> items = result.getItems();
+        if (items.isEmpty()) {
+            //整个请求失败
+            if (result.getResponseCode() == TOO_MANY_REQUESTS) {
+                return actions;
+            }
+            actions.forEach(action -> report.getFailures().add(buildFailure(action, result, attempts)));
+            return retryList;
+        }
+
+        for (int i = 0; i < items.size() && i < actions.size(); i++) {
+            BulkResult.BulkResultItem item = items.get(i);
+            if (item.error == null) {
+                continue;
+            }
+            if (item.status == TOO_MANY_REQUESTS) {
+                retryList.add(actions.get(i));
+                retryItems.add(item);
+            } else {
+                report.getFailures().add(new BulkItemFailure(item, attempts));
+            }
+        }
+        return retryList;
+    }
+
+    private void giveUp(List<BulkableAction> pending, List<BulkResult.BulkResultItem> retryItems, BulkResult result,
+                        BulkReport report, int attempts) {
+        for (int i = 0; i < pending.size(); i++) {
+            if (i < retryItems.size()) {
+                report.getFailures().add(new BulkItemFailure(retryItems.get(i), attempts));
+            } else {
+                report.getFailures().add(buildFailure(pending.get(i), result, attempts));
+            }
+        }
+        log.error("bulk failed after {} attempts, failed items: {}", attempts, pending.size());
+    }
+
+    private BulkReport recordFailures(BulkReport report) {
+        MetricsRegistry registry = clientHandler.getMetricsRegistry();
+        if (!report.getFailures().isEmpty() && registry.isEnabled()) {
+            Map<String, Long> counts = report.getFailures().stream().collect(Collectors.groupingBy(
+                    f -> f.getErrorType() != null ? f.getErrorType() : "http_" + f.getStatus(), Collectors.counting()));
+            counts.forEach(registry::incrementBulkItemFailures);
+        }
+        return report;
+    }
+
+    private void invalidate(List<BulkableAction> actions) {
+        Set<String> indexNames = Sets.newHashSet();
+        actions.forEach(action -> indexNames.add(action.getIndex()));
+        indexNames.forEach(clientHandler.getIndexVersions()::bump);
+    }
+
+    private BulkItemFailure buildFailure(BulkableAction action, BulkResult result, int attempts) {
+        BulkItemFailure failure = new BulkItemFailure();
+        failure.setOperation(action.getBulkMethodName());
+        failure.setIndex(action.getIndex());
+        failure.setType(action.getType());
+        failure.setId(action.getId());
+        failure.setStatus(result.getResponseCode());
+        failure.setErrorReason(result.getErrorMessage());
+        failure.setAttempts(attempts);
+        return failure;
+    }
+
+    private static ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            synchronized (BulkRetryHandler.class) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                            .setNameFormat("bulk-retry-%d").setDaemon(true).build());
+                }
+            }
+        }
+        return scheduler;
+    }
+}
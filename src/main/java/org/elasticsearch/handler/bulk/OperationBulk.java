@@ -0,0 +1,21 @@
+package org.elasticsearch.handler.bulk;
+
+import io.searchbox.core.Bulk;
+import org.elasticsearch.handler.metrics.Operation;
+
+/**
+ * 指定指标操作类型的bulk, 如DocumentHandler以单条bulk发送的更新、删除
+ */
+public class OperationBulk extends Bulk {
+
+    private final Operation operation;
+
+    public OperationBulk(Bulk.Builder builder, Operation operation) {
+        super(builder);
+        this.operation = operation;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+}
@@ -0,0 +1,95 @@
+package org.elasticsearch.handler.bulk;
+
+import com.google.common.base.Utf8;
+import com.google.gson.Gson;
+import io.searchbox.action.BulkableAction;
+import io.searchbox.client.JestResult;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 加入BulkProcessor时序列化一次payload, 发送及重试时直接使用, 同时按utf-8字节数计算请求体大小
+ */
+class PreparedBulkAction<T extends JestResult> implements BulkableAction<T> {
+
+    //action元数据行的固定部分 {"index":{"_index":"","_type":"","_id":""}} 及换行
+    private static final int METADATA_BYTES = 48;
+
+    private final BulkableAction<T> action;
+    private final String data;
+    private final long bytes;
+
+    PreparedBulkAction(BulkableAction<T> action, Gson gson) {
+        this.action = action;
+        this.data = action.getData(gson);
+        this.bytes = METADATA_BYTES + length(action.getBulkMethodName()) + length(action.getIndex())
+                + length(action.getType()) + length(action.getId()) + (data != null ? Utf8.encodedLength(data) + 1 : 0);
+    }
+
+    private static int length(String value) {
+        return value != null ? Utf8.encodedLength(value) : 0;
+    }
+
+    /**
+     * 元数据行及payload的utf-8字节数
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String getData(Gson gson) {
+        return data;
+    }
+
+    @Override
+    public String getBulkMethodName() {
+        return action.getBulkMethodName();
+    }
+
+    @Override
+    public Collection<Object> getParameter(String parameter) {
+        return action.getParameter(parameter);
+    }
+
+    @Override
+    public String getIndex() {
+        return action.getIndex();
+    }
+
+    @Override
+    public String getType() {
+        return action.getType();
+    }
+
+    @Override
+    public String getId() {
+        return action.getId();
+    }
+
+    @Override
+    public String getURI() {
+        return action.getURI();
+    }
+
+    @Override
+    public String getRestMethodName() {
+        return action.getRestMethodName();
+    }
+
+    @Override
+    public String getPathToResult() {
+        return action.getPathToResult();
+    }
+
+    @Override
+    public Map<String, Object> getHeaders() {
+        return action.getHeaders();
+    }
+
+    @Override
+    public T createNewElasticSearchResult(String responseBody, int statusCode, String reasonPhrase, Gson gson) {
+        return action.createNewElasticSearchResult(responseBody, statusCode, reasonPhrase, gson);
+    }
+}
@@ -0,0 +1,67 @@
+package org.elasticsearch.handler.cache;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 索引写入版本号, 通过同一ClientHandler写入时递增, 用于缓存失效
+ *
+ * 每个ClientHandler持有一份, 不同集群的同名索引互不影响;
+ * 未指定索引(全部索引)或带通配符的查询依赖全局版本号, 任一索引写入都会使其失效。
+ */
+public class IndexVersions {
+
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final AtomicLong global = new AtomicLong();
+
+    public void bump(String indexName) {
+        if (indexName != null) {
+            for (String name : indexName.split(",")) {
+                versions.computeIfAbsent(name.trim(), k -> new AtomicLong()).incrementAndGet();
+            }
+        }
+        global.incrementAndGet();
+    }
+
+    /**
+     * 查询开始前获取版本快照, 写入缓存时一并保存
+     */
+    public long[] snapshot(List<String> indexNames) {
+        if (dependsOnAll(indexNames)) {
+            return new long[]{global.get()};
+        }
+        long[] snapshot = new long[indexNames.size()];
+        for (int i = 0; i < snapshot.length; i++) {
+            AtomicLong version = versions.get(indexNames.get(i));
+            snapshot[i] = version != null ? version.get() : 0;
+        }
+        return snapshot;
+    }
+
+    public boolean isCurrent(List<String> indexNames, long[] snapshot) {
+        long[] current = snapshot(indexNames);
+        if (current.length != snapshot.length) {
+            return false;
+        }
+        for (int i = 0; i < snapshot.length; i++) {
+            if (current[i] != snapshot[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean dependsOnAll(List<String> indexNames) {
+        if (indexNames == null || indexNames.isEmpty()) {
+            return true;
+        }
+        for (String name : indexNames) {
+            if (name.startsWith("_") || name.contains("*") || name.contains(",")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
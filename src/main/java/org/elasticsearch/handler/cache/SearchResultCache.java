@@ -0,0 +1,155 @@
+package org.elasticsearch.handler.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import io.searchbox.client.JestResult;
+import org.elasticsearch.handler.prop.CacheProperty;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 搜索结果缓存
+ *
+ * key为最终请求地址加查询语句, 按索引设置过期时间, 超过条数或内存上限时按最近最少使用淘汰,
+ * 通过同一ClientHandler写入索引后该索引相关的缓存失效。
+ */
+public class SearchResultCache {
+
+    private final CacheProperty property;
+    private final Cache<String, Entry> cache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private static class Entry {
+        final JestResult result;
+        final List<String> indexNames;
+        final IndexVersions indexVersions;
+        final long[] versions;
+        final long expireAt;
+        final int weight;
+
+        Entry(JestResult result, List<String> indexNames, IndexVersions indexVersions, long[] versions, long expireAt) {
+            this.result = result;
+            this.indexNames = indexNames;
+            this.indexVersions = indexVersions;
+            this.versions = versions;
+            this.expireAt = expireAt;
+            //json字符串与解析后的对象树, 约为字符数的4倍
+            String json = result.getJsonString();
+            this.weight = json != null ? (int) Math.min(Integer.MAX_VALUE, json.length() * 4L) : 0;
+        }
+    }
+
+    public SearchResultCache(CacheProperty property) {
+        this.property = property;
+
+        long maxTtl = property.getDefaultTtl();
+        for (Long ttl : property.getIndexTtl().values()) {
+            maxTtl = Math.max(maxTtl, ttl);
+        }
+
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().expireAfterWrite(maxTtl, TimeUnit.MILLISECONDS);
+        if (property.getMaxBytes() > 0) {
+            builder.maximumWeight(property.getMaxBytes()).weigher((String key, Entry entry) -> entry.weight);
+        } else {
+            builder.maximumSize(property.getMaxEntries());
+        }
+        this.cache = builder.<String, Entry>removalListener(notification -> {
+            if (notification.getCause() == RemovalCause.SIZE) {
+                evictionCount.incrementAndGet();
+            }
+        }).build();
+    }
+
+    public JestResult get(String key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            if (entry.expireAt > System.currentTimeMillis() && entry.indexVersions.isCurrent(entry.indexNames, entry.versions)) {
+                hitCount.incrementAndGet();
+                return entry.result;
+            }
+            cache.asMap().remove(key, entry);
+            invalidationCount.incrementAndGet();
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param indexVersions 发起查询的ClientHandler的索引版本
+     * @param versions 查询执行前通过indexVersions.snapshot获取的版本
+     */
+    public void put(String key, List<String> indexNames, IndexVersions indexVersions, long[] versions, JestResult result) {
+        if (result == null || !result.isSucceeded()) {
+            return;
+        }
+        List<String> names = indexNames != null ? indexNames : Collections.emptyList();
+        if (!indexVersions.isCurrent(names, versions)) {
+            return;
+        }
+        long ttl = getTtl(names);
+        if (ttl > 0) {
+            cache.put(key, new Entry(result, names, indexVersions, versions, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private long getTtl(List<String> indexNames) {
+        if (indexNames.isEmpty()) {
+            return property.getDefaultTtl();
+        }
+        long ttl = Long.MAX_VALUE;
+        for (String name : indexNames) {
+            Long indexTtl = property.getIndexTtl().get(name);
+            ttl = Math.min(ttl, indexTtl != null ? indexTtl : property.getDefaultTtl());
+        }
+        return ttl;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRate() {
+        long hit = hitCount.get();
+        long total = hit + missCount.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResultCache{" +
+                "size=" + size() +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", invalidationCount=" + invalidationCount +
+                '}';
+    }
+}
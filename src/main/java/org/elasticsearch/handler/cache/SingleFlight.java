@@ -0,0 +1,108 @@
+package org.elasticsearch.handler.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 相同key的请求同时只执行一次, 执行期间到达的调用方共享同一结果
+ *
+ * 只合并进行中的请求, 结束后立即移除, 不缓存结果。
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong executeCount = new AtomicLong();
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * 同步执行, 没有进行中的相同请求时在当前线程执行loader, 否则等待其结果
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            sharedCount.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        executeCount.incrementAndGet();
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * 异步执行, 每个调用方得到各自的future, 取消或完成它不影响共享的请求及其他调用方
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            sharedCount.incrementAndGet();
+            return existing.thenApply(Function.identity());
+        }
+
+        executeCount.incrementAndGet();
+        CompletableFuture<V> future;
+        try {
+            future = loader.get();
+        } catch (RuntimeException e) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(e);
+            return flight.thenApply(Function.identity());
+        }
+        future.whenComplete((value, e) -> {
+            flights.remove(key, flight);
+            if (e != null) {
+                flight.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight.thenApply(Function.identity());
+    }
+
+    /**
+     * 实际执行次数
+     */
+    public long getExecuteCount() {
+        return executeCount.get();
+    }
+
+    /**
+     * 共享其他请求结果的次数
+     */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlight{" +
+                "executeCount=" + executeCount +
+                ", sharedCount=" + sharedCount +
+                ", inFlight=" + flights.size() +
+                '}';
+    }
+}
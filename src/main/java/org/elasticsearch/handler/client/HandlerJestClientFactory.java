@@ -0,0 +1,63 @@
+package org.elasticsearch.handler.client;
+
+import io.searchbox.client.JestClientFactory;
+import org.apache.http.HttpHeaders;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+
+/**
+ * 在JestClientFactory基础上设置keep-alive时长及响应gzip
+ */
+public class HandlerJestClientFactory extends JestClientFactory {
+
+    private static final String GZIP = "gzip";
+
+    private final long keepAlive;
+    private final boolean responseCompression;
+
+    /**
+     * @param keepAlive 连接保持时长 毫秒, 服务端返回Keep-Alive时取较小值, 小于等于0使用httpclient默认策略
+     * @param responseCompression 是否请求gzip响应
+     */
+    public HandlerJestClientFactory(long keepAlive, boolean responseCompression) {
+        this.keepAlive = keepAlive;
+        this.responseCompression = responseCompression;
+    }
+
+    @Override
+    protected HttpClientBuilder configureHttpClient(HttpClientBuilder builder) {
+        if (keepAlive > 0) {
+            builder.setKeepAliveStrategy(keepAliveStrategy());
+        }
+        //同步客户端默认发送Accept-Encoding并自动解压
+        if (!responseCompression) {
+            builder.disableContentCompression();
+        }
+        return builder;
+    }
+
+    @Override
+    protected HttpAsyncClientBuilder configureHttpClient(HttpAsyncClientBuilder builder) {
+        if (keepAlive > 0) {
+            builder.setKeepAliveStrategy(keepAliveStrategy());
+        }
+        //异步客户端不会自动处理压缩, 由HandlerJestHttpClient解压
+        if (responseCompression) {
+            builder.addInterceptorLast((org.apache.http.HttpRequestInterceptor) (request, context) -> {
+                if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+                    request.addHeader(HttpHeaders.ACCEPT_ENCODING, GZIP);
+                }
+            });
+        }
+        return builder;
+    }
+
+    private ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+        };
+    }
+}
@@ -0,0 +1,285 @@
+package org.elasticsearch.handler.client;
+
+import com.google.common.io.CountingInputStream;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.client.config.ClientConfig;
+import io.searchbox.client.config.exception.CouldNotConnectException;
+import io.searchbox.client.http.JestHttpClient;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.StatusLine;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.handler.metrics.MetricsRegistry;
+import org.elasticsearch.handler.metrics.Operation;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+/**
+ * 在jest客户端基础上增加流式读取响应及按响应时间选择节点, 连接池、序列化配置沿用JestClientFactory创建的客户端
+ */
+public class HandlerJestHttpClient extends JestHttpClient {
+
+    /**
+     * 逐个token读取响应体
+     */
+    public interface ResponseParser<R> {
+        R parse(JsonReader reader) throws IOException;
+    }
+
+    private static final String GZIP = "gzip";
+
+    private final JestHttpClient origin;
+    private final NodeSelector nodeSelector;
+    //指定请求节点, 只在prepareRequest期间有效
+    private final ThreadLocal<String> pinnedServer = new ThreadLocal<>();
+    private volatile MetricsRegistry metricsRegistry = MetricsRegistry.NOOP;
+
+    public HandlerJestHttpClient(JestHttpClient origin, ClientConfig config, NodeSelector nodeSelector) {
+        this.origin = origin;
+        this.nodeSelector = nodeSelector;
+        setHttpClient(origin.getHttpClient());
+        setAsyncClient(origin.getAsyncClient());
+        setGson(origin.getGson());
+        setHttpClientContextTemplate(origin.getHttpClientContextTemplate());
+        setRequestCompressionEnabled(config.isRequestCompressionEnabled());
+        setServers(config.getServerList());
+    }
+
+    /**
+     * 节点发现更新节点列表时同时更新nodeSelector
+     */
+    @Override
+    public void setServers(Set<String> servers) {
+        super.setServers(servers);
+        nodeSelector.setServers(servers);
+    }
+
+    @Override
+    protected String getNextServer() {
+        String server = pinnedServer.get();
+        return server != null ? server : nodeSelector.select();
+    }
+
+    public NodeSelector getNodeSelector() {
+        return nodeSelector;
+    }
+
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry != null ? metricsRegistry : MetricsRegistry.NOOP;
+    }
+
+    /**
+     * 按实际发送的请求体记录发送字节数, 开启请求压缩时长度未知, 不记录
+     */
+    @Override
+    protected <T extends JestResult> HttpUriRequest prepareRequest(Action<T> action, RequestConfig requestConfig) {
+        HttpUriRequest request = super.prepareRequest(action, requestConfig);
+        MetricsRegistry registry = metricsRegistry;
+        if (registry.isEnabled() && request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && entity.getContentLength() >= 0) {
+                registry.incrementBytesSent(Operation.of(action), entity.getContentLength());
+            }
+        }
+        return request;
+    }
+
+    /**
+     * 与jest默认实现相同, 响应体按utf-8解码并记录接收字节数
+     */
+    @Override
+    public <T extends JestResult> T execute(Action<T> action, RequestConfig requestConfig) throws IOException {
+        HttpUriRequest request = prepareRequest(action, requestConfig);
+        try (CloseableHttpResponse response = executeRequest(request)) {
+            return deserializeResponse(response, request, action);
+        } catch (HttpHostConnectException e) {
+            throw new CouldNotConnectException(e.getHost().toURI(), e);
+        }
+    }
+
+    /**
+     * 记录节点响应时间, 超时及连接失败时拉黑节点
+     */
+    @Override
+    protected CloseableHttpResponse executeRequest(HttpUriRequest request) throws IOException {
+        NodeSelector.Node node = nodeSelector.onRequest(request.getURI());
+        long begin = System.nanoTime();
+        try {
+            CloseableHttpResponse response = super.executeRequest(request);
+            nodeSelector.onResponse(node, System.nanoTime() - begin);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            nodeSelector.onFailure(node, isNodeFailure(e));
+            throw e;
+        }
+    }
+
+    /**
+     * 异步发送到指定节点, 返回的Future可用于取消请求
+     *
+     * @param server 节点地址, 为null时由nodeSelector选择
+     */
+    public <T extends JestResult> Future<HttpResponse> executeAsync(Action<T> action,
+                                                                 JestResultHandler<? super T> resultHandler,
+                                                                 String server) {
+        CloseableHttpAsyncClient asyncClient = getAsyncClient();
+        if (!asyncClient.isRunning()) {
+            synchronized (this) {
+                if (!asyncClient.isRunning()) {
+                    asyncClient.start();
+                }
+            }
+        }
+        HttpUriRequest request;
+        pinnedServer.set(server);
+        try {
+            request = prepareRequest(action, null);
+        } finally {
+            pinnedServer.remove();
+        }
+        return executeAsyncRequest(action, resultHandler, request);
+    }
+
+    /**
+     * 不经过JestResult, 响应体边读边解析, 内存占用与响应大小无关
+     */
+    public <R> R executeStream(Action<?> action, ResponseParser<R> parser) throws IOException {
+        HttpUriRequest request = prepareRequest(action, null);
+        try (CloseableHttpResponse response = executeRequest(request)) {
+            HttpEntity entity = response.getEntity();
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode / 100 != 2) {
+                String body = entity != null ? EntityUtils.toString(entity, StandardCharsets.UTF_8) : null;
+                throw new IOException("request failed, status: " + statusCode + ", response: " + body);
+            }
+            if (entity == null) {
+                throw new IOException("empty response, status: " + statusCode);
+            }
+            CountingInputStream content = new CountingInputStream(entity.getContent());
+            try (JsonReader reader = new JsonReader(new InputStreamReader(content, StandardCharsets.UTF_8))) {
+                return parser.parse(reader);
+            } finally {
+                recordBytesReceived(action, content.getCount());
+            }
+        }
+    }
+
+    /**
+     * 与jest默认实现相同, 另外解压gzip响应, 记录节点响应时间, 请求被取消时通知resultHandler
+     */
+    @Override
+    protected <T extends JestResult> Future<HttpResponse> executeAsyncRequest(Action<T> action,
+                                                                           JestResultHandler<? super T> resultHandler,
+                                                                           HttpUriRequest request) {
+        NodeSelector.Node node = nodeSelector.onRequest(request.getURI());
+        long begin = System.nanoTime();
+        FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                nodeSelector.onResponse(node, System.nanoTime() - begin);
+                T result;
+                try {
+                    result = deserializeResponse(response, request, action);
+                } catch (Exception e) {
+                    resultHandler.failed(e);
+                    return;
+                }
+                resultHandler.completed(result);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                nodeSelector.onFailure(node, isNodeFailure(ex));
+                if (ex instanceof HttpHostConnectException) {
+                    String host = ((HttpHostConnectException) ex).getHost().toURI();
+                    resultHandler.failed(new CouldNotConnectException(host, ex));
+                } else {
+                    resultHandler.failed(ex);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                nodeSelector.onCancel(node, System.nanoTime() - begin);
+                resultHandler.failed(new CancellationException("request cancelled: " + request.getURI()));
+            }
+        };
+        if (getHttpClientContextTemplate() != null) {
+            return getAsyncClient().execute(request, createContextInstance(), callback);
+        }
+        return getAsyncClient().execute(request, callback);
+    }
+
+    /**
+     * 连接失败、超时及连接被断开视为节点故障
+     */
+    private boolean isNodeFailure(Exception e) {
+        return e instanceof ConnectException || e instanceof ConnectTimeoutException
+                || e instanceof SocketTimeoutException || e instanceof NoHttpResponseException;
+    }
+
+    private <T extends JestResult> T deserializeResponse(HttpResponse response, HttpUriRequest request,
+                                                         Action<T> action) throws IOException {
+        StatusLine statusLine = response.getStatusLine();
+        HttpEntity entity = response.getEntity();
+        Header encoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        if (entity != null && encoding != null && GZIP.equalsIgnoreCase(encoding.getValue())) {
+            entity = new GzipDecompressingEntity(entity);
+        }
+        String body = null;
+        if (entity != null) {
+            byte[] bytes = EntityUtils.toByteArray(entity);
+            recordBytesReceived(action, bytes.length);
+            body = new String(bytes, StandardCharsets.UTF_8);
+        }
+        try {
+            return action.createNewElasticSearchResult(body, statusLine.getStatusCode(), statusLine.getReasonPhrase(),
+                    getGson());
+        } catch (JsonSyntaxException e) {
+            throw new IOException("Request " + request + " yielded " + body + ", should be json", e);
+        }
+    }
+
+    /**
+     * 记录解压后响应体的字节数
+     */
+    private void recordBytesReceived(Action<?> action, long bytes) {
+        MetricsRegistry registry = metricsRegistry;
+        if (registry.isEnabled()) {
+            registry.incrementBytesReceived(Operation.of(action), bytes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            //停止本客户端上的节点发现
+            super.close();
+        } finally {
+            origin.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.elasticsearch.handler.client;
+
+import com.google.common.collect.Maps;
+import org.elasticsearch.handler.metrics.Operation;
+import org.elasticsearch.handler.prop.HedgeProperty;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 计算对冲延迟并限制对冲比例
+ *
+ * 每种操作保留最近sampleSize个耗时样本, 每新增一定数量样本重新计算一次分位数。
+ * 对冲配额按请求数累加maxHedgeRatio, 每次对冲消耗1, 配额不足时不对冲。
+ */
+public class HedgePolicy {
+
+    //配额以千分之一为单位累加
+    private static final long UNIT = 1000;
+    //配额上限, 允许短时间内连续对冲的次数
+    private static final long MAX_BUDGET = 10 * UNIT;
+
+    private final HedgeProperty property;
+    private final Map<Operation, Window> windows = Maps.newEnumMap(Operation.class);
+    private final AtomicLong budget = new AtomicLong();
+    private final long budgetPerRequest;
+
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    public HedgePolicy(HedgeProperty property) {
+        this.property = property;
+        this.budgetPerRequest = Math.round(property.getMaxHedgeRatio() * UNIT);
+        for (Operation operation : Operation.values()) {
+            windows.put(operation, new Window(property.getSampleSize()));
+        }
+    }
+
+    public boolean isEnabled() {
+        return property.getEnabled();
+    }
+
+    /**
+     * 对冲延迟 毫秒, 样本不足时返回-1
+     */
+    public long getDelay(Operation operation) {
+        long delay = windows.get(operation).percentile;
+        if (delay < 0) {
+            return -1;
+        }
+        return Math.max(property.getMinDelay(), Math.min(property.getMaxDelay(), TimeUnit.NANOSECONDS.toMillis(delay)));
+    }
+
+    /**
+     * 记录请求耗时并累加对冲配额
+     */
+    public void record(Operation operation, long nanos) {
+        windows.get(operation).add(nanos);
+        long current;
+        do {
+            current = budget.get();
+            if (current >= MAX_BUDGET) {
+                return;
+            }
+        } while (!budget.compareAndSet(current, Math.min(MAX_BUDGET, current + budgetPerRequest)));
+    }
+
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < UNIT) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - UNIT));
+        hedgeCount.incrementAndGet();
+        return true;
+    }
+
+    public void onHedgeWin() {
+        hedgeWinCount.incrementAndGet();
+    }
+
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * 对冲请求先于原请求返回的次数
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "HedgePolicy{" +
+                "hedgeCount=" + hedgeCount +
+                ", hedgeWinCount=" + hedgeWinCount +
+                '}';
+    }
+
+    private class Window {
+        final long[] samples;
+        final int refreshInterval;
+        long count;
+        volatile long percentile = -1;
+
+        Window(int size) {
+            this.samples = new long[Math.max(1, size)];
+            this.refreshInterval = Math.max(1, samples.length / 10);
+        }
+
+        synchronized void add(long nanos) {
+            samples[(int) (count % samples.length)] = nanos;
+            count++;
+            if (count >= property.getMinSamples() && count % refreshInterval == 0) {
+                int size = (int) Math.min(count, samples.length);
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(property.getPercentile() / 100 * size) - 1;
+                percentile = sorted[Math.max(0, Math.min(size - 1, index))];
+            }
+        }
+    }
+}
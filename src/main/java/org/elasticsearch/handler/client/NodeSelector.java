@@ -0,0 +1,252 @@
+package org.elasticsearch.handler.client;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按节点响应时间选择请求节点
+ *
+ * 每个节点记录响应时间的指数加权平均(EWMA)及进行中的请求数, 每次随机取两个可用节点选择得分较低的一个,
+ * 超时或连接失败的节点按失败次数加倍拉黑一段时间, 到期后重新参与选择。
+ * 所有节点都被拉黑时选择最早到期的节点, 不会因此拒绝请求。
+ */
+public class NodeSelector {
+
+    private static final Logger log = LoggerFactory.getLogger(NodeSelector.class);
+
+    //新样本权重
+    private static final double ALPHA = 0.3;
+    //长时间未被选中的节点响应时间逐渐衰减, 使变慢后恢复的节点能重新获得请求
+    private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final long blacklistTime;
+    private final long maxBlacklistTime;
+
+    private volatile List<Node> nodes = Collections.emptyList();
+
+    /**
+     * @param blacklistTime 首次失败拉黑时长 毫秒
+     * @param maxBlacklistTime 最长拉黑时长 毫秒
+     */
+    public NodeSelector(long blacklistTime, long maxBlacklistTime) {
+        this.blacklistTime = blacklistTime;
+        this.maxBlacklistTime = maxBlacklistTime;
+    }
+
+    /**
+     * 更新节点列表, 保留已有节点的统计
+     */
+    public synchronized void setServers(Collection<String> servers) {
+        Map<String, Node> current = Maps.newHashMap();
+        for (Node node : nodes) {
+            current.put(node.key, node);
+        }
+        List<Node> list = Lists.newArrayListWithCapacity(servers.size());
+        for (String server : servers) {
+            Node node = current.get(key(server));
+            list.add(node != null ? node : new Node(server));
+        }
+        this.nodes = Collections.unmodifiableList(list);
+    }
+
+    public String select() {
+        List<Node> list = nodes;
+        if (list.isEmpty()) {
+            throw new RuntimeException("no elasticsearch host available");
+        }
+        if (list.size() == 1) {
+            return list.get(0).server;
+        }
+        String server = select(list, null);
+        return server != null ? server : earliestRelease(list).server;
+    }
+
+    /**
+     * 选择exclude以外的可用节点, 用于对冲请求, 没有其他可用节点时返回null
+     */
+    public String select(String exclude) {
+        List<Node> list = nodes;
+        return list.size() > 1 ? select(list, exclude) : null;
+    }
+
+    private String select(List<Node> list, String exclude) {
+        long now = System.currentTimeMillis();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = list.size();
+        int first = random.nextInt(size);
+        Node a = findAvailable(list, first, now, exclude);
+        if (a == null) {
+            return null;
+        }
+        Node b = findAvailable(list, (first + 1 + random.nextInt(size - 1)) % size, now, exclude);
+        if (b == null || b == a) {
+            return a.server;
+        }
+        long nanos = System.nanoTime();
+        return a.score(nanos) <= b.score(nanos) ? a.server : b.server;
+    }
+
+    /**
+     * 从start开始找第一个未被拉黑的节点
+     */
+    private Node findAvailable(List<Node> list, int start, long now, String exclude) {
+        for (int i = 0; i < list.size(); i++) {
+            Node node = list.get((start + i) % list.size());
+            if (node.blacklistUntil <= now && !node.server.equals(exclude)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private Node earliestRelease(List<Node> list) {
+        Node earliest = list.get(0);
+        for (Node node : list) {
+            if (node.blacklistUntil < earliest.blacklistUntil) {
+                earliest = node;
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * 请求发出时调用, 返回的节点在请求结束时传给onResponse或onFailure, 不在节点列表中时返回null
+     */
+    Node onRequest(URI uri) {
+        Node node = find(uri);
+        if (node != null) {
+            node.inFlight.incrementAndGet();
+        }
+        return node;
+    }
+
+    void onResponse(Node node, long elapsedNanos) {
+        if (node == null) {
+            return;
+        }
+        node.inFlight.decrementAndGet();
+        synchronized (node) {
+            node.ewma = node.ewma == 0 ? elapsedNanos : node.ewma + ALPHA * (elapsedNanos - node.ewma);
+            node.updated = System.nanoTime();
+            node.failures = 0;
+            node.blacklistUntil = 0;
+        }
+    }
+
+    /**
+     * 请求被取消(如对冲请求先返回)时调用, 已等待的时间超过当前平均值时计入, 使变慢的节点及时被识别
+     */
+    void onCancel(Node node, long elapsedNanos) {
+        if (node == null) {
+            return;
+        }
+        node.inFlight.decrementAndGet();
+        synchronized (node) {
+            if (elapsedNanos > node.ewma) {
+                node.ewma = node.ewma + ALPHA * (elapsedNanos - node.ewma);
+                node.updated = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * @param blacklist 是否拉黑该节点, 超时及连接失败时拉黑
+     */
+    void onFailure(Node node, boolean blacklist) {
+        if (node == null) {
+            return;
+        }
+        node.inFlight.decrementAndGet();
+        if (!blacklist) {
+            return;
+        }
+        long duration;
+        int failures;
+        synchronized (node) {
+            failures = ++node.failures;
+            duration = Math.min(maxBlacklistTime, blacklistTime << Math.min(failures - 1, 20));
+            node.blacklistUntil = System.currentTimeMillis() + duration;
+        }
+        log.warn("elasticsearch node {} blacklisted for {}ms, failures: {}", node.server, duration, failures);
+    }
+
+    private Node find(URI uri) {
+        String key = key(uri);
+        for (Node node : nodes) {
+            if (node.key.equals(key)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    public List<String> getServers() {
+        List<String> servers = Lists.newArrayList();
+        nodes.forEach(node -> servers.add(node.server));
+        return servers;
+    }
+
+    static String key(String server) {
+        return key(URI.create(server.contains("://") ? server : "http://" + server));
+    }
+
+    static String key(URI uri) {
+        int port = uri.getPort();
+        if (port < 0) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        return uri.getHost() + ":" + port;
+    }
+
+    @Override
+    public String toString() {
+        return "NodeSelector" + nodes;
+    }
+
+    static class Node {
+        final String server;
+        final String key;
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile double ewma;
+        //最近一次成功响应的System.nanoTime
+        volatile long updated;
+        volatile int failures;
+        //拉黑到期时间 毫秒
+        volatile long blacklistUntil;
+
+        Node(String server) {
+            this.server = server;
+            this.key = key(server);
+        }
+
+        double score(long now) {
+            double latency = ewma;
+            long idle = now - updated;
+            if (latency > 0 && idle > DECAY_NANOS) {
+                latency = latency * DECAY_NANOS / idle;
+            }
+            //加1毫秒避免未采样节点得分均为0, 进行中的请求数按排队计入
+            return (latency + TimeUnit.MILLISECONDS.toNanos(1)) * (inFlight.get() + 1);
+        }
+
+        @Override
+        public String toString() {
+            return server + "{ewma=" + TimeUnit.NANOSECONDS.toMicros((long) ewma) / 1000.0 + "ms" +
+                    ", inFlight=" + inFlight +
+                    ", failures=" + failures +
+                    ", blacklisted=" + (blacklistUntil > System.currentTimeMillis()) +
+                    '}';
+        }
+    }
+}
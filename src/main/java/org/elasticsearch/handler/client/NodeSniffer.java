@@ -0,0 +1,116 @@
+package org.elasticsearch.handler.client;
+
+import com.google.common.collect.Sets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.config.ClientConfig;
+import io.searchbox.client.config.discovery.NodeChecker;
+import io.searchbox.client.config.exception.CouldNotConnectException;
+import io.searchbox.cluster.NodesInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 定期通过_nodes/http发现数据节点及协调节点, 跳过专用master节点
+ *
+ * 发现失败或没有可用节点时恢复为配置的hosts。
+ */
+public class NodeSniffer extends NodeChecker {
+
+    private static final Logger log = LoggerFactory.getLogger(NodeSniffer.class);
+
+    private final NodesInfo nodesInfo;
+
+    public NodeSniffer(JestClient client, ClientConfig config) {
+        super(client, config);
+        NodesInfo.Builder builder = new NodesInfo.Builder().withHttp();
+        if (config.getDiscoveryFilter() != null) {
+            builder.addNode(config.getDiscoveryFilter());
+        }
+        this.nodesInfo = builder.build();
+    }
+
+    @Override
+    protected void runOneIteration() throws Exception {
+        JestResult result;
+        try {
+            result = client.execute(nodesInfo);
+        } catch (CouldNotConnectException e) {
+            log.error("sniff nodes failed, could not connect: {}", e.getHost(), e);
+            removeNodeAndUpdateServers(e.getHost());
+            return;
+        } catch (Exception e) {
+            log.error("sniff nodes failed! " + e.getMessage(), e);
+            client.setServers(bootstrapServerList);
+            return;
+        }
+
+        JsonObject nodes = result.isSucceeded() && result.getJsonObject() != null
+                ? result.getJsonObject().getAsJsonObject("nodes") : null;
+        if (nodes == null) {
+            log.warn("sniff nodes failed, response: {}", result.getErrorMessage());
+            client.setServers(bootstrapServerList);
+            return;
+        }
+
+        Set<String> servers = Sets.newLinkedHashSet();
+        for (Map.Entry<String, JsonElement> entry : nodes.entrySet()) {
+            JsonObject node = entry.getValue().getAsJsonObject();
+            if (isDedicatedMaster(node)) {
+                continue;
+            }
+            String address = getPublishAddress(node);
+            if (address != null) {
+                servers.add(getHttpAddress(address));
+            }
+        }
+        if (servers.isEmpty()) {
+            log.warn("sniff nodes found no http node, use bootstrap hosts: {}", bootstrapServerList);
+            client.setServers(bootstrapServerList);
+            return;
+        }
+        if (!servers.equals(discoveredServerList)) {
+            log.info("sniff nodes found {} http nodes: {}", servers.size(), servers);
+        }
+        discoveredServerList = servers;
+        client.setServers(servers);
+    }
+
+    /**
+     * 5.x通过roles判断, 2.x通过attributes中的master/data判断
+     */
+    private boolean isDedicatedMaster(JsonObject node) {
+        JsonArray roles = node.getAsJsonArray("roles");
+        if (roles != null) {
+            boolean master = false;
+            boolean data = false;
+            for (JsonElement role : roles) {
+                master |= "master".equals(role.getAsString());
+                data |= "data".equals(role.getAsString());
+            }
+            return master && !data;
+        }
+        JsonObject attributes = node.getAsJsonObject("attributes");
+        if (attributes != null) {
+            boolean master = !attributes.has("master") || "true".equals(attributes.get("master").getAsString());
+            boolean data = !attributes.has("data") || "true".equals(attributes.get("data").getAsString());
+            return master && !data;
+        }
+        return false;
+    }
+
+    private String getPublishAddress(JsonObject node) {
+        JsonObject http = node.getAsJsonObject("http");
+        if (http != null && http.has("publish_address")) {
+            return http.get("publish_address").getAsString();
+        }
+        JsonElement address = node.get("http_address");
+        return address != null && !address.isJsonNull() ? address.getAsString() : null;
+    }
+}
@@ -0,0 +1,37 @@
+package org.elasticsearch.handler.codec;
+
+import com.alibaba.fastjson.JSON;
+import io.searchbox.client.AbstractJestClient;
+
+/**
+ * 基于fastjson, 日期格式与jest一致
+ */
+public class FastjsonCodec implements JsonCodec {
+
+    public static final String NAME = "fastjson";
+
+    private final String dateFormat;
+
+    public FastjsonCodec() {
+        this(AbstractJestClient.ELASTIC_SEARCH_DATE_FORMAT);
+    }
+
+    public FastjsonCodec(String dateFormat) {
+        this.dateFormat = dateFormat;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String toJson(Object value) {
+        return JSON.toJSONStringWithDateFormat(value, dateFormat);
+    }
+
+    @Override
+    public <T> T fromJson(String json, Class<T> clazz) {
+        return JSON.parseObject(json, clazz);
+    }
+}
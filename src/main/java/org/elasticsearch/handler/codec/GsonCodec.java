@@ -0,0 +1,48 @@
+package org.elasticsearch.handler.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import io.searchbox.client.AbstractJestClient;
+
+/**
+ * 基于gson, 默认与jest的序列化配置一致
+ */
+public class GsonCodec implements JsonCodec {
+
+    public static final String NAME = "gson";
+
+    private final Gson gson;
+
+    public GsonCodec() {
+        this(new GsonBuilder().setDateFormat(AbstractJestClient.ELASTIC_SEARCH_DATE_FORMAT).create());
+    }
+
+    public GsonCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    public Gson getGson() {
+        return gson;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String toJson(Object value) {
+        return gson.toJson(value);
+    }
+
+    @Override
+    public <T> T fromJson(String json, Class<T> clazz) {
+        return gson.fromJson(json, clazz);
+    }
+
+    @Override
+    public <T> T fromJson(JsonElement json, Class<T> clazz) {
+        return gson.fromJson(json, clazz);
+    }
+}
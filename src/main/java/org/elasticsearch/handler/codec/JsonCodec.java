@@ -0,0 +1,24 @@
+package org.elasticsearch.handler.codec;
+
+import com.google.gson.JsonElement;
+
+/**
+ * json序列化扩展点
+ *
+ * 实现须线程安全且可复用, 通过JsonCodecs.setDefault或META-INF/services注册。
+ */
+public interface JsonCodec {
+
+    String name();
+
+    String toJson(Object value);
+
+    <T> T fromJson(String json, Class<T> clazz);
+
+    /**
+     * jest响应已解析为gson对象树, 默认转为字符串再解析, 实现可直接绑定
+     */
+    default <T> T fromJson(JsonElement json, Class<T> clazz) {
+        return json == null || json.isJsonNull() ? null : fromJson(json.toString(), clazz);
+    }
+}
@@ -0,0 +1,64 @@
+package org.elasticsearch.handler.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import io.searchbox.client.AbstractJestClient;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * 全局json codec
+ *
+ * 默认取META-INF/services中注册的第一个JsonCodec, 没有则使用GsonCodec。
+ * 须在ClientHandler创建jest客户端之前设置, 才能同时作用于jest的请求及响应。
+ */
+public final class JsonCodecs {
+
+    //与jest客户端默认配置相同
+    private static final Gson JEST_GSON = new GsonBuilder()
+            .setDateFormat(AbstractJestClient.ELASTIC_SEARCH_DATE_FORMAT).create();
+
+    private static volatile JsonCodec defaultCodec;
+
+    private JsonCodecs() {}
+
+    public static JsonCodec getDefault() {
+        if (defaultCodec == null) {
+            synchronized (JsonCodecs.class) {
+                if (defaultCodec == null) {
+                    defaultCodec = load();
+                }
+            }
+        }
+        return defaultCodec;
+    }
+
+    public static void setDefault(JsonCodec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec can't be null");
+        }
+        defaultCodec = codec;
+    }
+
+    /**
+     * 已序列化的字符串直接返回, 其余按默认codec序列化
+     */
+    public static String toJson(Object value) {
+        return value instanceof String ? (String) value : getDefault().toJson(value);
+    }
+
+    /**
+     * jest的Action.getData及客户端配置需要Gson: 默认codec为GsonCodec时使用其Gson, 否则使用jest的默认配置。
+     * 文档payload已由toJson按默认codec序列化为字符串, 该Gson只序列化直接构建action时传入的对象。
+     */
+    public static Gson gson() {
+        JsonCodec codec = getDefault();
+        return codec instanceof GsonCodec ? ((GsonCodec) codec).getGson() : JEST_GSON;
+    }
+
+    private static JsonCodec load() {
+        Iterator<JsonCodec> it = ServiceLoader.load(JsonCodec.class).iterator();
+        return it.hasNext() ? it.next() : new GsonCodec();
+    }
+}
@@ -0,0 +1,79 @@
+package org.elasticsearch.handler.codec;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * 将jest返回的json树直接转换为fastjson对象, 每个文档只遍历一次
+ *
+ * 数值处理与原先 Map -> Gson -> fastjson 的结果一致: 整数值(含1.0)转为Integer/Long, 其余为BigDecimal,
+ * 对象中值为null的字段被忽略。
+ */
+public final class SourceDecoder {
+
+    private SourceDecoder() {}
+
+    /**
+     * @return source为空时返回null
+     */
+    public static JSONObject decode(JsonElement source) {
+        if (source == null || !source.isJsonObject()) {
+            return null;
+        }
+        return decodeObject(source.getAsJsonObject());
+    }
+
+    public static JSONObject decodeObject(JsonObject object) {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            JsonElement value = entry.getValue();
+            if (value != null && !value.isJsonNull()) {
+                json.put(entry.getKey(), decodeValue(value));
+            }
+        }
+        return json;
+    }
+
+    public static Object decodeValue(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        if (element.isJsonObject()) {
+            return decodeObject(element.getAsJsonObject());
+        }
+        if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            JSONArray json = new JSONArray(array.size());
+            for (JsonElement item : array) {
+                json.add(decodeValue(item));
+            }
+            return json;
+        }
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+        if (primitive.isBoolean()) {
+            return primitive.getAsBoolean();
+        }
+        if (primitive.isNumber()) {
+            return decodeNumber(primitive.getAsDouble());
+        }
+        return primitive.getAsString();
+    }
+
+    private static Object decodeNumber(double value) {
+        long longValue = (long) value;
+        if (value == longValue) {
+            if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                return (int) longValue;
+            }
+            return longValue;
+        }
+        return new BigDecimal(Double.toString(value));
+    }
+}
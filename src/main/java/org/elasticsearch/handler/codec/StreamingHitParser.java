@@ -0,0 +1,129 @@
+package org.elasticsearch.handler.codec;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.elasticsearch.handler.client.HandlerJestHttpClient;
+import org.elasticsearch.handler.constants.SearchConstants;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * 流式解析搜索及multi get响应, 每次只在内存中保留一条命中
+ */
+public final class StreamingHitParser {
+
+    private static final JsonParser PARSER = new JsonParser();
+
+    private StreamingHitParser() {}
+
+    public static class Summary {
+
+        private long took;
+        private long total;
+        private int count;
+
+        public long getTook() {
+            return took;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * 实际回调的命中数
+         */
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "Summary{" +
+                    "took=" + took +
+                    ", total=" + total +
+                    ", count=" + count +
+                    '}';
+        }
+    }
+
+    /**
+     * 解析_search响应, 每条hit回调一次
+     */
+    public static HandlerJestHttpClient.ResponseParser<Summary> searchHits(Consumer<JsonObject> consumer) {
+        return reader -> {
+            Summary summary = new Summary();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("took".equals(name)) {
+                    summary.took = reader.nextLong();
+                } else if (SearchConstants.SEARCH_RESULT_KEY_HITS.equals(name)) {
+                    readHits(reader, summary, consumer);
+                } else if ("error".equals(name)) {
+                    throw new IOException("es msg: " + PARSER.parse(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return summary;
+        };
+    }
+
+    /**
+     * 解析_mget响应, 只回调找到的文档
+     */
+    public static HandlerJestHttpClient.ResponseParser<Summary> multiGetDocs(Consumer<JsonObject> consumer) {
+        return reader -> {
+            Summary summary = new Summary();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("docs".equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        JsonObject doc = PARSER.parse(reader).getAsJsonObject();
+                        summary.total++;
+                        JsonElement found = doc.get("found");
+                        if (found != null && found.getAsBoolean()) {
+                            summary.count++;
+                            consumer.accept(doc);
+                        }
+                    }
+                    reader.endArray();
+                } else if ("error".equals(name)) {
+                    throw new IOException("es msg: " + PARSER.parse(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return summary;
+        };
+    }
+
+    private static void readHits(JsonReader reader, Summary summary, Consumer<JsonObject> consumer) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (SearchConstants.SEARCH_RESULT_KEY_TOTAL.equals(name)) {
+                summary.total = reader.nextLong();
+            } else if (SearchConstants.SEARCH_RESULT_KEY_HITS.equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    JsonObject hit = PARSER.parse(reader).getAsJsonObject();
+                    summary.count++;
+                    consumer.accept(hit);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
@@ -19,6 +19,14 @@ public interface SearchConstants {
 
     boolean SEARCH_PAGE_ENABLE = false;
 
+    int SEARCH_AFTER_SIZE = 500;
+
+    String SEARCH_AFTER_TIEBREAKER = "_uid";
+
+    int SEARCH_SCROLL_SIZE = 1000;
+
+    String SEARCH_SCROLL_TIME = "1m";
+
     String SEARCH_RESULT_KEY_HITS = "hits";
 
     String SEARCH_RESULT_KEY_TOTAL = "total";
@@ -27,6 +35,10 @@ public interface SearchConstants {
 
     String SEARCH_RESULT_KEY_HIGHLIGHT = "highlight";
 
+    String SEARCH_RESULT_KEY_FIELDS = "fields";
+
+    String SEARCH_PARAM_FILTER_PATH = "filter_path";
+
     String SEARCH_RESULT_KEY_RESULT = "result";
 
     boolean SEARCH_HIGHLIGHT_ENABLE = false;
@@ -0,0 +1,102 @@
+package org.elasticsearch.handler.cursor;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.Search;
+import org.elasticsearch.handler.constants.SearchConstants;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * 基于search_after的游标, 每次只取一批, 内存和单次请求耗时不随翻页深度增长
+ *
+ * query须已包含sort, 且sort的最后一项为唯一的tiebreaker。
+ */
+public class SearchAfterIterator implements Iterator<JSONObject> {
+
+    private final JSONObject query;
+    private final List<String> indexName;
+    private final List<String> indexType;
+    private final int size;
+    private final Function<Search, JestResult> executor;
+    private final Function<JsonObject, JSONObject> hitConverter;
+
+    private final Deque<JSONObject> buffer = new ArrayDeque<>();
+    private JSONArray searchAfter;
+    private boolean finished;
+
+    public SearchAfterIterator(JSONObject query, List<String> indexName, List<String> indexType, int size,
+                               Function<Search, JestResult> executor, Function<JsonObject, JSONObject> hitConverter) {
+        this.query = query;
+        this.indexName = indexName;
+        this.indexType = indexType;
+        this.size = size;
+        this.executor = executor;
+        this.hitConverter = hitConverter;
+        query.remove("from");
+        query.put("size", size);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (buffer.isEmpty() && !finished) {
+            fetch();
+        }
+        return !buffer.isEmpty();
+    }
+
+    @Override
+    public JSONObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return buffer.poll();
+    }
+
+    private void fetch() {
+        if (searchAfter != null) {
+            query.put("search_after", searchAfter);
+        }
+        Search.Builder builder = new Search.Builder(query.toJSONString());
+        if (!indexName.isEmpty()) {
+            builder.addIndices(indexName);
+        }
+        if (!indexType.isEmpty()) {
+            builder.addTypes(indexType);
+        }
+        JestResult result = executor.apply(builder.build());
+
+        // 没有命中(空页或响应中无hits)即已读完
+        JsonObject json = result != null ? result.getJsonObject() : null;
+        JsonObject hitsObject = json != null && json.has(SearchConstants.SEARCH_RESULT_KEY_HITS)
+                ? json.getAsJsonObject(SearchConstants.SEARCH_RESULT_KEY_HITS) : null;
+        JsonArray hits = hitsObject != null && hitsObject.has(SearchConstants.SEARCH_RESULT_KEY_HITS)
+                ? hitsObject.getAsJsonArray(SearchConstants.SEARCH_RESULT_KEY_HITS) : null;
+        if (hits == null) {
+            finished = true;
+            return;
+        }
+        for (JsonElement element : hits) {
+            JsonObject hit = element.getAsJsonObject();
+            if (!hit.has("sort")) {
+                throw new IllegalStateException("search_after iterate failed! es response hit has no sort values, "
+                        + "index: " + indexName);
+            }
+            buffer.add(hitConverter.apply(hit));
+            searchAfter = JSON.parseArray(hit.get("sort").toString());
+        }
+        if (hits.size() < size) {
+            finished = true;
+        }
+    }
+}
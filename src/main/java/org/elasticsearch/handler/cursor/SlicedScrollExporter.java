@@ -0,0 +1,175 @@
+package org.elasticsearch.handler.cursor;
+
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.ClearScroll;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchScroll;
+import io.searchbox.params.Parameters;
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.constants.SearchConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 分片scroll导出
+ *
+ * 一个scroll按slice拆成多个分片, 每个分片在独立线程中滚动读取, 每批结果回调consumer,
+ * 完成或出错时清除scroll上下文。consumer会被多个线程同时调用, 须线程安全。
+ * 任一分片失败(包括consumer抛出异常)时其他分片停止滚动, export抛出该异常。
+ */
+public class SlicedScrollExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(SlicedScrollExporter.class);
+
+    private final ClientHandler clientHandler;
+    private final Function<JsonObject, JSONObject> hitConverter;
+    private final String scrollTime;
+
+    public SlicedScrollExporter(ClientHandler clientHandler, Function<JsonObject, JSONObject> hitConverter,
+                                String scrollTime) {
+        this.clientHandler = clientHandler;
+        this.hitConverter = hitConverter;
+        this.scrollTime = scrollTime;
+    }
+
+    /**
+     * @return 导出的文档数
+     */
+    public long export(JSONObject query, List<String> indexName, List<String> indexType, int size, int slices,
+                       Consumer<List<JSONObject>> consumer) {
+        query.remove("from");
+        query.put("size", size);
+        if (!query.containsKey("sort")) {
+            query.put("sort", Lists.newArrayList("_doc"));
+        }
+
+        AtomicBoolean aborted = new AtomicBoolean();
+        if (slices <= 1) {
+            return scroll(query, indexName, indexType, -1, consumer, aborted);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(slices, new ThreadFactoryBuilder()
+                .setNameFormat("scroll-export-%d").setDaemon(true).build());
+        try {
+            List<Future<Long>> futures = Lists.newArrayList();
+            for (int i = 0; i < slices; i++) {
+                JSONObject sliceQuery = (JSONObject) query.clone();
+                JSONObject slice = new JSONObject();
+                slice.put("id", i);
+                slice.put("max", slices);
+                sliceQuery.put("slice", slice);
+                int sliceId = i;
+                futures.add(executor.submit(() -> scroll(sliceQuery, indexName, indexType, sliceId, consumer,
+                        aborted)));
+            }
+
+            long total = 0;
+            for (Future<Long> future : futures) {
+                try {
+                    total += future.get();
+                } catch (ExecutionException e) {
+                    aborted.set(true);
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    throw new RuntimeException("scroll export failed! " + cause.getMessage(), cause);
+                } catch (InterruptedException e) {
+                    aborted.set(true);
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("scroll export interrupted", e);
+                }
+            }
+            return total;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private long scroll(JSONObject query, List<String> indexName, List<String> indexType, int slice,
+                        Consumer<List<JSONObject>> consumer, AtomicBoolean aborted) {
+        Search.Builder builder = new Search.Builder(query.toJSONString()).setParameter(Parameters.SCROLL, scrollTime);
+        if (!indexName.isEmpty()) {
+            builder.addIndices(indexName);
+        }
+        if (!indexType.isEmpty()) {
+            builder.addTypes(indexType);
+        }
+
+        long begin = System.currentTimeMillis();
+        long count = 0;
+        //每页返回的scroll id可能不同, 结束时全部清除
+        Set<String> scrollIds = Sets.newLinkedHashSet();
+        try {
+            JestResult result = execute(builder.build());
+            while (true) {
+                //先记录scroll id, 其他分片已失败时也要清除本次创建的上下文
+                String scrollId = result.getJsonObject().get("_scroll_id").getAsString();
+                scrollIds.add(scrollId);
+                if (aborted.get()) {
+                    break;
+                }
+                JsonArray hits = result.getJsonObject().getAsJsonObject(SearchConstants.SEARCH_RESULT_KEY_HITS)
+                        .getAsJsonArray(SearchConstants.SEARCH_RESULT_KEY_HITS);
+                if (hits.size() == 0) {
+                    break;
+                }
+
+                List<JSONObject> batch = Lists.newArrayListWithCapacity(hits.size());
+                for (JsonElement hit : hits) {
+                    batch.add(hitConverter.apply(hit.getAsJsonObject()));
+                }
+                consumer.accept(batch);
+                count += batch.size();
+
+                result = execute(new SearchScroll.Builder(scrollId, scrollTime).build());
+            }
+            log.info("scroll export slice: {}, count: {}, time: {}", slice, count, System.currentTimeMillis() - begin);
+            return count;
+        } catch (RuntimeException e) {
+            aborted.set(true);
+            throw e;
+        } finally {
+            clearScroll(scrollIds);
+        }
+    }
+
+    private JestResult execute(Action<? extends JestResult> action) {
+        try {
+            JestResult result = clientHandler.execute(action);
+            if (result != null && result.isSucceeded()) {
+                return result;
+            }
+            throw new RuntimeException("scroll failed! es msg: " + (result != null ? result.getErrorMessage() : null));
+        } catch (IOException e) {
+            throw new RuntimeException("scroll failed! " + e.getMessage(), e);
+        }
+    }
+
+    private void clearScroll(Set<String> scrollIds) {
+        if (scrollIds.isEmpty()) {
+            return;
+        }
+        try {
+            clientHandler.execute(new ClearScroll.Builder().addScrollIds(scrollIds).build());
+        } catch (Exception e) {
+            log.warn("clear scroll failed! {}", e.getMessage());
+        }
+    }
+}
@@ -29,12 +29,24 @@ public class SearchRequest implements Serializable {
     private List<SearchField> must;
     //字段 mustNot匹配
     private List<SearchField> mustNot;
+    //字段 filter匹配 不算分
+    private List<SearchField> filter;
     //排序 可为空
     private List<SearchOrder> order;
     //分页 可为空
     private SearchPage page;
     //高亮 可为空
     private Highlight highlight;
+    //返回的_source字段 可为空, 支持通配符
+    private List<String> includes;
+    //排除的_source字段 可为空
+    private List<String> excludes;
+    //从doc values读取的字段, 结果合并到返回的文档中 可为空
+    private List<String> docValueFields;
+    //单独存储的字段 可为空
+    private List<String> storedFields;
+    //响应过滤 如hits.total,hits.hits._source 可为空
+    private List<String> filterPath;
 
     /**
      * 高亮
@@ -168,6 +180,50 @@ public class SearchRequest implements Serializable {
         this.page = page;
     }
 
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public void setIncludes(List<String> includes) {
+        this.includes = includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public void setExcludes(List<String> excludes) {
+        this.excludes = excludes;
+    }
+
+    public List<String> getDocValueFields() {
+        return docValueFields;
+    }
+
+    public void setDocValueFields(List<String> docValueFields) {
+        this.docValueFields = docValueFields;
+    }
+
+    public List<String> getStoredFields() {
+        return storedFields;
+    }
+
+    public void setStoredFields(List<String> storedFields) {
+        this.storedFields = storedFields;
+    }
+
+    public List<String> getFilterPath() {
+        return filterPath;
+    }
+
+    public void setFilterPath(List<String> filterPath) {
+        this.filterPath = filterPath;
+    }
+
+    public boolean hasSourceFilter() {
+        return (includes != null && !includes.isEmpty()) || (excludes != null && !excludes.isEmpty());
+    }
+
     public Object getValue() {
         return value;
     }
@@ -200,6 +256,14 @@ public class SearchRequest implements Serializable {
         this.mustNot = mustNot;
     }
 
+    public List<SearchField> getFilter() {
+        return filter;
+    }
+
+    public void setFilter(List<SearchField> filter) {
+        this.filter = filter;
+    }
+
     public int getSearchFieldSize() {
         return allFields().size();
     }
@@ -219,6 +283,9 @@ public class SearchRequest implements Serializable {
         if (mustNot != null && mustNot.size() > 0) {
             allFields.addAll(mustNot);
         }
+        if (filter != null && filter.size() > 0) {
+            allFields.addAll(filter);
+        }
         return allFields;
     }
 
@@ -231,9 +298,15 @@ public class SearchRequest implements Serializable {
                 ", should=" + should +
                 ", must=" + must +
                 ", mustNot=" + mustNot +
+                ", filter=" + filter +
                 ", order=" + order +
                 ", page=" + page +
                 ", highlight=" + highlight +
+                ", includes=" + includes +
+                ", excludes=" + excludes +
+                ", docValueFields=" + docValueFields +
+                ", storedFields=" + storedFields +
+                ", filterPath=" + filterPath +
                 '}';
     }
 }
@@ -17,5 +17,9 @@ public enum Clause {
     /**
      * 必须不不匹配条件
      */
-    mustNot;
+    mustNot,
+    /**
+     * 必须匹配, 不参与算分, 结果可被缓存
+     */
+    filter;
 }
@@ -0,0 +1,121 @@
+package org.elasticsearch.handler.id;
+
+import org.elasticsearch.handler.annotation.DocId;
+
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 文档id读取
+ *
+ * 每个类每个字段只内省一次, 缓存为MethodHandle, 之后读取不再有反射查找开销。
+ * 查找顺序: 默认字段名时的@DocId, getter, 字段。
+ */
+public final class DocIdResolver {
+
+    public static final String DEFAULT_ID_FIELD = "id";
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<ConcurrentMap<String, Optional<MethodHandle>>> ACCESSORS =
+            new ClassValue<ConcurrentMap<String, Optional<MethodHandle>>>() {
+                @Override
+                protected ConcurrentMap<String, Optional<MethodHandle>> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private DocIdResolver() {}
+
+    public static String getId(Object obj) {
+        return getId(obj, DEFAULT_ID_FIELD);
+    }
+
+    /**
+     * @return id值, 值为null时返回null
+     * @throws RuntimeException 类中没有该字段
+     */
+    public static String getId(Object obj, String fieldName) {
+        if (obj == null) {
+            return null;
+        }
+        Object value;
+        if (obj instanceof Map) {
+            value = ((Map<?, ?>) obj).get(fieldName);
+        } else {
+            MethodHandle handle = ACCESSORS.get(obj.getClass())
+                    .computeIfAbsent(fieldName, name -> Optional.ofNullable(findAccessor(obj.getClass(), name)))
+                    .orElseThrow(() -> new RuntimeException("fieldName[" + fieldName + "] was wrong, class: "
+                            + obj.getClass().getName()));
+            try {
+                value = handle.invokeExact(obj);
+            } catch (Throwable e) {
+                throw new RuntimeException("read fieldName[" + fieldName + "] failed! " + e.getMessage(), e);
+            }
+        }
+        return value != null ? value.toString() : null;
+    }
+
+    private static MethodHandle findAccessor(Class<?> type, String fieldName) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            if (DEFAULT_ID_FIELD.equals(fieldName)) {
+                MethodHandle handle = findAnnotated(type, lookup);
+                if (handle != null) {
+                    return handle.asType(GETTER_TYPE);
+                }
+            }
+
+            BeanInfo beanInfo = Introspector.getBeanInfo(type);
+            for (PropertyDescriptor pd : beanInfo.getPropertyDescriptors()) {
+                if (pd.getName().equals(fieldName) && pd.getReadMethod() != null) {
+                    Method method = pd.getReadMethod();
+                    method.setAccessible(true);
+                    return lookup.unreflect(method).asType(GETTER_TYPE);
+                }
+            }
+
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (field.getName().equals(fieldName) && !Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        return lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                    }
+                }
+            }
+            return null;
+        } catch (Exception e) {
+            throw new RuntimeException("fieldName[" + fieldName + "] was wrong, class: " + type.getName(), e);
+        }
+    }
+
+    private static MethodHandle findAnnotated(Class<?> type, MethodHandles.Lookup lookup) throws IllegalAccessException {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.isAnnotationPresent(DocId.class) && !Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    return lookup.unreflectGetter(field);
+                }
+            }
+            for (Method method : c.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(DocId.class) && method.getParameterCount() == 0
+                        && !Modifier.isStatic(method.getModifiers())) {
+                    method.setAccessible(true);
+                    return lookup.unreflect(method);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,132 @@
+package org.elasticsearch.handler.limit;
+
+import org.elasticsearch.handler.prop.LimitProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 熔断器
+ *
+ * 关闭状态下按breakerWindow统计失败率, 超过阈值时打开; 打开openTime后进入半开状态,
+ * 放行halfOpenRequests个试探请求, 全部成功则关闭, 任一失败则重新打开。
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final LimitProperty property;
+
+    private State state = State.CLOSED;
+    private long windowStart = System.currentTimeMillis();
+    private int requests;
+    private int failures;
+    private long openedAt;
+    private int trials;
+    private int trialSuccesses;
+
+    public CircuitBreaker(String name, LimitProperty property) {
+        this.name = name;
+        this.property = property;
+    }
+
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < property.getOpenTime()) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trials = 0;
+                trialSuccesses = 0;
+                log.info("{} circuit breaker half open", name);
+                //继续按半开处理
+            default:
+                if (trials >= property.getHalfOpenRequests()) {
+                    return false;
+                }
+                trials++;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++trialSuccesses >= property.getHalfOpenRequests()) {
+                state = State.CLOSED;
+                resetWindow(System.currentTimeMillis());
+                log.info("{} circuit breaker closed", name);
+            }
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open("trial request failed");
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(true);
+        }
+    }
+
+    /**
+     * 半开时归还试探名额
+     */
+    public synchronized void onCancel() {
+        if (state == State.HALF_OPEN && trials > trialSuccesses) {
+            trials--;
+        }
+    }
+
+    private void record(boolean failed) {
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= property.getBreakerWindow()) {
+            resetWindow(now);
+        }
+        requests++;
+        if (failed) {
+            failures++;
+        }
+        if (requests >= property.getMinimumRequests()
+                && failures >= requests * property.getFailureRateThreshold()) {
+            open("failures " + failures + "/" + requests);
+        }
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        log.warn("{} circuit breaker opened for {}ms, {}", name, property.getOpenTime(), reason);
+    }
+
+    private void resetWindow(long now) {
+        windowStart = now;
+        requests = 0;
+        failures = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{" +
+                "name='" + name + '\'' +
+                ", state=" + state +
+                ", requests=" + requests +
+                ", failures=" + failures +
+                '}';
+    }
+}
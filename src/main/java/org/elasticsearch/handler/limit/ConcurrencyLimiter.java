@@ -0,0 +1,92 @@
+package org.elasticsearch.handler.limit;
+
+import org.elasticsearch.handler.prop.LimitProperty;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按耗时梯度调整的并发上限, 参考TCP Vegas及Netflix concurrency-limits的Gradient2
+ *
+ * 长期耗时为longWindow个样本的指数加权平均, gradient = tolerance * 长期耗时 / 本次耗时, 取值0.5~1,
+ * 新上限 = 上限 * gradient + sqrt(上限)。耗时不变时上限缓慢增长, 耗时上升时按比例缩小,
+ * 进行中的请求不足上限一半时不增长, 避免低负载时上限无限放大。
+ */
+public class ConcurrencyLimiter {
+
+    private final LimitProperty property;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+    private double estimatedLimit;
+    private double longRtt;
+    private long sampleCount;
+
+    public ConcurrencyLimiter(LimitProperty property) {
+        this.property = property;
+        this.limit = property.getInitialLimit();
+        this.estimatedLimit = limit;
+    }
+
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * @param rttNanos 请求耗时, 小于0时只释放不计入样本
+     * @param dropped 超时或被es拒绝(429)
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        if (rttNanos < 0) {
+            return;
+        }
+        synchronized (this) {
+            if (dropped) {
+                estimatedLimit = Math.max(property.getMinLimit(), estimatedLimit * property.getBackoffRatio());
+                limit = (int) estimatedLimit;
+                return;
+            }
+
+            sampleCount++;
+            double alpha = 2.0 / (Math.min(sampleCount, property.getLongWindow()) + 1);
+            longRtt = sampleCount == 1 ? rttNanos : longRtt + alpha * (rttNanos - longRtt);
+            //长期耗时远高于当前耗时, 说明之前经历过拥塞, 加快回落
+            if (longRtt > rttNanos * 2) {
+                longRtt *= 0.95;
+            }
+            //请求量不足以验证更高的上限
+            if (current < estimatedLimit / 2) {
+                return;
+            }
+
+            double gradient = Math.max(0.5, Math.min(1.0, property.getRttTolerance() * longRtt / rttNanos));
+            double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            newLimit = estimatedLimit * (1 - property.getSmoothing()) + newLimit * property.getSmoothing();
+            estimatedLimit = Math.max(property.getMinLimit(), Math.min(property.getMaxLimit(), newLimit));
+            limit = (int) estimatedLimit;
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter{" +
+                "limit=" + limit +
+                ", inFlight=" + inFlight +
+                '}';
+    }
+}
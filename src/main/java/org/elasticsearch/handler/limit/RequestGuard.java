@@ -0,0 +1,78 @@
+package org.elasticsearch.handler.limit;
+
+import org.elasticsearch.handler.prop.LimitProperty;
+
+/**
+ * 一类请求(读或写)的并发限制与熔断
+ */
+public class RequestGuard {
+
+    public static final String LIMIT_EXCEEDED = "limit_exceeded";
+    public static final String CIRCUIT_OPEN = "circuit_open";
+
+    private final String name;
+    private final ConcurrencyLimiter limiter;
+    private final CircuitBreaker breaker;
+
+    public RequestGuard(String name, LimitProperty property) {
+        this.name = name;
+        this.limiter = new ConcurrencyLimiter(property);
+        this.breaker = property.getBreakerEnabled() ? new CircuitBreaker(name, property) : null;
+    }
+
+    /**
+     * 获取许可, 成功后必须调用release
+     */
+    public void acquire() throws RequestRejectedException {
+        if (!limiter.tryAcquire()) {
+            throw new RequestRejectedException(LIMIT_EXCEEDED, name + " concurrency limit exceeded, limit: "
+                    + limiter.getLimit());
+        }
+        if (breaker != null && !breaker.allowRequest()) {
+            limiter.release(-1, false);
+            throw new RequestRejectedException(CIRCUIT_OPEN, name + " circuit breaker is open");
+        }
+    }
+
+    /**
+     * @param failed 请求异常或返回5xx、429
+     * @param dropped 超时或返回429, 缩小并发上限
+     */
+    public void release(long rttNanos, boolean failed, boolean dropped) {
+        limiter.release(rttNanos, dropped);
+        if (breaker != null) {
+            if (failed) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+    }
+
+    /**
+     * 许可未使用或请求被取消, 不计入统计
+     */
+    public void cancel() {
+        limiter.release(-1, false);
+        if (breaker != null) {
+            breaker.onCancel();
+        }
+    }
+
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestGuard{" +
+                "name='" + name + '\'' +
+                ", limiter=" + limiter +
+                ", breaker=" + breaker +
+                '}';
+    }
+}
@@ -0,0 +1,23 @@
+package org.elasticsearch.handler.limit;
+
+import java.io.IOException;
+
+/**
+ * 超过并发上限或熔断打开时, 请求未发出即被拒绝
+ */
+public class RequestRejectedException extends IOException {
+
+    private final String errorType;
+
+    /**
+     * @param errorType 计入MetricsRegistry的错误类型, limit_exceeded 或 circuit_open
+     */
+    public RequestRejectedException(String errorType, String message) {
+        super(message);
+        this.errorType = errorType;
+    }
+
+    public String getErrorType() {
+        return errorType;
+    }
+}
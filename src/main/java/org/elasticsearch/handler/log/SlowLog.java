@@ -0,0 +1,92 @@
+package org.elasticsearch.handler.log;
+
+import org.elasticsearch.handler.prop.SlowLogProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 慢查询日志
+ *
+ * 按客户端耗时选择日志级别, 低于阈值的请求只按抽样比例输出。查询语句和结果概要均为延迟计算,
+ * 不输出时不做序列化。overhead为客户端耗时减去es返回的took, 即网络、排队及序列化时间。
+ * 日志名为org.elasticsearch.handler.slowlog, 可单独配置输出。
+ */
+public class SlowLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger("org.elasticsearch.handler.slowlog");
+
+    public enum Level {
+        WARN, INFO, DEBUG
+    }
+
+    private final SlowLogProperty property;
+    private final Logger log;
+
+    public SlowLog(SlowLogProperty property) {
+        this(property, LOG);
+    }
+
+    SlowLog(SlowLogProperty property, Logger log) {
+        this.property = property;
+        this.log = log;
+    }
+
+    /**
+     * @return 本次请求的日志级别, null为不输出
+     */
+    public Level level(long elapsed) {
+        if (property.getWarnThreshold() >= 0 && elapsed >= property.getWarnThreshold()) {
+            return log.isWarnEnabled() ? Level.WARN : null;
+        }
+        if (property.getInfoThreshold() >= 0 && elapsed >= property.getInfoThreshold()) {
+            return log.isInfoEnabled() ? Level.INFO : null;
+        }
+        if (property.getDebugThreshold() >= 0 && elapsed >= property.getDebugThreshold()) {
+            return log.isDebugEnabled() ? Level.DEBUG : null;
+        }
+        double rate = property.getSampleRate();
+        if (rate > 0 && log.isInfoEnabled() && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate)) {
+            return Level.INFO;
+        }
+        return null;
+    }
+
+    /**
+     * @param took es返回的耗时, 未知时传-1
+     */
+    public void log(String operation, String target, long elapsed, long took, Supplier<?> summary,
+                    Supplier<String> query) {
+        Level level = level(elapsed);
+        if (level != null) {
+            log(level, operation, target, elapsed, took, summary, query);
+        }
+    }
+
+    public void log(Level level, String operation, String target, long elapsed, long took, Supplier<?> summary,
+                    Supplier<String> query) {
+        String msg = "{} [{}] time: {}, took: {}, overhead: {}, result: {}, query: {}";
+        Object[] args = {operation, target, elapsed, took, took >= 0 ? elapsed - took : -1,
+                summary != null ? summary.get() : null, truncate(query != null ? query.get() : null)};
+        switch (level) {
+            case WARN:
+                log.warn(msg, args);
+                break;
+            case INFO:
+                log.info(msg, args);
+                break;
+            default:
+                log.debug(msg, args);
+        }
+    }
+
+    private String truncate(String query) {
+        int max = property.getMaxQueryLength();
+        if (query != null && max >= 0 && query.length() > max) {
+            return query.substring(0, max) + "...";
+        }
+        return query;
+    }
+}
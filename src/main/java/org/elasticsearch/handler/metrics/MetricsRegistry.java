@@ -0,0 +1,48 @@
+package org.elasticsearch.handler.metrics;
+
+import java.util.function.IntSupplier;
+
+/**
+ * 指标记录接口, 实现对接具体的监控系统
+ *
+ * 所有方法默认为空实现, 只需覆盖关心的指标。实现须线程安全且不阻塞, 会在请求线程及http回调线程中调用。
+ */
+public interface MetricsRegistry {
+
+    MetricsRegistry NOOP = new MetricsRegistry() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * 返回false时不采集需要额外计算的指标, 如请求字节数
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    default void recordLatency(Operation operation, Phase phase, long nanos) {}
+
+    default void incrementBytesSent(Operation operation, long bytes) {}
+
+    default void incrementBytesReceived(Operation operation, long bytes) {}
+
+    /**
+     * @param errorType es返回的error.type, 异常时为异常类名, 否则为http_状态码
+     */
+    default void incrementError(Operation operation, String errorType) {}
+
+    default void incrementBulkItemFailures(String errorType, long count) {}
+
+    /**
+     * 发出对冲请求时调用
+     */
+    default void incrementHedge(Operation operation) {}
+
+    /**
+     * 设置registry时为每个操作类型注册一次, 返回当前进行中的请求数
+     */
+    default void registerInFlightGauge(Operation operation, IntSupplier inFlight) {}
+}
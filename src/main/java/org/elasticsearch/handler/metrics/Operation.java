@@ -0,0 +1,70 @@
+package org.elasticsearch.handler.metrics;
+
+import io.searchbox.action.Action;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Delete;
+import io.searchbox.core.DeleteByQuery;
+import io.searchbox.core.Get;
+import io.searchbox.core.Index;
+import io.searchbox.core.MultiGet;
+import io.searchbox.core.MultiSearch;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchScroll;
+import io.searchbox.core.Update;
+import org.elasticsearch.handler.bulk.OperationBulk;
+
+/**
+ * 指标按操作类型区分
+ */
+public enum Operation {
+
+    SEARCH, MULTI_SEARCH, SCROLL, GET, MULTI_GET, INDEX, BULK, UPDATE, DELETE, DELETE_BY_QUERY, INDEX_ADMIN, OTHER;
+
+    private static final String INDICES_PACKAGE = "io.searchbox.indices";
+
+    public boolean isRead() {
+        return this == SEARCH || this == MULTI_SEARCH || this == SCROLL || this == GET || this == MULTI_GET;
+    }
+
+    /**
+     * 可重复发送的只读请求, scroll每次请求推进游标, 不可重复发送
+     */
+    public boolean isHedgeable() {
+        return this == SEARCH || this == MULTI_SEARCH || this == GET || this == MULTI_GET;
+    }
+
+    public boolean isWrite() {
+        return this == INDEX || this == BULK || this == UPDATE || this == DELETE || this == DELETE_BY_QUERY;
+    }
+
+    public static Operation of(Action<?> action) {
+        if (action instanceof Search) {
+            return SEARCH;
+        } else if (action instanceof MultiSearch) {
+            return MULTI_SEARCH;
+        } else if (action instanceof SearchScroll) {
+            //ClearScroll归为OTHER, 不受读请求限流及熔断影响, 避免scroll上下文无法释放
+            return SCROLL;
+        } else if (action instanceof Get) {
+            return GET;
+        } else if (action instanceof MultiGet) {
+            return MULTI_GET;
+        } else if (action instanceof Index) {
+            return INDEX;
+        } else if (action instanceof OperationBulk) {
+            //DocumentHandler的更新、删除以单条bulk发送, 由调用方指定操作类型
+            return ((OperationBulk) action).getOperation();
+        } else if (action instanceof Bulk) {
+            return BULK;
+        } else if (action instanceof Update) {
+            return UPDATE;
+        } else if (action instanceof Delete) {
+            return DELETE;
+        } else if (action instanceof DeleteByQuery) {
+            return DELETE_BY_QUERY;
+        } else if (action != null && action.getClass().getName().startsWith(INDICES_PACKAGE)) {
+            return INDEX_ADMIN;
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,16 @@
+package org.elasticsearch.handler.metrics;
+
+/**
+ * 请求耗时的组成部分
+ */
+public enum Phase {
+
+    //构建请求, 如SearchHandler.buildSearchBuilder
+    BUILD,
+    //发送请求到收到并解析响应, 客户端观察到的总耗时
+    HTTP,
+    //es响应中的took
+    TOOK,
+    //响应转换为返回结果
+    CONVERT
+}
@@ -0,0 +1,104 @@
+package org.elasticsearch.handler.prop;
+
+/**
+ * BulkProcessor配置
+ *
+ * bulkActions, bulkSize, flushInterval 任一达到即触发一次bulk请求, 小于等于0表示不按该条件触发。
+ */
+public class BulkProperty {
+
+    //每批最大请求数
+    private int bulkActions = 1000;
+    //每批最大字节数
+    private long bulkSize = 5 * 1024 * 1024;
+    //定时刷新间隔 毫秒
+    private long flushInterval = 1000;
+    //同时进行中的bulk请求数
+    private int concurrentRequests = 1;
+    //达到并发上限时阻塞调用方, false则直接拒绝
+    private boolean blockWhenFull = true;
+    //429拒绝条目最大重试次数
+    private int maxRetries = 3;
+    //首次重试等待毫秒数, 之后按2的指数递增
+    private long retryInitialDelay = 50;
+    //close时等待进行中请求完成的最长时间 毫秒
+    private long closeTimeout = 30000;
+
+    public int getBulkActions() {
+        return bulkActions;
+    }
+
+    public void setBulkActions(int bulkActions) {
+        this.bulkActions = bulkActions;
+    }
+
+    public long getBulkSize() {
+        return bulkSize;
+    }
+
+    public void setBulkSize(long bulkSize) {
+        this.bulkSize = bulkSize;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    public void setConcurrentRequests(int concurrentRequests) {
+        this.concurrentRequests = concurrentRequests;
+    }
+
+    public boolean getBlockWhenFull() {
+        return blockWhenFull;
+    }
+
+    public void setBlockWhenFull(boolean blockWhenFull) {
+        this.blockWhenFull = blockWhenFull;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getRetryInitialDelay() {
+        return retryInitialDelay;
+    }
+
+    public void setRetryInitialDelay(long retryInitialDelay) {
+        this.retryInitialDelay = retryInitialDelay;
+    }
+
+    public long getCloseTimeout() {
+        return closeTimeout;
+    }
+
+    public void setCloseTimeout(long closeTimeout) {
+        this.closeTimeout = closeTimeout;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkProperty{" +
+                "bulkActions=" + bulkActions +
+                ", bulkSize=" + bulkSize +
+                ", flushInterval=" + flushInterval +
+                ", concurrentRequests=" + concurrentRequests +
+                ", blockWhenFull=" + blockWhenFull +
+                ", maxRetries=" + maxRetries +
+                ", retryInitialDelay=" + retryInitialDelay +
+                ", closeTimeout=" + closeTimeout +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package org.elasticsearch.handler.prop;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * 搜索结果缓存配置
+ */
+public class CacheProperty {
+
+    //最大缓存条数, maxBytes大于0时以maxBytes为准
+    private long maxEntries = 10000;
+    //最大占用内存估算值 字节
+    private long maxBytes;
+    //默认过期时间 毫秒
+    private long defaultTtl = 5000;
+    //按索引指定过期时间 毫秒, 查询多个索引时取最小值
+    private Map<String, Long> indexTtl = Maps.newHashMap();
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    public void setDefaultTtl(long defaultTtl) {
+        this.defaultTtl = defaultTtl;
+    }
+
+    public Map<String, Long> getIndexTtl() {
+        return indexTtl;
+    }
+
+    public void setIndexTtl(Map<String, Long> indexTtl) {
+        this.indexTtl = indexTtl;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheProperty{" +
+                "maxEntries=" + maxEntries +
+                ", maxBytes=" + maxBytes +
+                ", defaultTtl=" + defaultTtl +
+                ", indexTtl=" + indexTtl +
+                '}';
+    }
+}
@@ -0,0 +1,38 @@
+package org.elasticsearch.handler.prop;
+
+/**
+ * 单文档get合并为mget的配置
+ *
+ * 同一索引、类型的get在maxDelay内或达到maxBatchSize个id时合并为一次mget请求。
+ */
+public class GetBatchProperty {
+
+    //第一个请求到达后最长等待时间 微秒
+    private long maxDelayMicros = 1000;
+    //每批最大id数, 达到后立即发送
+    private int maxBatchSize = 100;
+
+    public long getMaxDelayMicros() {
+        return maxDelayMicros;
+    }
+
+    public void setMaxDelayMicros(long maxDelayMicros) {
+        this.maxDelayMicros = maxDelayMicros;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public String toString() {
+        return "GetBatchProperty{" +
+                "maxDelayMicros=" + maxDelayMicros +
+                ", maxBatchSize=" + maxBatchSize +
+                '}';
+    }
+}
@@ -0,0 +1,92 @@
+package org.elasticsearch.handler.prop;
+
+/**
+ * 对冲请求配置, 只用于search/get等只读请求
+ *
+ * 请求超过近期耗时的percentile分位仍未返回时向另一节点发送相同请求, 先返回者为准, 另一个取消。
+ */
+public class HedgeProperty {
+
+    private boolean enabled;
+    //对冲延迟取近期耗时的分位数, 0~100
+    private double percentile = 95;
+    //对冲延迟下限 毫秒
+    private long minDelay = 5;
+    //对冲延迟上限 毫秒
+    private long maxDelay = 1000;
+    //对冲请求占总请求的最大比例, 避免集群整体变慢时请求量翻倍
+    private double maxHedgeRatio = 0.05;
+    //保留最近的耗时样本数
+    private int sampleSize = 1000;
+    //样本数不足时不对冲
+    private int minSamples = 100;
+
+    public boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public long getMinDelay() {
+        return minDelay;
+    }
+
+    public void setMinDelay(long minDelay) {
+        this.minDelay = minDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public void setMaxDelay(long maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    public double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    public void setMaxHedgeRatio(double maxHedgeRatio) {
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgeProperty{" +
+                "enabled=" + enabled +
+                ", percentile=" + percentile +
+                ", minDelay=" + minDelay +
+                ", maxDelay=" + maxDelay +
+                ", maxHedgeRatio=" + maxHedgeRatio +
+                ", sampleSize=" + sampleSize +
+                ", minSamples=" + minSamples +
+                '}';
+    }
+}
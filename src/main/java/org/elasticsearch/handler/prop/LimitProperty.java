@@ -0,0 +1,159 @@
+package org.elasticsearch.handler.prop;
+
+/**
+ * 自适应并发限制及熔断配置, 读写请求分别配置
+ *
+ * 并发上限按请求耗时梯度调整: 耗时接近长期平均时增大, 耗时上升时缩小, 超时或429时按比例缩小。
+ * 熔断在统计窗口内失败率超过阈值时打开, 打开期间直接拒绝请求, 到期后放行少量请求试探。
+ */
+public class LimitProperty {
+
+    //初始并发上限
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 500;
+    //容忍的耗时上升倍数, 短期耗时不超过长期平均的该倍数时不缩小
+    private double rttTolerance = 1.5;
+    //长期平均耗时的样本数
+    private int longWindow = 600;
+    //新上限的平滑系数, 0~1
+    private double smoothing = 0.2;
+    //超时或429时上限缩小比例
+    private double backoffRatio = 0.9;
+
+    //是否开启熔断
+    private boolean breakerEnabled = true;
+    //熔断失败率阈值, 0~1
+    private double failureRateThreshold = 0.5;
+    //统计窗口内请求数不足时不熔断
+    private int minimumRequests = 20;
+    //失败率统计窗口 毫秒
+    private long breakerWindow = 10000;
+    //熔断打开时长 毫秒
+    private long openTime = 5000;
+    //半开状态放行的试探请求数, 全部成功后关闭熔断
+    private int halfOpenRequests = 5;
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public double getRttTolerance() {
+        return rttTolerance;
+    }
+
+    public void setRttTolerance(double rttTolerance) {
+        this.rttTolerance = rttTolerance;
+    }
+
+    public int getLongWindow() {
+        return longWindow;
+    }
+
+    public void setLongWindow(int longWindow) {
+        this.longWindow = longWindow;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    public boolean getBreakerEnabled() {
+        return breakerEnabled;
+    }
+
+    public void setBreakerEnabled(boolean breakerEnabled) {
+        this.breakerEnabled = breakerEnabled;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public int getMinimumRequests() {
+        return minimumRequests;
+    }
+
+    public void setMinimumRequests(int minimumRequests) {
+        this.minimumRequests = minimumRequests;
+    }
+
+    public long getBreakerWindow() {
+        return breakerWindow;
+    }
+
+    public void setBreakerWindow(long breakerWindow) {
+        this.breakerWindow = breakerWindow;
+    }
+
+    public long getOpenTime() {
+        return openTime;
+    }
+
+    public void setOpenTime(long openTime) {
+        this.openTime = openTime;
+    }
+
+    public int getHalfOpenRequests() {
+        return halfOpenRequests;
+    }
+
+    public void setHalfOpenRequests(int halfOpenRequests) {
+        this.halfOpenRequests = halfOpenRequests;
+    }
+
+    @Override
+    public String toString() {
+        return "LimitProperty{" +
+                "initialLimit=" + initialLimit +
+                ", minLimit=" + minLimit +
+                ", maxLimit=" + maxLimit +
+                ", rttTolerance=" + rttTolerance +
+                ", longWindow=" + longWindow +
+                ", smoothing=" + smoothing +
+                ", backoffRatio=" + backoffRatio +
+                ", breakerEnabled=" + breakerEnabled +
+                ", failureRateThreshold=" + failureRateThreshold +
+                ", minimumRequests=" + minimumRequests +
+                ", breakerWindow=" + breakerWindow +
+                ", openTime=" + openTime +
+                ", halfOpenRequests=" + halfOpenRequests +
+                '}';
+    }
+}
@@ -0,0 +1,49 @@
+package org.elasticsearch.handler.prop;
+
+/**
+ * 复合搜索拆分并发执行的配置
+ *
+ * 请求列表按条数及请求体大小拆分为多个msearch, 最多maxConcurrency个同时执行。
+ */
+public class MultiSearchProperty {
+
+    //每个msearch最多包含的搜索数
+    private int maxRequestsPerChunk = 20;
+    //每个msearch请求体最大字节数, 单个搜索超过时独立发送
+    private int maxBytesPerChunk = 512 * 1024;
+    //同时执行的msearch数
+    private int maxConcurrency = 4;
+
+    public int getMaxRequestsPerChunk() {
+        return maxRequestsPerChunk;
+    }
+
+    public void setMaxRequestsPerChunk(int maxRequestsPerChunk) {
+        this.maxRequestsPerChunk = maxRequestsPerChunk;
+    }
+
+    public int getMaxBytesPerChunk() {
+        return maxBytesPerChunk;
+    }
+
+    public void setMaxBytesPerChunk(int maxBytesPerChunk) {
+        this.maxBytesPerChunk = maxBytesPerChunk;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public String toString() {
+        return "MultiSearchProperty{" +
+                "maxRequestsPerChunk=" + maxRequestsPerChunk +
+                ", maxBytesPerChunk=" + maxBytesPerChunk +
+                ", maxConcurrency=" + maxConcurrency +
+                '}';
+    }
+}
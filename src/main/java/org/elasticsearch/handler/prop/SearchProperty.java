@@ -11,6 +11,28 @@ public class SearchProperty {
     private List<String> hosts;
     private Integer readTimeout;
     private Integer connTimeout;
+    //连接池最大连接数
+    private int maxTotalConnection = 200;
+    //每个节点最大连接数
+    private int maxConnectionPerRoute = 50;
+    //连接保持时长 毫秒, 服务端返回Keep-Alive时取较小值, 小于等于0不限制
+    private long keepAlive = 60000;
+    //空闲连接回收时长 毫秒, 小于等于0不回收
+    private long maxConnectionIdleTime = 30000;
+    //是否通过_nodes发现集群节点
+    private boolean discoveryEnabled;
+    //节点发现间隔 毫秒
+    private long discoveryFrequency = 60000;
+    //节点过滤条件, 如 data:true, 专用master节点始终跳过
+    private String discoveryFilter;
+    //节点超时或连接失败后的拉黑时长 毫秒, 连续失败时加倍
+    private long nodeBlacklistTime = 1000;
+    //最长拉黑时长 毫秒
+    private long maxNodeBlacklistTime = 60000;
+    //请求体gzip压缩, es需开启http.compression
+    private boolean requestCompression;
+    //接受gzip响应, es需开启http.compression
+    private boolean responseCompression = true;
 
     public List<String> getHosts() {
         return hosts;
@@ -36,12 +58,111 @@ public class SearchProperty {
         this.connTimeout = connTimeout;
     }
 
+    public int getMaxTotalConnection() {
+        return maxTotalConnection;
+    }
+
+    public void setMaxTotalConnection(int maxTotalConnection) {
+        this.maxTotalConnection = maxTotalConnection;
+    }
+
+    public int getMaxConnectionPerRoute() {
+        return maxConnectionPerRoute;
+    }
+
+    public void setMaxConnectionPerRoute(int maxConnectionPerRoute) {
+        this.maxConnectionPerRoute = maxConnectionPerRoute;
+    }
+
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public long getMaxConnectionIdleTime() {
+        return maxConnectionIdleTime;
+    }
+
+    public void setMaxConnectionIdleTime(long maxConnectionIdleTime) {
+        this.maxConnectionIdleTime = maxConnectionIdleTime;
+    }
+
+    public boolean getDiscoveryEnabled() {
+        return discoveryEnabled;
+    }
+
+    public void setDiscoveryEnabled(boolean discoveryEnabled) {
+        this.discoveryEnabled = discoveryEnabled;
+    }
+
+    public long getDiscoveryFrequency() {
+        return discoveryFrequency;
+    }
+
+    public void setDiscoveryFrequency(long discoveryFrequency) {
+        this.discoveryFrequency = discoveryFrequency;
+    }
+
+    public String getDiscoveryFilter() {
+        return discoveryFilter;
+    }
+
+    public void setDiscoveryFilter(String discoveryFilter) {
+        this.discoveryFilter = discoveryFilter;
+    }
+
+    public long getNodeBlacklistTime() {
+        return nodeBlacklistTime;
+    }
+
+    public void setNodeBlacklistTime(long nodeBlacklistTime) {
+        this.nodeBlacklistTime = nodeBlacklistTime;
+    }
+
+    public long getMaxNodeBlacklistTime() {
+        return maxNodeBlacklistTime;
+    }
+
+    public void setMaxNodeBlacklistTime(long maxNodeBlacklistTime) {
+        this.maxNodeBlacklistTime = maxNodeBlacklistTime;
+    }
+
+    public boolean getRequestCompression() {
+        return requestCompression;
+    }
+
+    public void setRequestCompression(boolean requestCompression) {
+        this.requestCompression = requestCompression;
+    }
+
+    public boolean getResponseCompression() {
+        return responseCompression;
+    }
+
+    public void setResponseCompression(boolean responseCompression) {
+        this.responseCompression = responseCompression;
+    }
+
     @Override
     public String toString() {
         return "SearchProperty{" +
                 "hosts=" + hosts +
                 ", readTimeout=" + readTimeout +
                 ", connTimeout=" + connTimeout +
+                ", maxTotalConnection=" + maxTotalConnection +
+                ", maxConnectionPerRoute=" + maxConnectionPerRoute +
+                ", keepAlive=" + keepAlive +
+                ", maxConnectionIdleTime=" + maxConnectionIdleTime +
+                ", discoveryEnabled=" + discoveryEnabled +
+                ", discoveryFrequency=" + discoveryFrequency +
+                ", discoveryFilter='" + discoveryFilter + '\'' +
+                ", nodeBlacklistTime=" + nodeBlacklistTime +
+                ", maxNodeBlacklistTime=" + maxNodeBlacklistTime +
+                ", requestCompression=" + requestCompression +
+                ", responseCompression=" + responseCompression +
                 '}';
     }
 }
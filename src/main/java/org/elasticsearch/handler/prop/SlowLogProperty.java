@@ -0,0 +1,66 @@
+package org.elasticsearch.handler.prop;
+
+/**
+ * 慢查询日志配置, 阈值为客户端耗时 毫秒, 小于0不启用该级别
+ */
+public class SlowLogProperty {
+
+    private long warnThreshold = 1000;
+    private long infoThreshold = 200;
+    private long debugThreshold = 50;
+    //低于所有阈值的请求按比例抽样以info输出, 0~1
+    private double sampleRate;
+    //查询语句最大输出长度
+    private int maxQueryLength = 4096;
+
+    public long getWarnThreshold() {
+        return warnThreshold;
+    }
+
+    public void setWarnThreshold(long warnThreshold) {
+        this.warnThreshold = warnThreshold;
+    }
+
+    public long getInfoThreshold() {
+        return infoThreshold;
+    }
+
+    public void setInfoThreshold(long infoThreshold) {
+        this.infoThreshold = infoThreshold;
+    }
+
+    public long getDebugThreshold() {
+        return debugThreshold;
+    }
+
+    public void setDebugThreshold(long debugThreshold) {
+        this.debugThreshold = debugThreshold;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getMaxQueryLength() {
+        return maxQueryLength;
+    }
+
+    public void setMaxQueryLength(int maxQueryLength) {
+        this.maxQueryLength = maxQueryLength;
+    }
+
+    @Override
+    public String toString() {
+        return "SlowLogProperty{" +
+                "warnThreshold=" + warnThreshold +
+                ", infoThreshold=" + infoThreshold +
+                ", debugThreshold=" + debugThreshold +
+                ", sampleRate=" + sampleRate +
+                ", maxQueryLength=" + maxQueryLength +
+                '}';
+    }
+}
@@ -0,0 +1,142 @@
+package org.elasticsearch.handler.query;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.elasticsearch.handler.enums.Clause;
+import org.elasticsearch.handler.enums.QueryType;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 收集bool查询的各条件, 生成时按需优化
+ *
+ * 优化规则:
+ *      1. 相同clause、查询方式、字段及值的条件只保留一个
+ *      2. must中的term、range、prefix、wildcard、regexp不需要算分, 移到filter, 可使用节点查询缓存
+ *      3. should、mustNot中同一字段的多个term合并为一个terms, 语义不变(任一匹配/全部不匹配)
+ * must、filter中同一字段的多个term是"同时包含", 多值字段下与terms不等价, 不合并。
+ */
+public class BoolQueryPlanner {
+
+    private static final Set<QueryType> NON_SCORING = EnumSet.of(QueryType.term, QueryType.range, QueryType.prefix,
+            QueryType.wildcard, QueryType.regexp);
+
+    private final boolean optimize;
+
+    private final List<Condition> conditions = Lists.newArrayList();
+
+    /**
+     * @param optimize 为false时按添加顺序原样生成
+     */
+    public BoolQueryPlanner(boolean optimize) {
+        this.optimize = optimize;
+    }
+
+    private static class Condition {
+        Clause clause;
+        final QueryType queryType;
+        final String name;
+        final String value;
+        QueryBuilder queryBuilder;
+
+        Condition(Clause clause, QueryType queryType, String name, String value, QueryBuilder queryBuilder) {
+            this.clause = clause;
+            this.queryType = queryType;
+            this.name = name;
+            this.value = value;
+            this.queryBuilder = queryBuilder;
+        }
+
+        /**
+         * 优化后所在的clause
+         */
+        Clause plannedClause() {
+            return clause == Clause.must && NON_SCORING.contains(queryType) ? Clause.filter : clause;
+        }
+
+        String key() {
+            return plannedClause() + "|" + queryType + "|" + name + "|" + value;
+        }
+    }
+
+    /**
+     * @param value 生成queryBuilder使用的值, 用于去重及合并terms
+     */
+    public void add(Clause clause, QueryType queryType, String name, String value, QueryBuilder queryBuilder) {
+        conditions.add(new Condition(clause, queryType, name, value, queryBuilder));
+    }
+
+    /**
+     * 优化时是否有重复条件会被去除
+     */
+    public boolean hasDuplicates() {
+        if (!optimize) {
+            return false;
+        }
+        Set<String> keys = Sets.newHashSet();
+        for (Condition condition : conditions) {
+            if (!keys.add(condition.key())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void build(BoolQueryBuilder query) {
+        List<Condition> plan = optimize ? optimize() : conditions;
+        for (Condition condition : plan) {
+            switch (condition.clause) {
+                case must: query.must(condition.queryBuilder); break;
+                case filter: query.filter(condition.queryBuilder); break;
+                case should: query.should(condition.queryBuilder); break;
+                case mustNot: query.mustNot(condition.queryBuilder); break;
+                default:
+            }
+        }
+    }
+
+    private List<Condition> optimize() {
+        //去重, 保留第一次出现的位置
+        LinkedHashMap<String, Condition> unique = new LinkedHashMap<>();
+        for (Condition condition : conditions) {
+            condition.clause = condition.plannedClause();
+            unique.putIfAbsent(condition.key(), condition);
+        }
+
+        //合并should、mustNot中同一字段的term, terms放在该字段第一个term的位置
+        Map<String, Condition> merged = Maps.newHashMap();
+        Map<String, List<String>> values = Maps.newHashMap();
+        List<Condition> plan = Lists.newArrayList();
+        for (Condition condition : unique.values()) {
+            if (condition.queryType != QueryType.term
+                    || (condition.clause != Clause.should && condition.clause != Clause.mustNot)) {
+                plan.add(condition);
+                continue;
+            }
+            String key = condition.clause + "|" + condition.name;
+            Condition first = merged.putIfAbsent(key, condition);
+            if (first == null) {
+                plan.add(condition);
+                values.put(key, Lists.newArrayList(condition.value));
+            } else {
+                values.get(key).add(condition.value);
+            }
+        }
+        for (Map.Entry<String, Condition> entry : merged.entrySet()) {
+            List<String> termValues = values.get(entry.getKey());
+            if (termValues.size() > 1) {
+                Condition condition = entry.getValue();
+                condition.queryBuilder = QueryBuilders.termsQuery(condition.name, termValues);
+            }
+        }
+        return plan;
+    }
+}
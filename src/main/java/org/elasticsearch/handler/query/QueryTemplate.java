@@ -0,0 +1,74 @@
+package org.elasticsearch.handler.query;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 预先生成的查询语句, 值的位置为占位符, 每次请求只替换值, 不再构建SearchSourceBuilder或解析json
+ *
+ * 占位符为json字符串 "__tpl_slot_N__", N为值的下标; 字符串值替换为转义后的json字符串, 数值原样输出。
+ */
+public class QueryTemplate {
+
+    private static final String SLOT_PREFIX = "__tpl_slot_";
+    private static final Pattern SLOT = Pattern.compile("\"" + SLOT_PREFIX + "(\\d+)__\"");
+
+    private final String[] segments;
+    private final int[] slots;
+
+    private QueryTemplate(String[] segments, int[] slots) {
+        this.segments = segments;
+        this.slots = slots;
+    }
+
+    /**
+     * 下标为index的占位符, 生成模板前用作查询条件的值
+     */
+    public static String slot(int index) {
+        return SLOT_PREFIX + index + "__";
+    }
+
+    public static QueryTemplate parse(String json) {
+        List<String> segments = Lists.newArrayList();
+        List<Integer> slots = Lists.newArrayList();
+        Matcher matcher = SLOT.matcher(json);
+        int last = 0;
+        while (matcher.find()) {
+            segments.add(json.substring(last, matcher.start()));
+            slots.add(Integer.parseInt(matcher.group(1)));
+            last = matcher.end();
+        }
+        segments.add(json.substring(last));
+        return new QueryTemplate(segments.toArray(new String[0]), slots.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * @param values 按占位符下标对应的值, String或Number
+     */
+    public String render(List<?> values) {
+        StringBuilder sb = new StringBuilder(segments[0].length() * 2);
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(segments[i]);
+            Object value = values.get(slots[i]);
+            if (value instanceof Number) {
+                sb.append(value);
+            } else {
+                sb.append(JSON.toJSONString(value != null ? value.toString() : ""));
+            }
+        }
+        return sb.append(segments[slots.length]).toString();
+    }
+
+    public int getSlotCount() {
+        return slots.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.join("?", segments);
+    }
+}
@@ -0,0 +1,62 @@
+package org.elasticsearch.handler.query;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 按查询结构缓存QueryTemplate, 超过条数时按最近最少使用淘汰
+ */
+public class QueryTemplateCache {
+
+    private final Cache<String, QueryTemplate> cache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong compileCount = new AtomicLong();
+
+    public QueryTemplateCache(long maxEntries) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    }
+
+    /**
+     * 未命中时调用compiler生成, 生成失败的异常直接抛出且不缓存
+     */
+    public QueryTemplate get(String shape, Supplier<QueryTemplate> compiler) {
+        QueryTemplate template = cache.getIfPresent(shape);
+        if (template != null) {
+            hitCount.incrementAndGet();
+            return template;
+        }
+        compileCount.incrementAndGet();
+        template = compiler.get();
+        cache.put(shape, template);
+        return template;
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getCompileCount() {
+        return compileCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryTemplateCache{" +
+                "size=" + cache.size() +
+                ", hitCount=" + hitCount +
+                ", compileCount=" + compileCount +
+                '}';
+    }
+}
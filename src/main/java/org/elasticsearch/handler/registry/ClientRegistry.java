@@ -0,0 +1,147 @@
+package org.elasticsearch.handler.registry;
+
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.DocumentHandler;
+import org.elasticsearch.handler.IndexHandler;
+import org.elasticsearch.handler.SearchHandler;
+import org.elasticsearch.handler.metrics.Operation;
+import org.elasticsearch.handler.prop.SearchProperty;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按名称管理多个集群(或同一集群的不同节点组)的客户端
+ *
+ * 每个客户端有独立的连接池及配置, Search/Document/IndexHandler按客户端各创建一个实例,
+ * 通过RoutingPolicy将读写请求分到不同客户端, 如bulk写入主集群、查询走副本集群。
+ */
+public class ClientRegistry {
+
+    public static final String DEFAULT_CLIENT = "default";
+
+    private volatile static ClientRegistry clientRegistry;
+
+    private final ConcurrentMap<String, Entry> clients = new ConcurrentHashMap<>();
+
+    private volatile RoutingPolicy routingPolicy = RoutingPolicy.single(DEFAULT_CLIENT);
+
+    public ClientRegistry() {}
+
+    public static ClientRegistry getInstance() {
+        if (clientRegistry == null) {
+            synchronized (ClientRegistry.class) {
+                if (clientRegistry == null) {
+                    clientRegistry = new ClientRegistry();
+                }
+            }
+        }
+        return clientRegistry;
+    }
+
+    private static class Entry {
+        final ClientHandler clientHandler;
+        final SearchHandler searchHandler;
+        final DocumentHandler documentHandler;
+        final IndexHandler indexHandler;
+
+        Entry(ClientHandler clientHandler) {
+            this.clientHandler = clientHandler;
+            this.searchHandler = new SearchHandler(clientHandler);
+            this.documentHandler = new DocumentHandler(clientHandler);
+            this.indexHandler = new IndexHandler(clientHandler);
+        }
+    }
+
+    public ClientHandler register(String name, SearchProperty searchProperty) {
+        return register(name, new ClientHandler(searchProperty));
+    }
+
+    /**
+     * 注册已创建的客户端, 如ClientHandler.getInstance()
+     */
+    public ClientHandler register(String name, ClientHandler clientHandler) {
+        if (clients.putIfAbsent(name, new Entry(clientHandler)) != null) {
+            throw new RuntimeException("client [" + name + "] already registered");
+        }
+        return clientHandler;
+    }
+
+    /**
+     * 移除并关闭客户端
+     */
+    public void remove(String name) {
+        Entry entry = clients.remove(name);
+        if (entry != null) {
+            entry.clientHandler.closeJestClient();
+        }
+    }
+
+    public void close() {
+        for (String name : clients.keySet()) {
+            remove(name);
+        }
+    }
+
+    public Set<String> getClientNames() {
+        return clients.keySet();
+    }
+
+    public ClientHandler getClientHandler(String name) {
+        return getEntry(name).clientHandler;
+    }
+
+    public SearchHandler getSearchHandler(String name) {
+        return getEntry(name).searchHandler;
+    }
+
+    public DocumentHandler getDocumentHandler(String name) {
+        return getEntry(name).documentHandler;
+    }
+
+    public IndexHandler getIndexHandler(String name) {
+        return getEntry(name).indexHandler;
+    }
+
+    /**
+     * 按路由策略返回读请求使用的SearchHandler
+     */
+    public SearchHandler searchHandler(String indexName) {
+        return getSearchHandler(routingPolicy.route(Operation.SEARCH, indexName));
+    }
+
+    /**
+     * 按路由策略返回写请求使用的DocumentHandler
+     */
+    public DocumentHandler documentHandler(String indexName) {
+        return getDocumentHandler(routingPolicy.route(Operation.BULK, indexName));
+    }
+
+    public IndexHandler indexHandler(String indexName) {
+        return getIndexHandler(routingPolicy.route(Operation.INDEX_ADMIN, indexName));
+    }
+
+    /**
+     * 按路由策略返回客户端, 直接执行jest请求时使用
+     */
+    public ClientHandler clientHandler(Operation operation, String indexName) {
+        return getClientHandler(routingPolicy.route(operation, indexName));
+    }
+
+    public void setRoutingPolicy(RoutingPolicy routingPolicy) {
+        this.routingPolicy = routingPolicy;
+    }
+
+    public RoutingPolicy getRoutingPolicy() {
+        return routingPolicy;
+    }
+
+    private Entry getEntry(String name) {
+        Entry entry = clients.get(name);
+        if (entry == null) {
+            throw new RuntimeException("client [" + name + "] not registered");
+        }
+        return entry;
+    }
+}
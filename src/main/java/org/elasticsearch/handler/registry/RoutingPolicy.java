@@ -0,0 +1,29 @@
+package org.elasticsearch.handler.registry;
+
+import org.elasticsearch.handler.metrics.Operation;
+
+/**
+ * 按操作类型及索引选择客户端
+ */
+public interface RoutingPolicy {
+
+    /**
+     * @param indexName 目标索引, 跨索引或未指定时为null
+     * @return ClientRegistry中注册的客户端名称
+     */
+    String route(Operation operation, String indexName);
+
+    /**
+     * 所有请求使用同一客户端
+     */
+    static RoutingPolicy single(String clientName) {
+        return (operation, indexName) -> clientName;
+    }
+
+    /**
+     * 读请求(search、get、scroll)使用readClient, 写请求及索引管理使用writeClient
+     */
+    static RoutingPolicy readWrite(String readClient, String writeClient) {
+        return (operation, indexName) -> operation.isRead() ? readClient : writeClient;
+    }
+}
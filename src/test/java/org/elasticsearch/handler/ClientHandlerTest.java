@@ -0,0 +1,342 @@
+package org.elasticsearch.handler;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import io.searchbox.action.GenericResultAbstractAction;
+import com.alibaba.fastjson.JSONObject;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.ClearScroll;
+import io.searchbox.core.Get;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchScroll;
+import org.elasticsearch.handler.constants.SearchConstants;
+import org.elasticsearch.handler.fake.FakeElasticsearchServer;
+import org.elasticsearch.handler.limit.RequestRejectedException;
+import org.elasticsearch.handler.metrics.MetricsRegistry;
+import org.elasticsearch.handler.metrics.Operation;
+import org.elasticsearch.handler.prop.HedgeProperty;
+import org.elasticsearch.handler.prop.LimitProperty;
+import org.elasticsearch.handler.prop.SearchProperty;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ClientHandlerTest {
+
+    private static class RecordingRegistry implements MetricsRegistry {
+        final Map<Operation, AtomicLong> bytesSent = new ConcurrentHashMap<>();
+        final Map<Operation, AtomicLong> bytesReceived = new ConcurrentHashMap<>();
+        final Map<Operation, IntSupplier> inFlight = Maps.newEnumMap(Operation.class);
+
+        @Override
+        public void incrementBytesSent(Operation operation, long bytes) {
+            bytesSent.computeIfAbsent(operation, k -> new AtomicLong()).addAndGet(bytes);
+        }
+
+        @Override
+        public void incrementBytesReceived(Operation operation, long bytes) {
+            bytesReceived.computeIfAbsent(operation, k -> new AtomicLong()).addAndGet(bytes);
+        }
+
+        @Override
+        public void registerInFlightGauge(Operation operation, IntSupplier count) {
+            inFlight.put(operation, count);
+        }
+
+        long sent(Operation operation) {
+            AtomicLong bytes = bytesSent.get(operation);
+            return bytes != null ? bytes.get() : 0;
+        }
+
+        long received(Operation operation) {
+            AtomicLong bytes = bytesReceived.get(operation);
+            return bytes != null ? bytes.get() : 0;
+        }
+    }
+
+    private FakeElasticsearchServer server;
+    private ClientHandler clientHandler;
+    private RecordingRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeElasticsearchServer(0).start();
+        clientHandler = new ClientHandler(server.searchProperty());
+        registry = new RecordingRegistry();
+        clientHandler.setMetricsRegistry(registry);
+    }
+
+    @After
+    public void tearDown() {
+        clientHandler.closeJestClient();
+        server.close();
+    }
+
+    @Test
+    public void bytesSentAreUtf8BytesOfTheBody() {
+        new DocumentHandler(clientHandler).updateDoc("goods", "item", "1", Collections.singletonMap("title", "中文标题"));
+
+        String body = server.getRequests("_bulk").get(0).getBody();
+        assertEquals(body.getBytes(StandardCharsets.UTF_8).length, registry.sent(Operation.UPDATE));
+        assertEquals(0, registry.sent(Operation.BULK));
+    }
+
+    @Test
+    public void bytesReceivedAreUtf8BytesOfTheResponse() throws Exception {
+        String json = clientHandler.execute(new Get.Builder("goods", "中文").type("item").build()).getJsonString();
+        String async = clientHandler.executeAsync(new Get.Builder("goods", "中文").type("item").build()).join().getJsonString();
+
+        assertTrue(json.contains("中文"));
+        assertEquals(json, async);
+        assertEquals(2L * json.getBytes(StandardCharsets.UTF_8).length, registry.received(Operation.GET));
+    }
+
+    @Test
+    public void failedSerializationDoesNotLeakInFlight() throws Exception {
+        GenericResultAbstractAction action = new GenericResultAbstractAction() {
+            @Override
+            public String getURI() {
+                return "goods/item/_test";
+            }
+
+            @Override
+            public String getRestMethodName() {
+                return "POST";
+            }
+
+            @Override
+            public String getData(Gson gson) {
+                throw new IllegalStateException("serialize failed");
+            }
+        };
+
+        try {
+            clientHandler.execute(action);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(0, registry.inFlight.get(Operation.OTHER).getAsInt());
+        }
+        try {
+            clientHandler.executeAsync(action).join();
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals(0, registry.inFlight.get(Operation.OTHER).getAsInt());
+        }
+    }
+
+    private static LimitProperty limit(int limit) {
+        LimitProperty property = new LimitProperty();
+        property.setInitialLimit(limit);
+        property.setMinLimit(limit);
+        property.setMaxLimit(limit);
+        property.setBreakerEnabled(false);
+        return property;
+    }
+
+    @Test
+    public void clearScrollBypassesReadGuard() throws Exception {
+        clientHandler.setReadLimitProperty(limit(1));
+        clientHandler.getReadGuard().acquire();
+
+        JestResult result = clientHandler.execute(new ClearScroll.Builder().addScrollId("scroll").build());
+
+        assertTrue(result.isSucceeded());
+        try {
+            clientHandler.execute(new Search.Builder("{}").addIndex("goods").build());
+            fail();
+        } catch (RequestRejectedException e) {
+            assertEquals(1, server.getRequests().size());
+        }
+    }
+
+    @Test
+    public void rejectedGetIsNotTreatedAsMissing() throws Exception {
+        SearchHandler searchHandler = new SearchHandler(clientHandler);
+        clientHandler.setReadLimitProperty(limit(1));
+        clientHandler.getReadGuard().acquire();
+
+        try {
+            searchHandler.get("goods", "item", "1");
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof RequestRejectedException);
+        }
+        try {
+            searchHandler.get("goods", "item", Lists.newArrayList("1", "2"));
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof RequestRejectedException);
+        }
+        try {
+            searchHandler.getAsync("goods", "item", "1").join();
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause().getCause() instanceof RequestRejectedException);
+        }
+    }
+
+    @Test
+    public void hedgeRequiresGuardPermit() throws Exception {
+        FakeElasticsearchServer other = new FakeElasticsearchServer(0).start();
+        SearchProperty property = server.searchProperty();
+        property.setHosts(Lists.newArrayList(server.getHost(), other.getHost()));
+        ClientHandler hedged = new ClientHandler(property);
+        try {
+            HedgeProperty hedge = new HedgeProperty();
+            hedge.setEnabled(true);
+            hedge.setMinSamples(10);
+            hedge.setSampleSize(10);
+            hedge.setMinDelay(5);
+            hedge.setMaxDelay(20);
+            hedge.setMaxHedgeRatio(1);
+            hedged.setHedgeProperty(hedge);
+            SearchHandler searchHandler = new SearchHandler(hedged);
+            for (int i = 0; i < 20; i++) {
+                searchHandler.get("goods", "item", "1");
+            }
+            server.setLatency(200);
+            other.setLatency(200);
+
+            //唯一的许可被原请求占用, 不发对冲请求
+            hedged.setReadLimitProperty(limit(1));
+            long hedges = hedged.getHedgePolicy().getHedgeCount();
+            searchHandler.get("goods", "item", "1");
+            assertEquals(hedges, hedged.getHedgePolicy().getHedgeCount());
+            assertEquals(0, hedged.getReadGuard().getLimiter().getInFlight());
+
+            hedged.setReadLimitProperty(limit(2));
+            searchHandler.get("goods", "item", "1");
+            assertEquals(hedges + 1, hedged.getHedgePolicy().getHedgeCount());
+            assertEquals(0, hedged.getReadGuard().getLimiter().getInFlight());
+        } finally {
+            hedged.closeJestClient();
+            other.close();
+        }
+    }
+
+    @Test
+    public void gzipResponsesAreDecodedOnSyncAndAsyncPaths() {
+        server.setCompression(true);
+        SearchHandler searchHandler = new SearchHandler(clientHandler);
+
+        JSONObject sync = searchHandler.search(SearchHandlerTest.request());
+        JSONObject async = searchHandler.searchAsync(SearchHandlerTest.request()).join();
+
+        assertEquals(5, sync.getJSONArray(SearchConstants.RESULT_DATA_KEY).size());
+        assertEquals(sync.getJSONArray(SearchConstants.RESULT_DATA_KEY), async.getJSONArray(SearchConstants.RESULT_DATA_KEY));
+        for (FakeElasticsearchServer.Request request : server.getRequests("_search")) {
+            assertTrue(request.getHeader("Accept-Encoding").contains("gzip"));
+        }
+    }
+
+    @Test
+    public void requestBodiesAreCompressedWhenEnabled() {
+        SearchProperty property = server.searchProperty();
+        property.setRequestCompression(true);
+        ClientHandler compressed = new ClientHandler(property);
+        try {
+            new DocumentHandler(compressed).saveDoc("goods", "item", "1", Collections.singletonMap("title", "中文标题"));
+
+            FakeElasticsearchServer.Request request = server.getRequests("/goods/item/1").get(0);
+            assertEquals("gzip", request.getHeader("Content-Encoding"));
+            assertTrue(request.getBody().contains("中文标题"));
+        } finally {
+            compressed.closeJestClient();
+        }
+    }
+
+    @Test
+    public void jestClientIsCreatedOnce() {
+        List<CompletableFuture<JestClient>> clients = Lists.newArrayList();
+        for (int i = 0; i < 8; i++) {
+            clients.add(CompletableFuture.supplyAsync(clientHandler::getJestClient));
+        }
+        for (CompletableFuture<JestClient> client : clients) {
+            assertTrue(client.join() == clientHandler.getJestClient());
+        }
+    }
+
+    @Test
+    public void hedgeReturnsFasterResponse() throws Exception {
+        FakeElasticsearchServer other = new FakeElasticsearchServer(0).start();
+        SearchProperty property = server.searchProperty();
+        property.setHosts(Lists.newArrayList(server.getHost(), other.getHost()));
+        ClientHandler hedged = new ClientHandler(property);
+        try {
+            HedgeProperty hedge = new HedgeProperty();
+            hedge.setEnabled(true);
+            hedge.setMinSamples(10);
+            hedge.setSampleSize(10);
+            hedge.setMinDelay(5);
+            hedge.setMaxDelay(20);
+            hedge.setMaxHedgeRatio(1);
+            hedged.setHedgeProperty(hedge);
+            SearchHandler searchHandler = new SearchHandler(hedged);
+            for (int i = 0; i < 20; i++) {
+                searchHandler.get("goods", "item", "1");
+            }
+
+            //一个节点变慢, 原请求发往该节点时由对冲请求返回
+            server.setLatency(2000);
+            for (int i = 0; i < 5; i++) {
+                long begin = System.nanoTime();
+                assertEquals("elasticsearch handler goods " + Math.abs("1".hashCode()),
+                        searchHandler.get("goods", "item", "1").getString("title"));
+                assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 1000);
+            }
+        } finally {
+            hedged.closeJestClient();
+            other.close();
+        }
+    }
+
+    @Test
+    public void scrollIsNeverHedged() throws Exception {
+        FakeElasticsearchServer other = new FakeElasticsearchServer(0).start();
+        SearchProperty property = server.searchProperty();
+        property.setHosts(Lists.newArrayList(server.getHost(), other.getHost()));
+        ClientHandler hedged = new ClientHandler(property);
+        try {
+            HedgeProperty hedge = new HedgeProperty();
+            hedge.setEnabled(true);
+            hedge.setMinSamples(10);
+            hedge.setSampleSize(10);
+            hedge.setMinDelay(5);
+            hedge.setMaxDelay(20);
+            hedge.setMaxHedgeRatio(1);
+            hedged.setHedgeProperty(hedge);
+            SearchHandler searchHandler = new SearchHandler(hedged);
+            for (int i = 0; i < 20; i++) {
+                searchHandler.search(new SearchScroll.Builder("0-0-5", "1m").build());
+            }
+            server.setLatency(100);
+            other.setLatency(100);
+
+            //scroll每次请求推进游标, 重复发送会跳过一页
+            for (int i = 0; i < 3; i++) {
+                assertTrue(searchHandler.search(new SearchScroll.Builder("0-0-5", "1m").build()).isSucceeded());
+            }
+            assertEquals(23, server.getRequests("_search/scroll").size() + other.getRequests("_search/scroll").size());
+            assertEquals(0, hedged.getHedgePolicy().getHedgeCount());
+        } finally {
+            hedged.closeJestClient();
+            other.close();
+        }
+    }
+}
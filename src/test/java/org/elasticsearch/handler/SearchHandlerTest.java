@@ -0,0 +1,446 @@
+package org.elasticsearch.handler;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.elasticsearch.handler.codec.StreamingHitParser;
+import org.elasticsearch.handler.constants.SearchConstants;
+import org.elasticsearch.handler.dto.SearchField;
+import org.elasticsearch.handler.dto.SearchOrder;
+import org.elasticsearch.handler.dto.SearchPage;
+import org.elasticsearch.handler.dto.SearchRequest;
+import org.elasticsearch.handler.enums.QueryType;
+import org.elasticsearch.handler.fake.FakeElasticsearchServer;
+import org.elasticsearch.handler.prop.MultiSearchProperty;
+import org.elasticsearch.handler.query.QueryTemplateCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SearchHandlerTest {
+
+    private FakeElasticsearchServer server;
+    private ClientHandler clientHandler;
+    private SearchHandler searchHandler;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeElasticsearchServer(0).start();
+        clientHandler = new ClientHandler(server.searchProperty());
+        searchHandler = new SearchHandler(clientHandler);
+    }
+
+    @After
+    public void tearDown() {
+        clientHandler.closeJestClient();
+        server.close();
+    }
+
+    public static SearchRequest request() {
+        SearchRequest request = new SearchRequest();
+        request.setOneIndexName("goods");
+        request.setOneIndexType("item");
+        request.setMust(Lists.newArrayList(new SearchField("title", "handler", QueryType.match)));
+        SearchPage page = new SearchPage();
+        page.setEnable(true);
+        page.setPageNum(1);
+        page.setPageSize(5);
+        request.setPage(page);
+        return request;
+    }
+
+    @Test
+    public void searchReturnsPageAndData() {
+        JSONObject result = searchHandler.search(request());
+
+        assertEquals(5, result.getJSONArray(SearchConstants.RESULT_DATA_KEY).size());
+        assertEquals(50, ((SearchPage) result.get(SearchConstants.RESULT_PAGE_KEY)).getTotalNum().intValue());
+        assertEquals(1, server.getRequests("/goods/item/_search").size());
+        assertTrue(server.getRequests().get(0).getBody().contains("\"size\""));
+    }
+
+    @Test
+    public void getReturnsSourceOrEmpty() {
+        server.setMissingIds(Sets.newHashSet("2"));
+
+        assertEquals("elasticsearch handler goods " + Math.abs("1".hashCode()),
+                searchHandler.get("goods", "item", "1").getString("title"));
+        assertTrue(searchHandler.get("goods", "item", "2").isEmpty());
+    }
+
+    @Test
+    public void multiGetSkipsMissingDocuments() {
+        server.setMissingIds(Sets.newHashSet("b"));
+
+        List<JSONObject> docs = searchHandler.get("goods", "item", Lists.newArrayList("a", "b", "c"));
+
+        assertEquals(2, docs.size());
+        assertEquals(1, server.getRequests("_mget").size());
+    }
+
+    @Test
+    public void iteratorKeepsRawDslSortAndAppendsTiebreaker() {
+        SearchRequest request = request();
+        request.setQuery("{\"query\":{\"match_all\":{}},\"sort\":[{\"price\":\"desc\"}]}");
+        request.setIncludes(Lists.newArrayList("title"));
+
+        int count = 0;
+        for (Iterator<JSONObject> iterator = searchHandler.iterator(request); iterator.hasNext(); iterator.next()) {
+            count++;
+        }
+
+        assertEquals(5, count);
+        List<FakeElasticsearchServer.Request> requests = server.getRequests("_search");
+        assertEquals(2, requests.size());
+        JSONObject first = JSON.parseObject(requests.get(0).getBody());
+        assertEquals(JSON.parseArray("[{\"price\":\"desc\"},{\"_uid\":\"asc\"}]"), first.getJSONArray("sort"));
+        assertEquals(JSON.parseArray("[\"title\"]"), first.getJSONObject("_source").getJSONArray("includes"));
+        assertEquals(JSON.parseArray("[4]"), JSON.parseObject(requests.get(1).getBody()).getJSONArray("search_after"));
+    }
+
+    @Test
+    public void iteratorKeepsExistingTiebreaker() {
+        SearchRequest request = request();
+        request.setQuery("{\"query\":{\"match_all\":{}},\"sort\":\"_uid\"}");
+
+        searchHandler.iterator(request).hasNext();
+
+        JSONArray sort = JSON.parseObject(server.getRequests("_search").get(0).getBody()).getJSONArray("sort");
+        assertEquals(JSON.parseArray("[\"_uid\"]"), sort);
+    }
+
+    @Test
+    public void singleFlightIsOptIn() throws Exception {
+        assertNull(searchHandler.getSingleFlight());
+
+        searchHandler.setSingleFlightEnabled(true);
+        server.setLatency(300);
+        CompletableFuture<JSONObject> first = CompletableFuture.supplyAsync(() -> searchHandler.search(request()));
+        while (searchHandler.getSingleFlight().getInFlight() == 0) {
+            Thread.sleep(1);
+        }
+        JSONObject second = searchHandler.search(request());
+
+        assertEquals(first.get().getJSONArray(SearchConstants.RESULT_DATA_KEY), second.getJSONArray(SearchConstants.RESULT_DATA_KEY));
+        assertEquals(1, server.getRequests("_search").size());
+        assertEquals(1, searchHandler.getSingleFlight().getSharedCount());
+    }
+
+    private static SearchRequest templateRequest(String keyword, String color, String other, int pageNum) {
+        SearchRequest request = request();
+        request.getPage().setPageNum(pageNum);
+        request.setMust(Lists.newArrayList(new SearchField("title", keyword, QueryType.match),
+                new SearchField("status", "ON", QueryType.term), new SearchField("price", "10#" + pageNum, QueryType.range)));
+        request.setShould(Lists.newArrayList(new SearchField("color", color, QueryType.term),
+                new SearchField("color", other, QueryType.term), new SearchField("code", "A.*", QueryType.regexp)));
+        request.setMustNot(Lists.newArrayList(new SearchField("title", "\"quoted\"", QueryType.match_phrase)));
+        request.setFilter(Lists.newArrayList(new SearchField("type", "goods", QueryType.term)));
+        request.setOneOrder(new SearchOrder("price", "desc"));
+        SearchRequest.Highlight highlight = request.new Highlight();
+        highlight.setEnable(true);
+        highlight.setHighlightFieldName("title");
+        highlight.setPreTag("<em>");
+        highlight.setPostTag("</em>");
+        request.setHighlight(highlight);
+        request.setIncludes(Lists.newArrayList("title", "price"));
+        return request;
+    }
+
+    private JSONObject built(SearchHandler handler, SearchRequest request) {
+        return JSON.parseObject(handler.buildSearch(request).getData(null));
+    }
+
+    /**
+     * 模板生成的语句与直接构建的一致, 包括重复条件被去除及同一字段的term合并为terms
+     */
+    @Test
+    public void templateOutputMatchesBuiltQuery() {
+        assertNull(searchHandler.getQueryTemplateCache());
+        SearchHandler templated = new SearchHandler(clientHandler);
+        templated.setQueryTemplateCache(new QueryTemplateCache(100));
+
+        List<Function<Integer, SearchRequest>> requests = Lists.newArrayList(
+                i -> templateRequest("phone " + i, "red", "blue", i),
+                i -> templateRequest("phone " + i, "red", "red", i),
+                i -> templateRequest("a\\b\n" + i, "Red", "blue", i + 1));
+        for (Function<Integer, SearchRequest> request : requests) {
+            for (int i = 1; i <= 3; i++) {
+                assertEquals(built(searchHandler, request.apply(i)), built(templated, request.apply(i)));
+            }
+        }
+
+        //有重复条件的请求不使用模板
+        assertEquals(1, templated.getQueryTemplateCache().getCompileCount());
+        assertEquals(5, templated.getQueryTemplateCache().getHitCount());
+
+        searchHandler.setQueryOptimize(false);
+        templated.setQueryOptimize(false);
+        assertEquals(built(searchHandler, requests.get(1).apply(1)), built(templated, requests.get(1).apply(1)));
+    }
+
+    @Test
+    public void rawQueryIsNotTemplated() {
+        searchHandler.setQueryTemplateCache(new QueryTemplateCache(100));
+        SearchRequest request = request();
+        request.setQuery("{\"query\":{\"term\":{\"id\":1}}}");
+
+        searchHandler.buildSearch(request);
+
+        assertEquals(0, searchHandler.getQueryTemplateCache().size());
+    }
+
+    /**
+     * 第i个请求每页i+1条, 按返回条数判断结果顺序
+     */
+    private static List<SearchRequest> sizedRequests(int count) {
+        List<SearchRequest> requests = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            SearchRequest request = request();
+            request.getPage().setPageSize(i + 1);
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    private static MultiSearchProperty multiSearchProperty(int maxRequestsPerChunk, int maxBytesPerChunk, int maxConcurrency) {
+        MultiSearchProperty property = new MultiSearchProperty();
+        property.setMaxRequestsPerChunk(maxRequestsPerChunk);
+        property.setMaxBytesPerChunk(maxBytesPerChunk);
+        property.setMaxConcurrency(maxConcurrency);
+        return property;
+    }
+
+    @Test
+    public void searchEachKeepsRequestOrder() {
+        searchHandler.setMultiSearchProperty(multiSearchProperty(2, 512 * 1024, 3));
+        server.setLatencyJitter(30);
+        Map<Integer, JSONObject> callbacks = new ConcurrentHashMap<>();
+
+        List<JSONObject> results = searchHandler.searchEachAsync(sizedRequests(7), callbacks::put).join();
+
+        assertEquals(7, results.size());
+        assertEquals(7, callbacks.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i + 1, results.get(i).getJSONArray(SearchConstants.RESULT_DATA_KEY).size());
+            assertTrue(results.get(i) == callbacks.get(i));
+        }
+        //拆为[0,2) [2,4) [4,6) [6,7), 只有一个搜索的段直接发送_search
+        assertEquals(3, server.getRequests("_msearch").size());
+        assertEquals(1, server.getRequests("_search").size());
+    }
+
+    @Test
+    public void oversizedSearchIsSentAlone() {
+        searchHandler.setMultiSearchProperty(multiSearchProperty(20, 1, 2));
+
+        List<JSONObject> results = searchHandler.searchEachAsync(sizedRequests(3), null).join();
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i + 1, results.get(i).getJSONArray(SearchConstants.RESULT_DATA_KEY).size());
+        }
+        assertEquals(0, server.getRequests("_msearch").size());
+        assertEquals(3, server.getRequests("_search").size());
+    }
+
+    @Test
+    public void failedChunkFailsSearchEach() {
+        server.setErrorRate(1);
+        searchHandler.setMultiSearchProperty(multiSearchProperty(2, 512 * 1024, 1));
+
+        try {
+            searchHandler.searchEachAsync(sizedRequests(5), null).join();
+            fail();
+        } catch (CompletionException e) {
+            //第一段失败后不再发送后续请求
+            assertEquals(1, server.getRequests().size());
+        }
+    }
+
+    private static SearchRequest fetchRequest() {
+        SearchRequest request = request();
+        request.setIncludes(Lists.newArrayList("title", "price"));
+        request.setExcludes(Lists.newArrayList("content"));
+        request.setDocValueFields(Lists.newArrayList("stock"));
+        request.setStoredFields(Lists.newArrayList("_source", "tags"));
+        return request;
+    }
+
+    private static void assertFetchOptions(JSONObject body) {
+        JSONObject source = body.getJSONObject("_source");
+        assertEquals(JSON.parseArray("[\"title\",\"price\"]"), source.getJSONArray("includes"));
+        assertEquals(JSON.parseArray("[\"content\"]"), source.getJSONArray("excludes"));
+        assertEquals(JSON.parseArray("[\"stock\"]"), body.getJSONArray("docvalue_fields"));
+        assertEquals(JSON.parseArray("[\"_source\",\"tags\"]"), body.getJSONArray("stored_fields"));
+    }
+
+    private static String filterPath(FakeElasticsearchServer.Request request) throws UnsupportedEncodingException {
+        String uri = URLDecoder.decode(request.getUri(), "UTF-8");
+        int index = uri.indexOf("filter_path=");
+        return index < 0 ? null : uri.substring(index + "filter_path=".length()).split("&")[0];
+    }
+
+    @Test
+    public void fetchOptionsAreAddedToBuiltAndRawQueries() {
+        searchHandler.search(fetchRequest());
+        SearchRequest raw = fetchRequest();
+        raw.setQuery("{\"query\":{\"match_all\":{}}}");
+        searchHandler.search(raw);
+
+        List<FakeElasticsearchServer.Request> requests = server.getRequests("_search");
+        assertFetchOptions(JSON.parseObject(requests.get(0).getBody()));
+        JSONObject rawBody = JSON.parseObject(requests.get(1).getBody());
+        assertFetchOptions(rawBody);
+        assertEquals(5, rawBody.getIntValue("size"));
+    }
+
+    public static class Stock {
+        public Long id;
+        public Integer stock;
+    }
+
+    private static SearchRequest docValueRequest() {
+        SearchRequest request = request();
+        request.setQuery("{\"query\":{\"match_all\":{}},\"_source\":false}");
+        request.setDocValueFields(Lists.newArrayList("stock"));
+        return request;
+    }
+
+    private static void assertDocValues(List<JSONObject> docs) {
+        assertEquals(5, docs.size());
+        for (JSONObject doc : docs) {
+            //_source被关闭, 只有docvalue_fields, 单值取数组中的值
+            assertEquals(1, doc.size());
+            assertTrue(doc.get("stock") instanceof Number);
+        }
+    }
+
+    @Test
+    public void docValueFieldsAreMergedOnEveryReadPath() {
+        List<JSONObject> streamed = Lists.newArrayList();
+        searchHandler.searchEach(docValueRequest(), streamed::add);
+        assertDocValues(streamed);
+
+        List<JSONObject> iterated = Lists.newArrayList();
+        searchHandler.iterator(docValueRequest()).forEachRemaining(iterated::add);
+        assertDocValues(iterated);
+
+        List<JSONObject> exported = Lists.newArrayList();
+        searchHandler.export(docValueRequest(), 1, exported::addAll);
+        assertDocValues(exported);
+    }
+
+    @Test
+    public void docValueFieldsAreMergedBeforeBinding() {
+        SearchRequest request = request();
+        request.setDocValueFields(Lists.newArrayList("stock"));
+        List<Stock> docs = Lists.newArrayList();
+        searchHandler.searchEach(request, Stock.class, docs::add);
+
+        assertEquals(5, docs.size());
+        for (Stock doc : docs) {
+            assertEquals(doc.id % 100, doc.stock.longValue());
+        }
+    }
+
+    @Test
+    public void filterPathIsSentAsParameter() throws Exception {
+        SearchRequest request = request();
+        request.setFilterPath(Lists.newArrayList("hits.total", "hits.hits._source"));
+
+        searchHandler.search(request);
+
+        assertEquals("hits.total,hits.hits._source", filterPath(server.getRequests("_search").get(0)));
+    }
+
+    @Test
+    public void multiSearchFilterPathIsPrefixedOnlyWhenShared() throws Exception {
+        List<SearchRequest> shared = Lists.newArrayList(request(), request());
+        for (SearchRequest request : shared) {
+            request.setFilterPath(Lists.newArrayList("hits.hits._source"));
+        }
+        List<SearchRequest> mixed = Lists.newArrayList(request(), request());
+        mixed.get(0).setFilterPath(Lists.newArrayList("hits.hits._source"));
+
+        searchHandler.search(shared);
+        searchHandler.search(mixed);
+
+        List<FakeElasticsearchServer.Request> requests = server.getRequests("_msearch");
+        assertEquals("responses.hits.hits._source", filterPath(requests.get(0)));
+        assertNull(filterPath(requests.get(1)));
+    }
+
+    @Test
+    public void multiGetRequestsOnlyIncludedSource() {
+        searchHandler.get("goods", "item", Lists.newArrayList("1", "2"), Lists.newArrayList("title"), null);
+
+        JSONArray docs = JSON.parseObject(server.getRequests("_mget").get(0).getBody()).getJSONArray("docs");
+        assertEquals(2, docs.size());
+        for (int i = 0; i < docs.size(); i++) {
+            JSONObject source = docs.getJSONObject(i).getJSONObject("_source");
+            assertEquals(JSON.parseArray("[\"title\"]"), source.getJSONArray("includes"));
+            assertNull(source.get("excludes"));
+        }
+    }
+
+    @Test
+    public void searchEachStreamsEverySource() {
+        List<JSONObject> docs = Lists.newArrayList();
+
+        StreamingHitParser.Summary summary = searchHandler.searchEach(request(), docs::add);
+
+        assertEquals(5, summary.getCount());
+        assertEquals(50, summary.getTotal());
+        assertEquals(12, summary.getTook());
+        assertEquals(searchHandler.search(request()).getJSONArray(SearchConstants.RESULT_DATA_KEY), docs);
+    }
+
+    @Test
+    public void searchEachHandlesEmptyHitsAndMissingSource() {
+        server.setHits(0);
+        StreamingHitParser.Summary empty = searchHandler.searchEach(request(), doc -> fail());
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getTotal());
+
+        server.setHits(10);
+        SearchRequest request = request();
+        request.setQuery("{\"query\":{\"match_all\":{}},\"_source\":false}");
+        List<JSONObject> docs = Lists.newArrayList();
+        StreamingHitParser.Summary summary = searchHandler.searchEach(request, docs::add);
+
+        assertEquals(5, summary.getCount());
+        for (JSONObject doc : docs) {
+            assertTrue(doc.isEmpty());
+        }
+    }
+
+    @Test
+    public void getEachSkipsMissingDocuments() {
+        server.setMissingIds(Sets.newHashSet("b"));
+        List<JSONObject> docs = Lists.newArrayList();
+
+        StreamingHitParser.Summary summary = searchHandler.getEach("goods", "item", Lists.newArrayList("a", "b", "c"),
+                docs::add);
+
+        assertEquals(3, summary.getTotal());
+        assertEquals(2, summary.getCount());
+        assertEquals(searchHandler.get("goods", "item", Lists.newArrayList("a", "b", "c")), docs);
+        assertEquals(0, searchHandler.getEach("goods", "item", Lists.newArrayList(), docs::add).getCount());
+    }
+}
@@ -0,0 +1,147 @@
+package org.elasticsearch.handler.batch;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonObject;
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.SearchHandler;
+import org.elasticsearch.handler.fake.FakeElasticsearchServer;
+import org.elasticsearch.handler.prop.GetBatchProperty;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GetBatcherTest {
+
+    private FakeElasticsearchServer server;
+    private ClientHandler clientHandler;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeElasticsearchServer(0).start();
+        clientHandler = new ClientHandler(server.searchProperty());
+    }
+
+    @After
+    public void tearDown() {
+        clientHandler.closeJestClient();
+        server.close();
+    }
+
+    private GetBatcher batcher(long maxDelayMicros, int maxBatchSize) {
+        GetBatchProperty property = new GetBatchProperty();
+        property.setMaxDelayMicros(maxDelayMicros);
+        property.setMaxBatchSize(maxBatchSize);
+        return new GetBatcher(clientHandler, property);
+    }
+
+    private List<String> requestedIds(FakeElasticsearchServer.Request request) {
+        JSONArray docs = JSON.parseObject(request.getBody()).getJSONArray("docs");
+        List<String> ids = Lists.newArrayList();
+        for (int i = 0; i < docs.size(); i++) {
+            ids.add(docs.getJSONObject(i).getString("_id"));
+        }
+        return ids;
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaiting() {
+        GetBatcher batcher = batcher(TimeUnit.SECONDS.toMicros(30), 3);
+
+        List<CompletableFuture<JsonObject>> futures = Lists.newArrayList(batcher.get("goods", "item", "1"),
+                batcher.get("goods", "item", "2"), batcher.get("goods", "item", "3"));
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(String.valueOf(i + 1), futures.get(i).join().get("_id").getAsString());
+        }
+        assertEquals(1, server.getRequests("_mget").size());
+        assertEquals(Lists.newArrayList("1", "2", "3"), requestedIds(server.getRequests("_mget").get(0)));
+        assertEquals(1, batcher.getBatchCount());
+    }
+
+    @Test
+    public void partialBatchIsSentAfterDelay() {
+        GetBatcher batcher = batcher(TimeUnit.MILLISECONDS.toMicros(20), 100);
+
+        CompletableFuture<JsonObject> a = batcher.get("goods", "item", "a");
+        CompletableFuture<JsonObject> b = batcher.get("goods", "item", "b");
+        CompletableFuture<JsonObject> other = batcher.get("shop", "item", "a");
+
+        assertTrue(a.join().get("found").getAsBoolean());
+        assertTrue(b.join().get("found").getAsBoolean());
+        assertEquals("shop", other.join().get("_index").getAsString());
+        //按索引、类型分批
+        assertEquals(2, server.getRequests("_mget").size());
+        assertEquals(3, batcher.getGetCount());
+    }
+
+    @Test
+    public void duplicateIdsAreRequestedOnce() {
+        GetBatcher batcher = batcher(TimeUnit.MILLISECONDS.toMicros(20), 100);
+
+        CompletableFuture<JsonObject> first = batcher.get("goods", "item", "1");
+        CompletableFuture<JsonObject> second = batcher.get("goods", "item", "1");
+
+        assertEquals(first.join(), second.join());
+        assertEquals(Lists.newArrayList("1"), requestedIds(server.getRequests("_mget").get(0)));
+    }
+
+    @Test
+    public void missingDocumentsCompleteAsNotFound() {
+        server.setMissingIds(Sets.newHashSet("2"));
+        GetBatcher batcher = batcher(TimeUnit.SECONDS.toMicros(30), 2);
+
+        CompletableFuture<JsonObject> found = batcher.get("goods", "item", "1");
+        CompletableFuture<JsonObject> missing = batcher.get("goods", "item", "2");
+
+        assertTrue(found.join().get("found").getAsBoolean());
+        assertFalse(missing.join().get("found").getAsBoolean());
+    }
+
+    @Test
+    public void failedRequestFailsEveryWaiter() {
+        server.setErrorRate(1);
+        GetBatcher batcher = batcher(TimeUnit.SECONDS.toMicros(30), 2);
+
+        CompletableFuture<JsonObject> a = batcher.get("goods", "item", "1");
+        CompletableFuture<JsonObject> b = batcher.get("goods", "item", "2");
+
+        for (CompletableFuture<JsonObject> future : Lists.newArrayList(a, b)) {
+            try {
+                future.join();
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause().getMessage().contains("multi get failed"));
+            }
+        }
+    }
+
+    @Test
+    public void searchHandlerGetsThroughBatcher() {
+        server.setMissingIds(Sets.newHashSet("2"));
+        SearchHandler searchHandler = new SearchHandler(clientHandler);
+        GetBatchProperty property = new GetBatchProperty();
+        property.setMaxDelayMicros(TimeUnit.MILLISECONDS.toMicros(20));
+        searchHandler.setGetBatchProperty(property);
+
+        CompletableFuture<com.alibaba.fastjson.JSONObject> found = searchHandler.getAsync("goods", "item", "1");
+        CompletableFuture<com.alibaba.fastjson.JSONObject> missing = searchHandler.getAsync("goods", "item", "2");
+
+        assertFalse(found.join().isEmpty());
+        assertTrue(missing.join().isEmpty());
+        assertEquals(1, server.getRequests("_mget").size());
+        assertEquals(0, server.getRequests("/goods/item/1").size());
+    }
+}
@@ -0,0 +1,129 @@
+package org.elasticsearch.handler.bulk;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import io.searchbox.action.BulkableAction;
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.fake.FakeElasticsearchServer;
+import org.elasticsearch.handler.prop.BulkProperty;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BulkProcessorTest {
+
+    private FakeElasticsearchServer server;
+    private ClientHandler clientHandler;
+
+    private final AtomicInteger startedBulks = new AtomicInteger();
+    private final AtomicInteger completedBulks = new AtomicInteger();
+    private final AtomicInteger completedActions = new AtomicInteger();
+
+    private final BulkProcessor.Listener listener = new BulkProcessor.Listener() {
+        @Override
+        public void beforeBulk(long executionId, List<BulkableAction> actions) {
+            startedBulks.incrementAndGet();
+        }
+
+        @Override
+        public void afterBulk(long executionId, List<BulkableAction> actions, BulkReport report) {
+            completedActions.addAndGet(actions.size());
+            completedBulks.incrementAndGet();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeElasticsearchServer(0).start();
+        clientHandler = new ClientHandler(server.searchProperty());
+    }
+
+    @After
+    public void tearDown() {
+        clientHandler.closeJestClient();
+        server.close();
+    }
+
+    private BulkProperty property(int bulkActions) {
+        BulkProperty property = new BulkProperty();
+        property.setBulkActions(bulkActions);
+        property.setFlushInterval(0);
+        return property;
+    }
+
+    @Test
+    public void sendsByCountAndRemainingOnClose() {
+        BulkProcessor processor = new BulkProcessor(clientHandler, property(3), listener);
+        for (int i = 0; i < 7; i++) {
+            processor.add("goods", "item", Integer.toString(i), ImmutableMap.of("id", i));
+        }
+        processor.close();
+
+        assertEquals(3, server.getRequests("_bulk").size());
+        assertEquals(3, completedBulks.get());
+        assertEquals(7, completedActions.get());
+    }
+
+    @Test
+    public void closeWaitsForInFlightBulks() {
+        server.setLatency(200);
+        BulkProcessor processor = new BulkProcessor(clientHandler, property(1), listener);
+        processor.add("goods", "item", "1", ImmutableMap.of("id", 1));
+        processor.close();
+
+        assertEquals(1, completedBulks.get());
+    }
+
+    @Test
+    public void blockedProducerDoesNotHoldLock() throws Exception {
+        server.setLatency(300);
+        BulkProcessor processor = new BulkProcessor(clientHandler, property(2), listener);
+        processor.add("goods", "item", "1", ImmutableMap.of("id", 1));
+        //第二条触发发送并占用唯一的许可
+        processor.add("goods", "item", "2", ImmutableMap.of("id", 2));
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            processor.add("goods", "item", "3", ImmutableMap.of("id", 3));
+            blocked.countDown();
+            //等待许可
+            processor.add("goods", "item", "4", ImmutableMap.of("id", 4));
+        });
+        producer.start();
+        blocked.await();
+        Thread.sleep(50);
+
+        long begin = System.nanoTime();
+        processor.add("goods", "item", "5", ImmutableMap.of("id", 5));
+        assertTrue("add blocked behind waiting producer",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 150);
+
+        producer.join();
+        processor.close();
+        assertEquals(5, completedActions.get());
+        assertEquals(3, server.getRequests("_bulk").size());
+    }
+
+    @Test
+    public void bulkSizeCountsUtf8Bytes() {
+        BulkProperty property = property(0);
+        property.setBulkSize(250);
+        BulkProcessor processor = new BulkProcessor(clientHandler, property, listener);
+        //100个汉字, 300字节
+        String title = Strings.repeat("中", 100);
+        processor.add("goods", "item", "1", ImmutableMap.of("title", title));
+
+        //按字符数计算时不足250, 不会立即发送
+        assertEquals(1, startedBulks.get());
+        processor.close();
+        assertTrue(server.getRequests("_bulk").get(0).getBody().contains(title));
+    }
+}
@@ -0,0 +1,86 @@
+package org.elasticsearch.handler.bulk;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import io.searchbox.action.BulkableAction;
+import io.searchbox.core.Index;
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.fake.FakeElasticsearchServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkRetryHandlerTest {
+
+    private FakeElasticsearchServer server;
+    private ClientHandler clientHandler;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeElasticsearchServer(0).start();
+        clientHandler = new ClientHandler(server.searchProperty());
+    }
+
+    @After
+    public void tearDown() {
+        clientHandler.closeJestClient();
+        server.close();
+    }
+
+    private List<BulkableAction> actions(int count) {
+        List<BulkableAction> actions = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            actions.add(new Index.Builder(ImmutableMap.of("id", i)).index("goods").type("item").id("doc" + i).build());
+        }
+        return actions;
+    }
+
+    @Test
+    public void retriesOnlyRejectedItems() throws Exception {
+        server.rejectBulkItems(2);
+        BulkRetryHandler handler = new BulkRetryHandler(clientHandler, BackoffPolicy.exponential(10, 3));
+
+        BulkReport report = handler.execute(actions(5));
+
+        assertTrue(report.isSucceeded());
+        assertEquals(2, report.getRetries());
+        List<FakeElasticsearchServer.Request> requests = server.getRequests("_bulk");
+        assertEquals(2, requests.size());
+        //第二次只发送被拒绝的前两个条目
+        String retryBody = requests.get(1).getBody();
+        assertTrue(retryBody.contains("doc0") && retryBody.contains("doc1"));
+        assertFalse(retryBody.contains("doc2"));
+    }
+
+    @Test
+    public void asyncRetriesOnlyRejectedItems() {
+        server.rejectBulkItems(1);
+        BulkRetryHandler handler = new BulkRetryHandler(clientHandler, BackoffPolicy.exponential(10, 3));
+
+        BulkReport report = handler.executeAsync(actions(3)).join();
+
+        assertTrue(report.isSucceeded());
+        assertEquals(1, report.getRetries());
+        assertEquals(2, server.getRequests("_bulk").size());
+    }
+
+    @Test
+    public void reportsRejectedItemsAfterMaxRetries() throws Exception {
+        server.rejectBulkItems(100);
+        BulkRetryHandler handler = new BulkRetryHandler(clientHandler, BackoffPolicy.exponential(10, 2));
+
+        BulkReport report = handler.execute(actions(2));
+
+        assertFalse(report.isSucceeded());
+        assertEquals(2, report.getFailures().size());
+        assertEquals(429, report.getFailures().get(0).getStatus());
+        assertEquals(3, report.getFailures().get(0).getAttempts());
+        assertEquals(3, server.getRequests("_bulk").size());
+    }
+}
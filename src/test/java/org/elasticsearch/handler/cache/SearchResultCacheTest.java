@@ -0,0 +1,68 @@
+package org.elasticsearch.handler.cache;
+
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.DocumentHandler;
+import org.elasticsearch.handler.SearchHandler;
+import org.elasticsearch.handler.SearchHandlerTest;
+import org.elasticsearch.handler.fake.FakeElasticsearchServer;
+import org.elasticsearch.handler.prop.CacheProperty;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SearchResultCacheTest {
+
+    private FakeElasticsearchServer server;
+    private ClientHandler first;
+    private ClientHandler second;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeElasticsearchServer(0).start();
+        first = new ClientHandler(server.searchProperty());
+        second = new ClientHandler(server.searchProperty());
+    }
+
+    @After
+    public void tearDown() {
+        first.closeJestClient();
+        second.closeJestClient();
+        server.close();
+    }
+
+    @Test
+    public void writesOnlyInvalidateOwnClient() {
+        SearchHandler searchHandler = new SearchHandler(first);
+        searchHandler.setResultCache(new SearchResultCache(new CacheProperty()));
+
+        searchHandler.search(SearchHandlerTest.request());
+        searchHandler.search(SearchHandlerTest.request());
+        assertEquals(1, server.getRequests("_search").size());
+
+        //其他客户端写入同名索引, 本客户端缓存不受影响
+        new DocumentHandler(second).saveDoc("goods", "item", "1", Collections.singletonMap("title", "a"));
+        searchHandler.search(SearchHandlerTest.request());
+        assertEquals(1, server.getRequests("_search").size());
+
+        new DocumentHandler(first).saveDoc("goods", "item", "1", Collections.singletonMap("title", "a"));
+        searchHandler.search(SearchHandlerTest.request());
+        assertEquals(2, server.getRequests("_search").size());
+    }
+
+    @Test
+    public void versionsAreScopedPerInstance() {
+        IndexVersions a = new IndexVersions();
+        IndexVersions b = new IndexVersions();
+
+        a.bump("goods");
+
+        assertArrayEquals(new long[]{1}, a.snapshot(Collections.singletonList("goods")));
+        assertArrayEquals(new long[]{0}, b.snapshot(Collections.singletonList("goods")));
+        assertArrayEquals(new long[]{1}, a.snapshot(Collections.<String>emptyList()));
+    }
+}
@@ -0,0 +1,133 @@
+package org.elasticsearch.handler.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 第一个调用在loader中阻塞, 期间第二个相同key的调用应共享其结果
+     */
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> flight.execute("k", () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "v";
+        }));
+        await(started);
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> flight.execute("k", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        while (flight.getSharedCount() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertEquals("v", first.get(5, TimeUnit.SECONDS));
+        assertEquals("v", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals(1, flight.getExecuteCount());
+        assertEquals(0, flight.getInFlight());
+    }
+
+    @Test
+    public void finishedCallIsNotCached() {
+        assertEquals("a", flight.execute("k", () -> "a"));
+        assertEquals("b", flight.execute("k", () -> "b"));
+        assertEquals(2, flight.getExecuteCount());
+        assertEquals(0, flight.getSharedCount());
+    }
+
+    @Test
+    public void failureIsPropagatedAndRemoved() {
+        try {
+            flight.execute("k", () -> {
+                throw new IllegalStateException("load failed");
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(0, flight.getInFlight());
+        }
+        assertEquals("v", flight.execute("k", () -> "v"));
+    }
+
+    @Test
+    public void asyncCallsShareOneExecution() throws Exception {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<String> first = flight.executeAsync("k", () -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<String> second = flight.executeAsync("k", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        assertNotSame(first, second);
+
+        pending.complete("v");
+        assertEquals("v", second.get());
+        assertEquals(1, loads.get());
+        assertEquals(0, flight.getInFlight());
+    }
+
+    @Test
+    public void cancellingOneCallerDoesNotAffectOthers() throws Exception {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.executeAsync("k", () -> pending);
+        CompletableFuture<String> second = flight.executeAsync("k", () -> CompletableFuture.completedFuture("other"));
+
+        assertTrue(first.cancel(true));
+        assertFalse(pending.isDone());
+        assertFalse(second.isDone());
+
+        pending.complete("v");
+        assertEquals("v", second.get(5, TimeUnit.SECONDS));
+        assertTrue(first.isCancelled());
+        assertEquals(0, flight.getInFlight());
+    }
+
+    @Test
+    public void asyncFailureIsUnwrapped() throws Exception {
+        CompletableFuture<String> future = flight.executeAsync("k",
+                () -> CompletableFuture.supplyAsync(() -> {
+                    throw new IllegalStateException("load failed");
+                }));
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, flight.getInFlight());
+    }
+}
@@ -0,0 +1,82 @@
+package org.elasticsearch.handler.client;
+
+import org.elasticsearch.handler.metrics.Operation;
+import org.elasticsearch.handler.prop.HedgeProperty;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HedgePolicyTest {
+
+    private static HedgeProperty property(double maxHedgeRatio) {
+        HedgeProperty property = new HedgeProperty();
+        property.setEnabled(true);
+        property.setPercentile(90);
+        property.setMinDelay(5);
+        property.setMaxDelay(500);
+        property.setSampleSize(10);
+        property.setMinSamples(10);
+        property.setMaxHedgeRatio(maxHedgeRatio);
+        return property;
+    }
+
+    private static void record(HedgePolicy policy, Operation operation, int count, long millis) {
+        for (int i = 0; i < count; i++) {
+            policy.record(operation, TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    @Test
+    public void noDelayUntilEnoughSamples() {
+        HedgePolicy policy = new HedgePolicy(property(0.1));
+
+        record(policy, Operation.SEARCH, 9, 50);
+        assertEquals(-1, policy.getDelay(Operation.SEARCH));
+
+        record(policy, Operation.SEARCH, 1, 50);
+        assertEquals(50, policy.getDelay(Operation.SEARCH));
+        assertEquals(-1, policy.getDelay(Operation.GET));
+    }
+
+    @Test
+    public void delayIsPercentileClampedToRange() {
+        HedgePolicy policy = new HedgePolicy(property(0.1));
+        for (int i = 1; i <= 10; i++) {
+            policy.record(Operation.SEARCH, TimeUnit.MILLISECONDS.toNanos(i * 10));
+        }
+        assertEquals(90, policy.getDelay(Operation.SEARCH));
+
+        record(policy, Operation.GET, 10, 1);
+        assertEquals(5, policy.getDelay(Operation.GET));
+
+        record(policy, Operation.MULTI_GET, 10, 5000);
+        assertEquals(500, policy.getDelay(Operation.MULTI_GET));
+    }
+
+    @Test
+    public void hedgesAreLimitedByRatio() {
+        HedgePolicy policy = new HedgePolicy(property(0.1));
+        assertFalse(policy.tryAcquire());
+
+        record(policy, Operation.SEARCH, 10, 10);
+        assertTrue(policy.tryAcquire());
+        assertFalse(policy.tryAcquire());
+        assertEquals(1, policy.getHedgeCount());
+    }
+
+    @Test
+    public void budgetIsCapped() {
+        HedgePolicy policy = new HedgePolicy(property(1));
+        record(policy, Operation.SEARCH, 100, 10);
+
+        int hedges = 0;
+        while (policy.tryAcquire()) {
+            hedges++;
+        }
+        assertEquals(10, hedges);
+    }
+}
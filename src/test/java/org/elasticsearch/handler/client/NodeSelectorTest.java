@@ -0,0 +1,128 @@
+package org.elasticsearch.handler.client;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NodeSelectorTest {
+
+    private static final String A = "http://127.0.0.1:9201";
+    private static final String B = "http://127.0.0.1:9202";
+
+    private static NodeSelector selector(long blacklistTime, String... servers) {
+        NodeSelector selector = new NodeSelector(blacklistTime, blacklistTime * 4);
+        selector.setServers(Lists.newArrayList(servers));
+        return selector;
+    }
+
+    private static void fail(NodeSelector selector, String server) {
+        selector.onFailure(selector.onRequest(URI.create(server + "/goods/_search")), true);
+    }
+
+    private static void respond(NodeSelector selector, String server, long millis) {
+        selector.onResponse(selector.onRequest(URI.create(server + "/goods/_search")), TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void blacklistedNodeIsSkippedUntilExpired() throws Exception {
+        NodeSelector selector = selector(100, A, B);
+        fail(selector, A);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(B, selector.select());
+        }
+        Thread.sleep(120);
+        boolean selected = false;
+        for (int i = 0; i < 100 && !selected; i++) {
+            selected = A.equals(selector.select());
+        }
+        assertTrue(selected);
+    }
+
+    @Test
+    public void blacklistTimeDoublesOnRepeatedFailures() throws Exception {
+        NodeSelector selector = selector(50, A, B);
+        fail(selector, A);
+        fail(selector, A);
+
+        //第二次失败拉黑100ms
+        Thread.sleep(70);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(B, selector.select());
+        }
+
+        //成功响应后清除失败次数
+        Thread.sleep(50);
+        respond(selector, B, 10);
+        respond(selector, A, 1);
+        fail(selector, A);
+        Thread.sleep(70);
+        boolean selected = false;
+        for (int i = 0; i < 100 && !selected; i++) {
+            selected = A.equals(selector.select());
+        }
+        assertTrue(selected);
+    }
+
+    @Test
+    public void allBlacklistedSelectsEarliestRelease() throws Exception {
+        NodeSelector selector = selector(1000, A, B);
+        fail(selector, A);
+        Thread.sleep(5);
+        fail(selector, B);
+
+        assertEquals(A, selector.select());
+    }
+
+    @Test
+    public void failureWithoutBlacklistKeepsNode() {
+        NodeSelector selector = selector(1000, A, B);
+        selector.onFailure(selector.onRequest(URI.create(A + "/goods/_search")), false);
+
+        boolean selected = false;
+        for (int i = 0; i < 100 && !selected; i++) {
+            selected = A.equals(selector.select());
+        }
+        assertTrue(selected);
+    }
+
+    @Test
+    public void fasterNodeIsPreferred() {
+        NodeSelector selector = selector(1000, A, B);
+        respond(selector, A, 100);
+        respond(selector, B, 1);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(B, selector.select());
+        }
+    }
+
+    @Test
+    public void selectExcludingReturnsOtherAvailableNode() {
+        NodeSelector selector = selector(1000, A, B);
+
+        assertEquals(B, selector.select(A));
+        fail(selector, B);
+        assertNull(selector.select(A));
+        assertNull(selector(1000, A).select(A));
+    }
+
+    @Test
+    public void setServersKeepsExistingStats() {
+        NodeSelector selector = selector(1000, A, B);
+        fail(selector, A);
+
+        selector.setServers(Lists.newArrayList("127.0.0.1:9201", B, "http://127.0.0.1:9203"));
+
+        assertEquals(3, selector.getServers().size());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(!"127.0.0.1:9201".equals(selector.select()));
+        }
+    }
+}
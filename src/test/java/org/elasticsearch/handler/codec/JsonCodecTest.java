@@ -0,0 +1,115 @@
+package org.elasticsearch.handler.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import io.searchbox.client.AbstractJestClient;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class JsonCodecTest {
+
+    public static class Goods {
+        private long id;
+        private String title;
+        private double price;
+        private List<String> tags;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public void setPrice(double price) {
+            this.price = price;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+    }
+
+    private static Goods goods() {
+        Goods goods = new Goods();
+        goods.setId(7);
+        goods.setTitle("handler");
+        goods.setPrice(10.5);
+        goods.setTags(Arrays.asList("a", "b"));
+        return goods;
+    }
+
+    private static void assertRoundTrip(JsonCodec codec) {
+        String json = codec.toJson(goods());
+        Goods fromString = codec.fromJson(json, Goods.class);
+        Goods fromTree = codec.fromJson(new JsonParser().parse(json), Goods.class);
+
+        for (Goods goods : Arrays.asList(fromString, fromTree)) {
+            assertEquals(7, goods.getId());
+            assertEquals("handler", goods.getTitle());
+            assertEquals(10.5, goods.getPrice(), 0);
+            assertEquals(Arrays.asList("a", "b"), goods.getTags());
+        }
+        assertNull(codec.fromJson(new JsonParser().parse("null"), Goods.class));
+    }
+
+    @Test
+    public void gsonRoundTrip() {
+        assertRoundTrip(new GsonCodec());
+    }
+
+    @Test
+    public void fastjsonRoundTrip() {
+        assertRoundTrip(new FastjsonCodec());
+    }
+
+    @Test
+    public void serializedStringIsNotEncodedAgain() {
+        String json = "{\"id\":1}";
+
+        assertSame(json, JsonCodecs.toJson(json));
+    }
+
+    @Test
+    public void gsonFollowsDefaultCodec() {
+        JsonCodec origin = JsonCodecs.getDefault();
+        Gson gson = new Gson();
+        try {
+            JsonCodecs.setDefault(new GsonCodec(gson));
+            assertSame(gson, JsonCodecs.gson());
+
+            //非gson codec时使用jest的默认配置
+            JsonCodecs.setDefault(new FastjsonCodec());
+            Date date = new Date(0);
+            String expected = new SimpleDateFormat(AbstractJestClient.ELASTIC_SEARCH_DATE_FORMAT).format(date);
+            assertEquals("\"" + expected + "\"", JsonCodecs.gson().toJson(date));
+        } finally {
+            JsonCodecs.setDefault(origin);
+        }
+    }
+}
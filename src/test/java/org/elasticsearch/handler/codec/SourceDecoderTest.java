@@ -0,0 +1,66 @@
+package org.elasticsearch.handler.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import org.elasticsearch.handler.fake.FakeElasticsearchServer;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SourceDecoderTest {
+
+    //原先的转换方式: _source -> Map -> Gson(整数值的Double输出为long) -> fastjson
+    private static final Gson LEGACY = new GsonBuilder().registerTypeAdapter(Double.class,
+            (JsonSerializer<Double>) (src, type, context) -> src == src.longValue()
+                    ? new JsonPrimitive(src.longValue()) : new JsonPrimitive(src)).create();
+
+    private static JSONObject legacy(JsonElement source) {
+        Map map = new Gson().fromJson(source, Map.class);
+        return JSON.parseObject(LEGACY.toJson(map));
+    }
+
+    private static void assertSameAsLegacy(String json) {
+        JsonElement source = new JsonParser().parse(json);
+        JSONObject expected = legacy(source);
+        JSONObject actual = SourceDecoder.decode(source);
+
+        assertEquals(expected, actual);
+        assertEquals(expected.toJSONString(), actual.toJSONString());
+    }
+
+    @Test
+    public void generatedDocumentsMatchLegacyPath() {
+        for (long id = 0; id < 200; id++) {
+            assertSameAsLegacy(FakeElasticsearchServer.source(id).toString());
+        }
+    }
+
+    @Test
+    public void numbersMatchLegacyPath() {
+        assertSameAsLegacy("{\"int\":3,\"whole\":1.0,\"negative\":-7,\"long\":12345678901,\"decimal\":1.5,"
+                + "\"small\":0.00001,\"exp\":1e10,\"max\":2147483647,\"overflow\":2147483648}");
+    }
+
+    @Test
+    public void nestedValuesMatchLegacyPath() {
+        assertSameAsLegacy("{\"name\":\"a\\\"b\\u4e2d\",\"empty\":\"\",\"flag\":true,\"missing\":null,"
+                + "\"tags\":[\"x\",null,2,2.5],\"attr\":{\"color\":\"red\",\"size\":{\"w\":1.0,\"h\":0.5},\"none\":null},"
+                + "\"list\":[{\"a\":1},[1,2]],\"blank\":{},\"none\":[]}");
+    }
+
+    @Test
+    public void nonObjectSourceDecodesToNull() {
+        assertNull(SourceDecoder.decode(null));
+        assertNull(SourceDecoder.decode(new JsonParser().parse("[1]")));
+        assertNull(SourceDecoder.decode(new JsonParser().parse("null")));
+    }
+}
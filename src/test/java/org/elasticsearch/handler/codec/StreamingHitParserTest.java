@@ -0,0 +1,74 @@
+package org.elasticsearch.handler.codec;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import org.elasticsearch.handler.client.HandlerJestHttpClient;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingHitParserTest {
+
+    private static <R> R parse(HandlerJestHttpClient.ResponseParser<R> parser, String json) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            return parser.parse(reader);
+        }
+    }
+
+    @Test
+    public void searchHitsAreReportedInOrder() throws Exception {
+        List<JsonObject> hits = Lists.newArrayList();
+
+        StreamingHitParser.Summary summary = parse(StreamingHitParser.searchHits(hits::add),
+                "{\"took\":7,\"_shards\":{\"total\":1},\"hits\":{\"total\":42,\"max_score\":1.0,\"hits\":["
+                        + "{\"_id\":\"1\",\"_source\":{\"title\":\"a\"}},{\"_id\":\"2\"}]},\"aggregations\":{}}");
+
+        assertEquals(7, summary.getTook());
+        assertEquals(42, summary.getTotal());
+        assertEquals(2, summary.getCount());
+        assertEquals("a", hits.get(0).getAsJsonObject("_source").get("title").getAsString());
+        //没有_source的命中原样回调
+        assertFalse(hits.get(1).has("_source"));
+    }
+
+    @Test
+    public void emptyHitsReportTotalOnly() throws Exception {
+        StreamingHitParser.Summary summary = parse(StreamingHitParser.searchHits(hit -> fail()),
+                "{\"took\":1,\"hits\":{\"total\":0,\"hits\":[]}}");
+
+        assertEquals(0, summary.getTotal());
+        assertEquals(0, summary.getCount());
+    }
+
+    @Test
+    public void multiGetSkipsMissingDocuments() throws Exception {
+        List<JsonObject> docs = Lists.newArrayList();
+
+        StreamingHitParser.Summary summary = parse(StreamingHitParser.multiGetDocs(docs::add),
+                "{\"docs\":[{\"_id\":\"1\",\"found\":true,\"_source\":{}},{\"_id\":\"2\",\"found\":false},"
+                        + "{\"_id\":\"3\",\"found\":true}]}");
+
+        assertEquals(3, summary.getTotal());
+        assertEquals(2, summary.getCount());
+        assertEquals("3", docs.get(1).get("_id").getAsString());
+    }
+
+    @Test
+    public void errorResponseThrows() {
+        try {
+            parse(StreamingHitParser.searchHits(hit -> fail()),
+                    "{\"error\":{\"type\":\"index_not_found_exception\"},\"status\":404}");
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("index_not_found_exception"));
+        }
+    }
+}
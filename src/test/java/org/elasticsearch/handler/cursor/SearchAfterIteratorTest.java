@@ -0,0 +1,74 @@
+package org.elasticsearch.handler.cursor;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import io.searchbox.client.JestResult;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SearchAfterIteratorTest {
+
+    private static JestResult result(String json) {
+        JestResult result = new JestResult(new Gson());
+        result.setJsonString(json);
+        result.setJsonObject(new JsonParser().parse(json).getAsJsonObject());
+        result.setSucceeded(true);
+        return result;
+    }
+
+    private static Iterator<JSONObject> iterator(String... responses) {
+        Iterator<String> pages = Lists.newArrayList(responses).iterator();
+        JSONObject query = JSON.parseObject("{\"sort\":[{\"_uid\":\"asc\"}]}");
+        return new SearchAfterIterator(query, Collections.singletonList("goods"), Collections.<String>emptyList(), 2,
+                search -> result(pages.next()), hit -> JSON.parseObject(hit.get("_source").toString()));
+    }
+
+    @Test
+    public void missingHitsEndsIteration() {
+        Iterator<JSONObject> iterator = iterator("{\"took\":1}");
+
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void emptyPageEndsIteration() {
+        Iterator<JSONObject> iterator = iterator("{\"hits\":{\"total\":0,\"hits\":[]}}");
+
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void readsUntilShortPage() {
+        Iterator<JSONObject> iterator = iterator(
+                "{\"hits\":{\"hits\":[{\"_source\":{\"id\":1},\"sort\":[1]},{\"_source\":{\"id\":2},\"sort\":[2]}]}}",
+                "{\"hits\":{\"hits\":[{\"_source\":{\"id\":3},\"sort\":[3]}]}}");
+
+        int sum = 0;
+        while (iterator.hasNext()) {
+            sum += iterator.next().getIntValue("id");
+        }
+        assertEquals(6, sum);
+    }
+
+    @Test
+    public void missingSortFailsWithMessage() {
+        Iterator<JSONObject> iterator = iterator("{\"hits\":{\"hits\":[{\"_source\":{\"id\":1}}]}}");
+
+        try {
+            iterator.hasNext();
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("no sort values"));
+        }
+    }
+}
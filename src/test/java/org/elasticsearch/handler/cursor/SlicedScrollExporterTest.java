@@ -0,0 +1,118 @@
+package org.elasticsearch.handler.cursor;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.SearchHandler;
+import org.elasticsearch.handler.SearchHandlerTest;
+import org.elasticsearch.handler.fake.FakeElasticsearchServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SlicedScrollExporterTest {
+
+    private FakeElasticsearchServer server;
+    private ClientHandler clientHandler;
+    private SearchHandler searchHandler;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeElasticsearchServer(0).start();
+        server.setScrollPages(3);
+        clientHandler = new ClientHandler(server.searchProperty());
+        searchHandler = new SearchHandler(clientHandler);
+    }
+
+    @After
+    public void tearDown() {
+        clientHandler.closeJestClient();
+        server.close();
+    }
+
+    /**
+     * 清除scroll请求中的全部scroll id
+     */
+    private Set<String> clearedScrollIds() {
+        Set<String> ids = Sets.newHashSet();
+        for (FakeElasticsearchServer.Request request : server.getRequests("_search/scroll")) {
+            if ("DELETE".equals(request.getMethod())) {
+                for (Object id : JSON.parseObject(request.getBody()).getJSONArray("scroll_id")) {
+                    ids.add(id.toString());
+                }
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    public void slicesReadTheirPagesInOrder() {
+        Map<Long, List<Long>> pages = new ConcurrentHashMap<>();
+
+        long count = searchHandler.export(SearchHandlerTest.request(), 3, batch -> {
+            long id = batch.get(0).getLongValue("id");
+            pages.computeIfAbsent(id / 10000, k -> Collections.synchronizedList(Lists.newArrayList())).add(id % 10000 / 100);
+        });
+
+        //3个分片, 每个分片3页, 每页5条
+        assertEquals(45, count);
+        assertEquals(Sets.newHashSet(0L, 1L, 2L), pages.keySet());
+        for (List<Long> slicePages : pages.values()) {
+            assertEquals(Lists.newArrayList(0L, 1L, 2L), slicePages);
+        }
+        assertEquals(3, server.getRequests("_search?scroll").size());
+        for (FakeElasticsearchServer.Request request : server.getRequests("_search?scroll")) {
+            JSONObject slice = JSON.parseObject(request.getBody()).getJSONObject("slice");
+            assertEquals(3, slice.getIntValue("max"));
+        }
+    }
+
+    @Test
+    public void everyScrollIdIsCleared() {
+        long count = searchHandler.export(SearchHandlerTest.request(), 1, batch -> {});
+
+        assertEquals(15, count);
+        //每页的scroll id不同, 包括最后一个空页
+        assertEquals(Sets.newHashSet("0-0-5", "0-1-5", "0-2-5", "0-3-0"), clearedScrollIds());
+    }
+
+    @Test
+    public void consumerFailureAbortsAllSlices() {
+        server.setScrollPages(1000);
+        server.setLatency(5);
+        AtomicInteger batches = new AtomicInteger();
+
+        try {
+            searchHandler.export(SearchHandlerTest.request(), 2, batch -> {
+                batches.incrementAndGet();
+                if (batch.get(0).getLongValue("id") / 10000 == 1) {
+                    throw new IllegalStateException("consumer failed");
+                }
+            });
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        //失败的分片停止后另一个分片也停止, 两个分片的scroll都被清除
+        assertTrue(batches.get() < 100);
+        long deletes = server.getRequests("_search/scroll").stream().filter(r -> "DELETE".equals(r.getMethod())).count();
+        assertEquals(2, deletes);
+        Set<String> cleared = clearedScrollIds();
+        assertTrue(cleared.contains("0-0-5"));
+        assertTrue(cleared.contains("1-0-5"));
+    }
+}
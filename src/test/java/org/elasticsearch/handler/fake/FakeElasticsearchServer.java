@@ -0,0 +1,595 @@
+package org.elasticsearch.handler.fake;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.elasticsearch.handler.prop.SearchProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 本地模拟es http接口, 用于测试及在没有集群时压测整个客户端
+ *
+ * 支持_search、_msearch、_mget、_bulk、文档增删改查、_update、_delete_by_query、scroll、_nodes及索引管理,
+ * 返回固定结构的生成数据。可在运行中调整延迟、错误率及拒绝率(429), 并记录收到的请求。
+ * 响应头和响应体分开写出, 需设置系统属性sun.net.httpserver.nodelay=true, 否则每个请求多出约40ms。
+ */
+public class FakeElasticsearchServer implements Closeable {
+
+    private static final Gson GSON = new Gson();
+    private static final JsonParser PARSER = new JsonParser();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requestCount = new AtomicLong();
+
+    //固定延迟 毫秒
+    private volatile long latency;
+    //随机附加延迟上限 毫秒
+    private volatile long latencyJitter;
+    //返回500的比例
+    private volatile double errorRate;
+    //返回429(整个请求或bulk单个条目)的比例
+    private volatile double rejectRate;
+    //每次搜索返回的命中数, 不超过请求中的size
+    private volatile int hits = 10;
+    //请求头包含Accept-Encoding: gzip时压缩响应, 同es的http.compression
+    private volatile boolean compression;
+    //_nodes/http返回的节点地址, 模拟多节点集群时设置, 为空时只返回本节点
+    private volatile List<String> clusterHosts = Collections.emptyList();
+    //scroll返回的页数, 每页的scroll id不同
+    private volatile int scrollPages = 1;
+    //get及mget返回found:false的id
+    private volatile Set<String> missingIds = Collections.emptySet();
+    //接下来返回429的bulk条目数, 与rejectRate独立
+    private final AtomicInteger bulkRejects = new AtomicInteger();
+    //收到的请求, 最多保留MAX_RECORDED个
+    private final ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+
+    private static final int MAX_RECORDED = 10000;
+
+    /**
+     * 收到的请求
+     */
+    public static class Request {
+        private final String method;
+        private final String uri;
+        private final String body;
+        private final Headers headers;
+
+        Request(String method, String uri, String body, Headers headers) {
+            this.method = method;
+            this.uri = uri;
+            this.body = body;
+            this.headers = headers;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * 路径及参数
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public String getHeader(String name) {
+            return headers.getFirst(name);
+        }
+
+        @Override
+        public String toString() {
+            return method + " " + uri;
+        }
+    }
+
+    public FakeElasticsearchServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("fake-es-%d").setDaemon(true).build());
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public FakeElasticsearchServer start() {
+        server.start();
+        return this;
+    }
+
+    public String getHost() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * 指向本服务的客户端配置
+     */
+    public SearchProperty searchProperty() {
+        SearchProperty property = new SearchProperty();
+        property.setHosts(Lists.newArrayList(getHost()));
+        property.setConnTimeout(1000);
+        property.setReadTimeout(5000);
+        return property;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            String body = readBody(exchange);
+            if (requests.size() < MAX_RECORDED) {
+                requests.add(new Request(exchange.getRequestMethod(), exchange.getRequestURI().toString(), body,
+                        exchange.getRequestHeaders()));
+            }
+            delay();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                send(exchange, 500, error("fake_exception", "injected error", 500));
+                return;
+            }
+
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String[] parts = path.replaceAll("^/+|/+$", "").split("/+");
+            String last = parts[parts.length - 1];
+
+            if ((last.equals("_search") || last.equals("_msearch")) && rejectRate > 0 && random.nextDouble() < rejectRate) {
+                send(exchange, 429, error("es_rejected_execution_exception", "injected rejection", 429));
+            } else if (last.equals("_search")) {
+                String query = exchange.getRequestURI().getQuery();
+                send(exchange, 200, query != null && query.contains("scroll=") ? scrollSearch(body) : search(body));
+            } else if (path.contains("_search/scroll")) {
+                send(exchange, 200, "DELETE".equals(method) ? "{\"succeeded\":true,\"num_freed\":1}" : scroll(body,
+                        exchange.getRequestURI().getQuery()));
+            } else if (last.equals("_msearch")) {
+                send(exchange, 200, multiSearch(body));
+            } else if (last.equals("_mget")) {
+                send(exchange, 200, multiGet(body));
+            } else if (last.equals("_bulk")) {
+                send(exchange, 200, bulk(body));
+            } else if (last.equals("_delete_by_query")) {
+                send(exchange, 200, "{\"took\":3,\"timed_out\":false,\"total\":1,\"deleted\":1,\"failures\":[]}");
+            } else if (last.equals("_update")) {
+                send(exchange, 200, document(parts[0], parts[1], parts[2], "updated"));
+            } else if (last.equals("_mapping") || (parts.length >= 2 && parts[1].equals("_mapping"))) {
+                send(exchange, 200, "{\"acknowledged\":true}");
+            } else if (parts[0].equals("_nodes")) {
+                send(exchange, 200, nodes());
+            } else if (parts[0].startsWith("_")) {
+                send(exchange, 200, "{}");
+            } else if (parts.length == 1) {
+                //索引管理
+                if ("HEAD".equals(method)) {
+                    send(exchange, 200, null);
+                } else {
+                    send(exchange, 200, "{\"acknowledged\":true}");
+                }
+            } else if (parts.length >= 3 && "GET".equals(method)) {
+                send(exchange, missingIds.contains(parts[2]) ? 404 : 200, get(parts[0], parts[1], parts[2]));
+            } else if (parts.length >= 2) {
+                String id = parts.length >= 3 ? parts[2] : Long.toString(requestCount.get());
+                String result = "DELETE".equals(method) ? "deleted" : "created";
+                send(exchange, "created".equals(result) ? 201 : 200, document(parts[0], parts[1], id, result));
+            } else {
+                send(exchange, 404, error("illegal_argument_exception", "unsupported path " + path, 404));
+            }
+        } catch (Exception e) {
+            send(exchange, 500, error("fake_exception", String.valueOf(e.getMessage()), 500));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String search(String body) {
+        int size = hits;
+        boolean sorted = false;
+        boolean source = true;
+        if (!body.isEmpty()) {
+            JsonObject query = PARSER.parse(body).getAsJsonObject();
+            JsonElement sizeElement = query.get("size");
+            if (sizeElement != null) {
+                size = Math.min(size, sizeElement.getAsInt());
+            }
+            // search_after只返回一页, 后续请求视为已读完
+            if (query.has("search_after")) {
+                size = 0;
+            }
+            sorted = query.has("sort");
+            //"_source": false时命中不含_source
+            JsonElement sourceElement = query.get("_source");
+            source = sourceElement == null || !sourceElement.isJsonPrimitive() || sourceElement.getAsBoolean();
+            if (query.has("docvalue_fields")) {
+                return docValueFields(searchResponse(size, sorted, source), query.getAsJsonArray("docvalue_fields"));
+            }
+        }
+        return searchResponse(size, sorted, source);
+    }
+
+    /**
+     * 每个命中按docvalue_fields返回fields, 值取生成文档中的字段并包装为数组
+     */
+    private String docValueFields(String response, JsonArray docValueFields) {
+        JsonObject json = PARSER.parse(response).getAsJsonObject();
+        for (JsonElement hit : json.getAsJsonObject("hits").getAsJsonArray("hits")) {
+            JsonObject hitObject = hit.getAsJsonObject();
+            JsonObject doc = source(hitObject.get("_id").getAsLong());
+            JsonObject fields = new JsonObject();
+            for (JsonElement field : docValueFields) {
+                JsonArray values = new JsonArray();
+                values.add(doc.get(field.getAsString()));
+                fields.add(field.getAsString(), values);
+            }
+            hitObject.add("fields", fields);
+        }
+        return json.toString();
+    }
+
+    private String searchResponse(int size) {
+        return searchResponse(size, false, true);
+    }
+
+    private String searchResponse(int size, boolean sorted, boolean source) {
+        StringBuilder json = new StringBuilder(size * 400 + 256);
+        json.append("{\"took\":12,\"timed_out\":false,\"_shards\":{\"total\":5,\"successful\":5,\"failed\":0},")
+                .append("\"hits\":{\"total\":").append(size * 10).append(",\"max_score\":1.0,\"hits\":[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"_index\":\"goods\",\"_type\":\"item\",\"_id\":\"").append(i).append("\",\"_score\":1.0");
+            if (source) {
+                json.append(",\"_source\":").append(source(i));
+            }
+            if (sorted) {
+                json.append(",\"sort\":[").append(i).append(']');
+            }
+            json.append('}');
+        }
+        return json.append("]}}").toString();
+    }
+
+    /**
+     * 生成的文档, 结构与benchmarks中的BenchmarkData.Goods相同
+     */
+    public static JsonObject source(long id) {
+        JsonObject source = new JsonObject();
+        source.addProperty("id", id);
+        source.addProperty("title", "elasticsearch handler goods " + id);
+        source.addProperty("content", "jest based rest client wrapper, document number " + id + ", used for benchmark only");
+        source.addProperty("price", id * 1.5);
+        source.addProperty("stock", (int) (id % 100));
+        JsonArray tags = new JsonArray();
+        tags.add("tag" + id % 7);
+        tags.add("tag" + id % 11);
+        source.add("tags", tags);
+        source.addProperty("created", 1500000000000L + id * 1000);
+        return source;
+    }
+
+    /**
+     * id对应的文档, get及mget返回
+     */
+    public static JsonObject source(String id) {
+        return source(Math.abs(id.hashCode()));
+    }
+
+    /**
+     * 与es 5.x的_nodes/http结构相同, 各节点均为数据节点
+     */
+    private String nodes() {
+        List<String> hosts = clusterHosts.isEmpty() ? Collections.singletonList(getHost()) : clusterHosts;
+        JsonObject nodes = new JsonObject();
+        for (int i = 0; i < hosts.size(); i++) {
+            JsonObject http = new JsonObject();
+            http.addProperty("publish_address", hosts.get(i).replaceFirst("^https?://", ""));
+            JsonArray roles = new JsonArray();
+            roles.add("master");
+            roles.add("data");
+            JsonObject node = new JsonObject();
+            node.addProperty("name", "fake-" + i);
+            node.addProperty("version", "5.6.16");
+            node.add("roles", roles);
+            node.add("http", http);
+            nodes.add("node-" + i, node);
+        }
+        JsonObject response = new JsonObject();
+        response.addProperty("cluster_name", "fake");
+        response.add("nodes", nodes);
+        return GSON.toJson(response);
+    }
+
+    /**
+     * scroll id为 分片-页码-每页条数, 每个分片的文档id为 分片*10000+页码*100+序号
+     */
+    private String scrollSearch(String body) {
+        JsonObject query = PARSER.parse(body).getAsJsonObject();
+        int size = query.has("size") ? Math.min(hits, query.get("size").getAsInt()) : hits;
+        int slice = query.has("slice") ? query.getAsJsonObject("slice").get("id").getAsInt() : 0;
+        String page = scrollPage(slice, 0, size);
+        JsonElement source = query.get("_source");
+        if (source != null && source.isJsonPrimitive() && !source.getAsBoolean()) {
+            JsonObject json = PARSER.parse(page).getAsJsonObject();
+            json.getAsJsonObject("hits").getAsJsonArray("hits").forEach(hit -> hit.getAsJsonObject().remove("_source"));
+            page = json.toString();
+        }
+        return query.has("docvalue_fields") ? docValueFields(page, query.getAsJsonArray("docvalue_fields")) : page;
+    }
+
+    /**
+     * scroll id在请求体或scroll_id参数中
+     */
+    private String scroll(String body, String query) {
+        String id = null;
+        if (!body.isEmpty()) {
+            id = PARSER.parse(body).getAsJsonObject().get("scroll_id").getAsString();
+        } else if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("scroll_id=")) {
+                    id = param.substring("scroll_id=".length());
+                }
+            }
+        }
+        String[] scrollId = id.split("-");
+        int page = Integer.parseInt(scrollId[1]) + 1;
+        //超过scrollPages后返回空结果, 结束滚动
+        return scrollPage(Integer.parseInt(scrollId[0]), page, page < scrollPages ? Integer.parseInt(scrollId[2]) : 0);
+    }
+
+    private String scrollPage(int slice, int page, int size) {
+        JsonObject json = PARSER.parse(searchResponse(size)).getAsJsonObject();
+        long offset = slice * 10000L + page * 100L;
+        for (JsonElement hit : json.getAsJsonObject("hits").getAsJsonArray("hits")) {
+            JsonObject hitObject = hit.getAsJsonObject();
+            long id = offset + hitObject.get("_id").getAsLong();
+            hitObject.addProperty("_id", Long.toString(id));
+            hitObject.add("_source", source(id));
+        }
+        json.addProperty("_scroll_id", slice + "-" + page + "-" + size);
+        return json.toString();
+    }
+
+    private String multiSearch(String body) {
+        StringBuilder json = new StringBuilder("{\"responses\":[");
+        String[] lines = body.split("\n");
+        int count = 0;
+        for (int i = 1; i < lines.length; i += 2) {
+            if (lines[i].trim().isEmpty()) {
+                continue;
+            }
+            if (count++ > 0) {
+                json.append(',');
+            }
+            json.append(search(lines[i]));
+        }
+        return json.append("]}").toString();
+    }
+
+    private String multiGet(String body) {
+        JsonArray docs = new JsonArray();
+        for (JsonElement doc : PARSER.parse(body).getAsJsonObject().getAsJsonArray("docs")) {
+            JsonObject request = doc.getAsJsonObject();
+            JsonObject item = PARSER.parse(get(request.get("_index").getAsString(), request.get("_type").getAsString(),
+                    request.get("_id").getAsString())).getAsJsonObject();
+            docs.add(item);
+        }
+        JsonObject response = new JsonObject();
+        response.add("docs", docs);
+        return response.toString();
+    }
+
+    private String get(String index, String type, String id) {
+        JsonObject doc = new JsonObject();
+        doc.addProperty("_index", index);
+        doc.addProperty("_type", type);
+        doc.addProperty("_id", id);
+        if (missingIds.contains(id)) {
+            doc.addProperty("found", false);
+            return doc.toString();
+        }
+        doc.addProperty("_version", 1);
+        doc.addProperty("found", true);
+        doc.add("_source", source(id));
+        return doc.toString();
+    }
+
+    private String document(String index, String type, String id, String result) {
+        return "{\"_index\":\"" + index + "\",\"_type\":\"" + type + "\",\"_id\":\"" + id
+                + "\",\"_version\":1,\"result\":\"" + result + "\",\"_shards\":{\"total\":2,\"successful\":1,\"failed\":0}}";
+    }
+
+    private String bulk(String body) {
+        JsonArray items = new JsonArray();
+        boolean errors = false;
+        String[] lines = body.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].trim().isEmpty()) {
+                continue;
+            }
+            JsonObject action = PARSER.parse(lines[i]).getAsJsonObject();
+            String operation = action.entrySet().iterator().next().getKey();
+            JsonObject meta = action.getAsJsonObject(operation);
+            if (!"delete".equals(operation)) {
+                i++;
+            }
+
+            JsonObject result = new JsonObject();
+            result.add("_index", meta.get("_index"));
+            result.add("_type", meta.get("_type"));
+            result.add("_id", meta.has("_id") ? meta.get("_id") : GSON.toJsonTree(Long.toString(i)));
+            if (bulkRejects.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0
+                    || (rejectRate > 0 && ThreadLocalRandom.current().nextDouble() < rejectRate)) {
+                errors = true;
+                result.addProperty("status", 429);
+                result.add("error", PARSER.parse(error("es_rejected_execution_exception", "injected rejection", 429))
+                        .getAsJsonObject().get("error"));
+            } else {
+                result.addProperty("_version", 1);
+                result.addProperty("result", "delete".equals(operation) ? "deleted" : "created");
+                result.addProperty("status", "delete".equals(operation) ? 200 : 201);
+            }
+            JsonObject item = new JsonObject();
+            item.add(operation, result);
+            items.add(item);
+        }
+        JsonObject response = new JsonObject();
+        response.addProperty("took", 5);
+        response.addProperty("errors", errors);
+        response.add("items", items);
+        return response.toString();
+    }
+
+    private String error(String type, String reason, int status) {
+        return "{\"error\":{\"root_cause\":[{\"type\":\"" + type + "\",\"reason\":\"" + reason + "\"}],\"type\":\""
+                + type + "\",\"reason\":\"" + reason + "\"},\"status\":" + status + "}";
+    }
+
+    private void delay() throws InterruptedException {
+        long millis = latency;
+        if (latencyJitter > 0) {
+            millis += ThreadLocalRandom.current().nextLong(latencyJitter + 1);
+        }
+        if (millis > 0) {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }
+    }
+
+    private String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (compression && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(bytes);
+            }
+            bytes = out.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public void setLatencyJitter(long latencyJitter) {
+        this.latencyJitter = latencyJitter;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public void setRejectRate(double rejectRate) {
+        this.rejectRate = rejectRate;
+    }
+
+    public void setHits(int hits) {
+        this.hits = hits;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public void setClusterHosts(List<String> clusterHosts) {
+        this.clusterHosts = clusterHosts;
+    }
+
+    public void setScrollPages(int scrollPages) {
+        this.scrollPages = scrollPages;
+    }
+
+    public void setMissingIds(Set<String> missingIds) {
+        this.missingIds = missingIds;
+    }
+
+    /**
+     * 接下来count个bulk条目返回429
+     */
+    public void rejectBulkItems(int count) {
+        bulkRejects.set(count);
+    }
+
+    public List<Request> getRequests() {
+        return Lists.newArrayList(requests);
+    }
+
+    /**
+     * 路径包含path的请求
+     */
+    public List<Request> getRequests(String path) {
+        List<Request> list = Lists.newArrayList();
+        for (Request request : requests) {
+            if (request.getUri().contains(path)) {
+                list.add(request);
+            }
+        }
+        return list;
+    }
+
+    public void clearRequests() {
+        requests.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
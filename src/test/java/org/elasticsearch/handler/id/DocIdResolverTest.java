@@ -0,0 +1,97 @@
+package org.elasticsearch.handler.id;
+
+import com.google.common.collect.Maps;
+import org.elasticsearch.handler.annotation.DocId;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DocIdResolverTest {
+
+    public static class GetterDoc {
+        private long code = 1;
+
+        public String getId() {
+            return "g-" + code;
+        }
+    }
+
+    public static class FieldDoc {
+        private Long id;
+        private String sku;
+
+        FieldDoc(Long id, String sku) {
+            this.id = id;
+            this.sku = sku;
+        }
+    }
+
+    public static class AnnotatedFieldDoc {
+        private long id = 1;
+        private long code = 2;
+        @DocId
+        private String sku = "a";
+    }
+
+    public static class AnnotatedMethodDoc {
+        private long id = 1;
+
+        @DocId
+        public String key() {
+            return "k-" + id;
+        }
+    }
+
+    @Test
+    public void getterIsPreferredOverField() {
+        assertEquals("g-1", DocIdResolver.getId(new GetterDoc()));
+    }
+
+    @Test
+    public void fieldIsReadWithoutGetter() {
+        FieldDoc doc = new FieldDoc(7L, "a");
+
+        assertEquals("7", DocIdResolver.getId(doc));
+        assertEquals("a", DocIdResolver.getId(doc, "sku"));
+    }
+
+    @Test
+    public void docIdOverridesDefaultField() {
+        assertEquals("a", DocIdResolver.getId(new AnnotatedFieldDoc()));
+        assertEquals("k-1", DocIdResolver.getId(new AnnotatedMethodDoc()));
+        //指定其他字段名时不使用@DocId
+        assertEquals("2", DocIdResolver.getId(new AnnotatedFieldDoc(), "code"));
+    }
+
+    @Test
+    public void mapIsReadByIdField() {
+        Map<String, Object> doc = Maps.newHashMap();
+        doc.put("id", 1);
+        doc.put("sku", "a");
+
+        assertEquals("1", DocIdResolver.getId(doc));
+        assertEquals("a", DocIdResolver.getId(doc, "sku"));
+        assertNull(DocIdResolver.getId(doc, "code"));
+    }
+
+    @Test
+    public void nullIdIsNull() {
+        assertNull(DocIdResolver.getId(new FieldDoc(null, null)));
+        assertNull(DocIdResolver.getId(null));
+    }
+
+    @Test
+    public void missingFieldThrows() {
+        try {
+            DocIdResolver.getId(new FieldDoc(1L, "a"), "code");
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("fieldName[code]"));
+        }
+    }
+}
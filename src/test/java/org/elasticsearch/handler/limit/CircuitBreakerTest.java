@@ -0,0 +1,83 @@
+package org.elasticsearch.handler.limit;
+
+import org.elasticsearch.handler.prop.LimitProperty;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        LimitProperty property = new LimitProperty();
+        property.setMinimumRequests(4);
+        property.setFailureRateThreshold(0.5);
+        property.setOpenTime(50);
+        property.setHalfOpenRequests(2);
+        breaker = new CircuitBreaker("test", property);
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void opensWhenFailureRateExceeded() {
+        breaker.onSuccess();
+        breaker.onSuccess();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void halfOpenClosesAfterTrialSuccesses() throws Exception {
+        open();
+        Thread.sleep(60);
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        breaker.onSuccess();
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenReopensOnTrialFailure() throws Exception {
+        open();
+        Thread.sleep(60);
+
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelledTrialIsReturned() throws Exception {
+        open();
+        Thread.sleep(60);
+
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+        breaker.onCancel();
+
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+    }
+}
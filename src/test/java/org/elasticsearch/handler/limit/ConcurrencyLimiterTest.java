@@ -0,0 +1,87 @@
+package org.elasticsearch.handler.limit;
+
+import org.elasticsearch.handler.prop.LimitProperty;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+
+    private static LimitProperty property(int initialLimit) {
+        LimitProperty property = new LimitProperty();
+        property.setInitialLimit(initialLimit);
+        property.setMinLimit(2);
+        property.setMaxLimit(100);
+        return property;
+    }
+
+    @Test
+    public void rejectsAboveLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(property(2));
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.release(-1, false);
+        assertEquals(1, limiter.getInFlight());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void droppedRequestsShrinkLimitToMinimum() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(property(10));
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+        }
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void growsWhenLatencyIsStableUnderLoad() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(property(10));
+        long rtt = TimeUnit.MILLISECONDS.toNanos(10);
+
+        for (int round = 0; round < 20; round++) {
+            int acquired = 0;
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limiter.release(rtt, false);
+            }
+        }
+        assertTrue(limiter.getLimit() > 10);
+    }
+
+    @Test
+    public void shrinksWhenLatencyRises() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(property(50));
+
+        for (int i = 0; i < 100; i++) {
+            while (limiter.tryAcquire()) {
+            }
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+            for (int n = limiter.getInFlight(); n > 0; n--) {
+                limiter.release(-1, false);
+            }
+        }
+        int stable = limiter.getLimit();
+        for (int i = 0; i < 20; i++) {
+            while (limiter.tryAcquire()) {
+            }
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(100), false);
+            for (int n = limiter.getInFlight(); n > 0; n--) {
+                limiter.release(-1, false);
+            }
+        }
+        assertTrue(limiter.getLimit() < stable);
+    }
+}
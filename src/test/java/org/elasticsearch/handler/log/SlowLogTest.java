@@ -0,0 +1,110 @@
+package org.elasticsearch.handler.log;
+
+import com.google.common.collect.Lists;
+import org.elasticsearch.handler.prop.SlowLogProperty;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SlowLogTest {
+
+    /**
+     * 记录warn/info/debug(String, Object...)调用, 各级别均开启
+     */
+    private static class RecordingLogger {
+        final List<String> levels = Lists.newArrayList();
+        final List<Object[]> args = Lists.newArrayList();
+        boolean enabled = true;
+
+        Logger proxy() {
+            return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[]{Logger.class},
+                    (proxy, method, params) -> {
+                        String name = method.getName();
+                        if (name.startsWith("is") && name.endsWith("Enabled")) {
+                            return enabled;
+                        }
+                        if (params != null && params.length == 2 && params[1] instanceof Object[]) {
+                            levels.add(name);
+                            args.add((Object[]) params[1]);
+                        }
+                        return null;
+                    });
+        }
+    }
+
+    private final RecordingLogger logger = new RecordingLogger();
+
+    private SlowLog slowLog(SlowLogProperty property) {
+        return new SlowLog(property, logger.proxy());
+    }
+
+    @Test
+    public void levelFollowsThresholds() {
+        SlowLog slowLog = slowLog(new SlowLogProperty());
+
+        assertEquals(SlowLog.Level.WARN, slowLog.level(1000));
+        assertEquals(SlowLog.Level.INFO, slowLog.level(999));
+        assertEquals(SlowLog.Level.INFO, slowLog.level(200));
+        assertEquals(SlowLog.Level.DEBUG, slowLog.level(199));
+        assertEquals(SlowLog.Level.DEBUG, slowLog.level(50));
+        assertNull(slowLog.level(49));
+
+        //级别未开启时不输出
+        logger.enabled = false;
+        assertNull(slowLog.level(1000));
+    }
+
+    @Test
+    public void fastRequestsAreSampled() {
+        SlowLogProperty property = new SlowLogProperty();
+        assertNull(slowLog(property).level(0));
+
+        property.setSampleRate(1);
+        assertEquals(SlowLog.Level.INFO, slowLog(property).level(0));
+
+        property.setSampleRate(0.5);
+        SlowLog slowLog = slowLog(property);
+        int sampled = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (slowLog.level(0) != null) {
+                sampled++;
+            }
+        }
+        assertTrue(sampled > 300 && sampled < 700);
+    }
+
+    @Test
+    public void queryIsTruncatedAtMaxLength() {
+        SlowLogProperty property = new SlowLogProperty();
+        property.setMaxQueryLength(10);
+        SlowLog slowLog = slowLog(property);
+
+        slowLog.log("search", "goods", 1000, 900, () -> "total: 1", () -> "0123456789abc");
+        slowLog.log("search", "goods", 1000, 900, () -> "total: 1", () -> "0123456789");
+
+        assertEquals(Lists.newArrayList("warn", "warn"), logger.levels);
+        assertEquals("0123456789...", logger.args.get(0)[6]);
+        assertEquals("0123456789", logger.args.get(1)[6]);
+        //overhead为耗时减去took
+        assertEquals(100L, logger.args.get(0)[4]);
+    }
+
+    @Test
+    public void queryIsNotBuiltWhenNotLogged() {
+        AtomicInteger built = new AtomicInteger();
+        slowLog(new SlowLogProperty()).log("search", "goods", 10, -1, null, () -> {
+            built.incrementAndGet();
+            return "{}";
+        });
+
+        assertEquals(0, built.get());
+        assertTrue(logger.levels.isEmpty());
+    }
+}
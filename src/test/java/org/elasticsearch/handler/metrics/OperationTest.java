@@ -0,0 +1,44 @@
+package org.elasticsearch.handler.metrics;
+
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Delete;
+import io.searchbox.core.Index;
+import io.searchbox.core.Update;
+import org.elasticsearch.handler.bulk.OperationBulk;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OperationTest {
+
+    private static Update update(String id) {
+        return new Update.Builder("{\"doc\":{}}").index("goods").type("item").id(id).build();
+    }
+
+    private static Delete delete(String id) {
+        return new Delete.Builder(id).index("goods").type("item").build();
+    }
+
+    @Test
+    public void bulkIsClassifiedByCaller() {
+        assertEquals(Operation.UPDATE, Operation.of(new OperationBulk(new Bulk.Builder().addAction(update("1")),
+                Operation.UPDATE)));
+        assertEquals(Operation.DELETE, Operation.of(new OperationBulk(new Bulk.Builder().addAction(delete("1")),
+                Operation.DELETE)));
+        //未指定时不按内容区分
+        assertEquals(Operation.BULK, Operation.of(new Bulk.Builder().addAction(update("1")).addAction(update("2")).build()));
+        assertEquals(Operation.BULK, Operation.of(new Bulk.Builder()
+                .addAction(new Index.Builder("{}").index("goods").type("item").build()).build()));
+    }
+
+    @Test
+    public void onlyStatelessReadsAreHedgeable() {
+        assertTrue(Operation.SEARCH.isHedgeable());
+        assertTrue(Operation.MULTI_GET.isHedgeable());
+        assertFalse(Operation.SCROLL.isHedgeable());
+        assertFalse(Operation.BULK.isHedgeable());
+        assertFalse(Operation.OTHER.isHedgeable());
+    }
+}
@@ -0,0 +1,111 @@
+package org.elasticsearch.handler.query;
+
+import org.elasticsearch.handler.enums.Clause;
+import org.elasticsearch.handler.enums.QueryType;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BoolQueryPlannerTest {
+
+    private static void term(BoolQueryPlanner planner, Clause clause, String name, String value) {
+        planner.add(clause, QueryType.term, name, value, QueryBuilders.termQuery(name, value));
+    }
+
+    private static BoolQueryBuilder build(BoolQueryPlanner planner) {
+        BoolQueryBuilder query = QueryBuilders.boolQuery();
+        planner.build(query);
+        return query;
+    }
+
+    @Test
+    public void duplicateConditionsAreRemoved() {
+        BoolQueryPlanner planner = new BoolQueryPlanner(true);
+        planner.add(Clause.must, QueryType.match, "title", "phone", QueryBuilders.matchQuery("title", "phone"));
+        planner.add(Clause.must, QueryType.match, "title", "phone", QueryBuilders.matchQuery("title", "phone"));
+        //must中的term移到filter后与filter中相同的term重复
+        term(planner, Clause.must, "status", "on");
+        term(planner, Clause.filter, "status", "on");
+
+        assertTrue(planner.hasDuplicates());
+        BoolQueryBuilder query = build(planner);
+        assertEquals(1, query.must().size());
+        assertEquals(1, query.filter().size());
+    }
+
+    @Test
+    public void nonScoringMustConditionsMoveToFilter() {
+        BoolQueryPlanner planner = new BoolQueryPlanner(true);
+        planner.add(Clause.must, QueryType.match, "title", "phone", QueryBuilders.matchQuery("title", "phone"));
+        term(planner, Clause.must, "status", "on");
+        planner.add(Clause.must, QueryType.range, "price", "10#20", QueryBuilders.rangeQuery("price").from("10").to("20"));
+
+        assertFalse(planner.hasDuplicates());
+        BoolQueryBuilder query = build(planner);
+        assertEquals(1, query.must().size());
+        assertEquals("title", ((MatchQueryBuilder) query.must().get(0)).fieldName());
+        assertEquals(2, query.filter().size());
+    }
+
+    @Test
+    public void shouldAndMustNotTermsAreMerged() {
+        BoolQueryPlanner planner = new BoolQueryPlanner(true);
+        term(planner, Clause.should, "color", "red");
+        planner.add(Clause.should, QueryType.prefix, "code", "a", QueryBuilders.prefixQuery("code", "a"));
+        term(planner, Clause.should, "color", "blue");
+        term(planner, Clause.should, "size", "m");
+        term(planner, Clause.mustNot, "color", "green");
+        term(planner, Clause.mustNot, "color", "black");
+
+        BoolQueryBuilder query = build(planner);
+
+        //terms放在该字段第一个term的位置, 只有一个值的字段保持term
+        assertEquals(3, query.should().size());
+        TermsQueryBuilder colors = (TermsQueryBuilder) query.should().get(0);
+        assertEquals("color", colors.fieldName());
+        assertEquals(Arrays.asList("red", "blue"), colors.values());
+        assertTrue(query.should().get(2) instanceof TermQueryBuilder);
+        assertEquals(1, query.mustNot().size());
+        assertEquals(Arrays.asList("green", "black"), ((TermsQueryBuilder) query.mustNot().get(0)).values());
+    }
+
+    @Test
+    public void mustAndFilterTermsAreNotMerged() {
+        BoolQueryPlanner planner = new BoolQueryPlanner(true);
+        term(planner, Clause.must, "tags", "new");
+        term(planner, Clause.must, "tags", "hot");
+        term(planner, Clause.filter, "tags", "sale");
+
+        BoolQueryBuilder query = build(planner);
+
+        assertEquals(0, query.must().size());
+        assertEquals(3, query.filter().size());
+        for (Object filter : query.filter()) {
+            assertTrue(filter instanceof TermQueryBuilder);
+        }
+    }
+
+    @Test
+    public void conditionsAreKeptWithoutOptimize() {
+        BoolQueryPlanner planner = new BoolQueryPlanner(false);
+        term(planner, Clause.must, "status", "on");
+        term(planner, Clause.must, "status", "on");
+        term(planner, Clause.should, "color", "red");
+        term(planner, Clause.should, "color", "blue");
+
+        assertFalse(planner.hasDuplicates());
+        BoolQueryBuilder query = build(planner);
+        assertEquals(2, query.must().size());
+        assertEquals(0, query.filter().size());
+        assertEquals(2, query.should().size());
+    }
+}
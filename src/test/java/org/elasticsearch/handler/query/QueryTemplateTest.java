@@ -0,0 +1,56 @@
+package org.elasticsearch.handler.query;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryTemplateTest {
+
+    private static QueryTemplate template() {
+        return QueryTemplate.parse("{\"query\":{\"term\":{\"title\":\"" + QueryTemplate.slot(1) + "\"}},"
+                + "\"from\":\"" + QueryTemplate.slot(0) + "\",\"size\":\"" + QueryTemplate.slot(2) + "\"}");
+    }
+
+    @Test
+    public void rendersValuesBySlotIndex() {
+        QueryTemplate template = template();
+
+        assertEquals(3, template.getSlotCount());
+        assertEquals("{\"query\":{\"term\":{\"title\":\"phone\"}},\"from\":20,\"size\":10}",
+                template.render(Arrays.asList(20, "phone", 10)));
+    }
+
+    @Test
+    public void escapesStringValues() {
+        String value = "a\"b\\c\n</script>中文";
+
+        JSONObject json = JSON.parseObject(template().render(Arrays.asList(0, value, 10)));
+
+        assertEquals(value, json.getJSONObject("query").getJSONObject("term").getString("title"));
+    }
+
+    @Test
+    public void nullRendersAsEmptyString() {
+        assertEquals("{\"query\":{\"term\":{\"title\":\"\"}},\"from\":0,\"size\":10}",
+                template().render(Arrays.asList(0, null, 10)));
+    }
+
+    @Test
+    public void sameSlotCanRepeat() {
+        QueryTemplate template = QueryTemplate.parse("[\"" + QueryTemplate.slot(0) + "\",\"" + QueryTemplate.slot(0) + "\"]");
+
+        assertEquals("[\"x\",\"x\"]", template.render(Collections.singletonList("x")));
+    }
+
+    @Test
+    public void templateWithoutSlotsIsReturnedAsIs() {
+        String json = "{\"query\":{\"match_all\":{}}}";
+
+        assertEquals(json, QueryTemplate.parse(json).render(Collections.emptyList()));
+    }
+}
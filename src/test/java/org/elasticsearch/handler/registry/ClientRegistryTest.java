@@ -0,0 +1,87 @@
+package org.elasticsearch.handler.registry;
+
+import org.elasticsearch.handler.ClientHandler;
+import org.elasticsearch.handler.SearchHandlerTest;
+import org.elasticsearch.handler.constants.SearchConstants;
+import org.elasticsearch.handler.fake.FakeElasticsearchServer;
+import org.elasticsearch.handler.metrics.Operation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ClientRegistryTest {
+
+    private FakeElasticsearchServer primary;
+    private FakeElasticsearchServer replica;
+    private ClientRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        primary = new FakeElasticsearchServer(0).start();
+        replica = new FakeElasticsearchServer(0).start();
+        registry = new ClientRegistry();
+        registry.register("primary", primary.searchProperty());
+        registry.register("replica", replica.searchProperty());
+        registry.setRoutingPolicy(RoutingPolicy.readWrite("replica", "primary"));
+    }
+
+    @After
+    public void tearDown() {
+        registry.close();
+        primary.close();
+        replica.close();
+    }
+
+    @Test
+    public void readsAndWritesAreRoutedToTheirClients() {
+        assertEquals(5, registry.searchHandler("goods").search(SearchHandlerTest.request())
+                .getJSONArray(SearchConstants.RESULT_DATA_KEY).size());
+        registry.documentHandler("goods").saveDoc("goods", "item", "1", Collections.singletonMap("title", "handler"));
+
+        assertEquals(1, replica.getRequests("_search").size());
+        assertEquals(0, replica.getRequests("/goods/item/1").size());
+        assertEquals(0, primary.getRequests("_search").size());
+        assertEquals(1, primary.getRequests("/goods/item/1").size());
+        assertTrue(registry.clientHandler(Operation.GET, "goods") == registry.getClientHandler("replica"));
+        assertTrue(registry.indexHandler("goods") == registry.getIndexHandler("primary"));
+    }
+
+    @Test
+    public void handlersAreCreatedOncePerClient() {
+        assertTrue(registry.getSearchHandler("replica") == registry.searchHandler("goods"));
+        assertFalse(registry.getSearchHandler("primary") == registry.getSearchHandler("replica"));
+        assertTrue(registry.getDocumentHandler("primary") == registry.documentHandler(null));
+    }
+
+    @Test
+    public void duplicateNameIsRejected() {
+        ClientHandler existing = registry.getClientHandler("primary");
+        try {
+            registry.register("primary", replica.searchProperty());
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("already registered"));
+        }
+        assertTrue(existing == registry.getClientHandler("primary"));
+    }
+
+    @Test
+    public void removedClientIsNoLongerRouted() {
+        registry.remove("replica");
+
+        assertEquals(Collections.singleton("primary"), registry.getClientNames());
+        try {
+            registry.searchHandler("goods");
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("not registered"));
+        }
+    }
+}